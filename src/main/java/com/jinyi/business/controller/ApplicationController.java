@@ -3,6 +3,7 @@ package com.jinyi.business.controller;
 import com.jinyi.business.entity.Application;
 import com.jinyi.business.entity.ApplicationEntity;
 import com.jinyi.business.service.ApplicationService;
+import com.jinyi.odata.service.UsageMeteringService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -27,6 +28,9 @@ public class ApplicationController {
     @Autowired
     private ApplicationService applicationService;
 
+    @Autowired
+    private UsageMeteringService usageMeteringService;
+
     /**
      * 创建新应用
      */
@@ -275,6 +279,39 @@ public class ApplicationController {
         }
     }
 
+    /**
+     * 获取应用的累计用量（按实体集）
+     */
+    @GetMapping(value = "/{id}/usage", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> getApplicationUsage(@PathVariable Long id) {
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            Optional<Application> application = applicationService.getApplicationById(id);
+            
+            if (application.isEmpty()) {
+                response.put("success", false);
+                response.put("message", "Application not found");
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+            }
+            
+            String appCode = application.get().getAppCode();
+            response.put("success", true);
+            response.put("applicationId", id);
+            response.put("appCode", appCode);
+            response.put("usage", usageMeteringService.getUsage(appCode));
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            
+            log.error("Failed to get application usage: {}", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
     /**
      * 从应用中移除实体
      */
@@ -302,4 +339,34 @@ public class ApplicationController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 设置实体集限流配置
+     */
+    @PutMapping(value = "/{id}/entities/{entityName}/limits", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> updateEntityRateLimits(
+            @PathVariable Long id,
+            @PathVariable String entityName,
+            @RequestBody Map<String, Integer> limits) {
+        
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            applicationService.updateEntityRateLimits(id, entityName,
+                    limits.get("requestsPerSecond"), limits.get("rowsPerSecond"));
+            
+            response.put("success", true);
+            response.put("message", "Entity rate limits updated successfully");
+            
+            log.info("Rate limits of entity {} in application {} updated: {}", entityName, id, limits);
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            
+            log.error("Failed to update entity rate limits: {} - {}", id, entityName, e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+}
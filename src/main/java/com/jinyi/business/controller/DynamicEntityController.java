@@ -5,6 +5,9 @@ import com.jinyi.business.service.ApplicationService;
 import com.jinyi.odata.dynamic.EntityDefinition;
 import com.jinyi.odata.dynamic.DynamicEntityRegistrationService;
 import com.jinyi.odata.dynamic.EntityFileGeneratorService;
+import com.jinyi.odata.dynamic.OnlineSchemaChangeService;
+import com.jinyi.odata.dynamic.SchemaAlterRequest;
+import com.jinyi.odata.dynamic.SchemaChangeJob;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -12,6 +15,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +39,9 @@ public class DynamicEntityController {
     @Autowired
     private EntityFileGeneratorService entityFileGeneratorService;
 
+    @Autowired
+    private OnlineSchemaChangeService onlineSchemaChangeService;
+
     /**
      * 在指定应用中注册新的动态实体
      */
@@ -88,6 +95,99 @@ public class DynamicEntityController {
         }
     }
 
+    /**
+     * 在指定应用中批量注册动态实体
+     * 先校验全部定义（任一不通过则不执行），再并发建表，最后批量写入应用关联
+     */
+    @PostMapping(value = "/bulk", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> registerEntitiesInApplication(
+            @PathVariable Long appId,
+            @RequestBody List<EntityDefinition> entityDefs,
+            @RequestParam(defaultValue = "true") boolean generateJavaFile) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            // 验证应用是否存在
+            if (applicationService.getApplicationById(appId).isEmpty()) {
+                response.put("success", false);
+                response.put("message", "Application not found: " + appId);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+            }
+
+            if (entityDefs == null || entityDefs.isEmpty()) {
+                response.put("success", false);
+                response.put("message", "At least one entity definition is required");
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+            }
+
+            // 校验全部实体定义以及与应用已有实体的冲突
+            Map<String, String> errors = dynamicEntityService.validateEntities(entityDefs);
+            for (ApplicationEntity existing : applicationService.getApplicationEntities(appId)) {
+                if (entityDefs.stream().anyMatch(def -> existing.getEntityName().equals(def.getEntityName()))) {
+                    errors.putIfAbsent(existing.getEntityName(),
+                            "Entity already exists in application: " + existing.getEntityName());
+                }
+            }
+            if (!errors.isEmpty()) {
+                response.put("success", false);
+                response.put("message", "Validation failed for " + errors.size() + " entities, nothing was registered");
+                response.put("applicationId", appId);
+                response.put("errors", errors);
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+            }
+
+            // 并发建表并注册
+            List<DynamicEntityRegistrationService.RegistrationResult> results =
+                    dynamicEntityService.registerEntities(entityDefs, generateJavaFile);
+
+            // 批量写入应用关联
+            List<ApplicationEntity> registered = new ArrayList<>();
+            for (int i = 0; i < entityDefs.size(); i++) {
+                if (results.get(i).isSuccess()) {
+                    EntityDefinition entityDef = entityDefs.get(i);
+                    ApplicationEntity appEntity = new ApplicationEntity();
+                    appEntity.setEntityName(entityDef.getEntityName());
+                    appEntity.setTableName(entityDef.getTableName());
+                    appEntity.setDescription(entityDef.getDescription());
+                    appEntity.setIsDynamic(true);
+                    registered.add(appEntity);
+                }
+            }
+            List<ApplicationEntity> appEntities;
+            try {
+                appEntities = applicationService.addEntitiesToApplication(appId, registered);
+            } catch (Exception e) {
+                // 关联写入失败时撤销本次注册，避免留下无主的实体和表
+                for (ApplicationEntity appEntity : registered) {
+                    EntityDefinition entityDef = dynamicEntityService.getEntityDefinition(appEntity.getEntityName());
+                    dynamicEntityService.unregisterEntity(appEntity.getEntityName(),
+                            entityDef != null && entityDef.isAutoCreate(), generateJavaFile);
+                }
+                throw e;
+            }
+
+            boolean allSucceeded = registered.size() == entityDefs.size();
+            response.put("success", allSucceeded);
+            response.put("message", "Registered " + registered.size() + " of " + entityDefs.size() + " entities");
+            response.put("applicationId", appId);
+            response.put("results", results);
+            response.put("applicationEntities", appEntities);
+
+            log.info("Bulk registered {} of {} dynamic entities in application {}",
+                    registered.size(), entityDefs.size(), appId);
+            return ResponseEntity.status(allSucceeded ? HttpStatus.OK : HttpStatus.MULTI_STATUS).body(response);
+
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            response.put("applicationId", appId);
+
+            log.error("Failed to bulk register dynamic entities in application {}", appId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
     /**
      * 获取应用中的动态实体定义
      */
@@ -249,6 +349,83 @@ public class DynamicEntityController {
         }
     }
 
+    /**
+     * 变更应用中动态实体的表结构（新增/放宽/删除字段、新增索引），在后台执行
+     */
+    @PostMapping(value = "/{entityName}/alter", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> alterEntityInApplication(
+            @PathVariable Long appId,
+            @PathVariable String entityName,
+            @RequestBody SchemaAlterRequest alterRequest) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            // 验证应用是否存在
+            if (applicationService.getApplicationById(appId).isEmpty()) {
+                response.put("success", false);
+                response.put("message", "Application not found: " + appId);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+            }
+
+            // 验证实体是否属于该应用且为动态实体
+            List<ApplicationEntity> appEntities = applicationService.getApplicationEntities(appId);
+            boolean entityExists = appEntities.stream()
+                    .anyMatch(ae -> ae.getEntityName().equals(entityName) && ae.getIsDynamic());
+            if (!entityExists) {
+                response.put("success", false);
+                response.put("message", "Dynamic entity not found in application: " + entityName);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+            }
+
+            SchemaChangeJob job = onlineSchemaChangeService.alterEntity(entityName, alterRequest);
+
+            response.put("success", true);
+            response.put("message", "Schema change submitted");
+            response.put("applicationId", appId);
+            response.put("entityName", entityName);
+            response.put("job", job);
+
+            log.info("Schema change {} submitted for dynamic entity {} in application {}", job.getId(), entityName, appId);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            response.put("applicationId", appId);
+            response.put("entityName", entityName);
+
+            log.error("Failed to alter dynamic entity {} in application {}", entityName, appId, e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
+    /**
+     * 查询结构变更任务进度
+     */
+    @GetMapping(value = "/{entityName}/alter/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> getSchemaChangeJob(
+            @PathVariable Long appId,
+            @PathVariable String entityName,
+            @PathVariable Long jobId) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        Optional<SchemaChangeJob> job = onlineSchemaChangeService.getJob(jobId)
+                .filter(j -> j.getEntityName().equals(entityName));
+        if (job.isEmpty()) {
+            response.put("success", false);
+            response.put("message", "Schema change job not found: " + jobId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+
+        response.put("success", true);
+        response.put("applicationId", appId);
+        response.put("entityName", entityName);
+        response.put("job", job.get());
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * 预览应用中的动态实体Java文件内容（不生成文件）
      */
@@ -441,6 +618,15 @@ public class DynamicEntityController {
             response.put("entityName", entityName);
             response.put("fileExists", fileExists);
             response.put("filePath", filePath);
+
+            // 后台生成状态：PENDING/WRITTEN/UNCHANGED/FAILED/DELETED
+            EntityFileGeneratorService.FileStatus status = entityFileGeneratorService.getFileStatus(entityName);
+            if (status != null) {
+                response.put("generationState", status.getState());
+                response.put("contentHash", status.getContentHash());
+                response.put("generationError", status.getError());
+                response.put("generationUpdatedAt", status.getUpdatedAt());
+            }
             
             return ResponseEntity.ok(response);
             
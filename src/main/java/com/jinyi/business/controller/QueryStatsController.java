@@ -0,0 +1,103 @@
+package com.jinyi.business.controller;
+
+import com.jinyi.odata.service.HotKeyTracker;
+import com.jinyi.odata.service.QueryShapeStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 查询形态统计控制器
+ * 按总耗时查看最耗时的查询形态、按访问频率查看热点键和过滤值，辅助决定索引和缓存配置
+ */
+@RestController
+@RequestMapping("/api/query-stats")
+@Slf4j
+public class QueryStatsController {
+
+    @Autowired
+    private QueryShapeStats queryShapeStats;
+
+    @Autowired
+    private HotKeyTracker hotKeyTracker;
+
+    /**
+     * 获取总耗时最高的前N个查询形态
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> getTopShapes(@RequestParam(defaultValue = "20") int top) {
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            List<Map<String, Object>> shapes = queryShapeStats.top(Math.max(top, 0));
+            
+            response.put("success", true);
+            response.put("enabled", queryShapeStats.isEnabled());
+            response.put("trackedShapes", queryShapeStats.size());
+            response.put("since", queryShapeStats.getResetAt());
+            response.put("shapes", shapes);
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            
+            log.error("Failed to get query shape statistics", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * 清空查询形态统计
+     */
+    @DeleteMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> reset() {
+        Map<String, Object> response = new HashMap<>();
+        
+        queryShapeStats.reset();
+        
+        response.put("success", true);
+        response.put("message", "Query shape statistics reset successfully");
+        
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 获取近期访问最频繁的单实体键和 $filter 等值条件
+     */
+    @GetMapping(value = "/hot-keys", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> getHotKeys(@RequestParam(defaultValue = "20") int top) {
+        Map<String, Object> response = new HashMap<>();
+        
+        int limit = Math.max(top, 0);
+        response.put("success", true);
+        response.put("enabled", hotKeyTracker.isEnabled());
+        response.put("keys", hotKeyTracker.top(HotKeyTracker.Kind.KEY, limit));
+        response.put("filters", hotKeyTracker.top(HotKeyTracker.Kind.FILTER, limit));
+        
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 清空热点键统计
+     */
+    @DeleteMapping(value = "/hot-keys", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> resetHotKeys() {
+        Map<String, Object> response = new HashMap<>();
+        
+        hotKeyTracker.reset();
+        
+        response.put("success", true);
+        response.put("message", "Hot key statistics reset successfully");
+        
+        return ResponseEntity.ok(response);
+    }
+}
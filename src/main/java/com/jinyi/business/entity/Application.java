@@ -38,6 +38,12 @@ public class Application {
     @ODataField(length = 100)
     private String owner;  // 应用负责人
     
+    @ODataField
+    private Integer requestsPerSecond;  // 每秒请求数上限，为空表示不限制
+    
+    @ODataField
+    private Integer rowsPerSecond;  // 每秒返回行数上限，为空表示不限制
+    
     @ODataField
     private LocalDateTime createdAt;
     
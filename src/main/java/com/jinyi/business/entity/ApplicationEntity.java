@@ -35,6 +35,12 @@ public class ApplicationEntity {
     @ODataField(nullable = false)
     private Boolean active;  // 是否激活
     
+    @ODataField
+    private Integer requestsPerSecond;  // 该实体集每秒请求数上限，为空表示不限制
+    
+    @ODataField
+    private Integer rowsPerSecond;  // 该实体集每秒返回行数上限，为空表示不限制
+    
     @ODataField
     private LocalDateTime createdAt;
     
@@ -0,0 +1,43 @@
+package com.jinyi.business.entity;
+
+import com.jinyi.odata.annotation.ODataEntity;
+import com.jinyi.odata.annotation.ODataField;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 应用用量表
+ * 每行为一个统计周期内某应用某实体集的用量增量，按应用汇总用于内部费用分摊
+ */
+@Data
+@ODataEntity(name = "ApplicationUsage", table = "application_usage")
+public class ApplicationUsage {
+
+    @ODataField(key = true)
+    private Long id;
+
+    @ODataField(nullable = false, length = 50)
+    private String appCode;  // 应用代码
+
+    @ODataField(nullable = false, length = 100)
+    private String entityName;  // 实体集名称
+
+    @ODataField(nullable = false)
+    private Long requests;  // 请求数
+
+    @ODataField(nullable = false)
+    private Long rowCount;  // 返回行数
+
+    @ODataField(nullable = false)
+    private Long responseBytes;  // 响应字节数
+
+    @ODataField(nullable = false)
+    private Long dbTimeMillis;  // 数据库耗时（毫秒）
+
+    @ODataField(nullable = false)
+    private LocalDateTime periodStart;  // 统计周期开始
+
+    @ODataField(nullable = false)
+    private LocalDateTime periodEnd;  // 统计周期结束
+}
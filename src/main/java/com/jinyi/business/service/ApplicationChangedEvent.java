@@ -0,0 +1,17 @@
+package com.jinyi.business.service;
+
+import lombok.Getter;
+
+/**
+ * 应用配置变更事件
+ * 应用或其实体关联被修改后发布，供限流等缓存了应用配置的组件刷新
+ */
+@Getter
+public class ApplicationChangedEvent {
+
+    private final Long applicationId;
+
+    public ApplicationChangedEvent(Long applicationId) {
+        this.applicationId = applicationId;
+    }
+}
@@ -2,8 +2,10 @@ package com.jinyi.business.service;
 
 import com.jinyi.business.entity.Application;
 import com.jinyi.business.entity.ApplicationEntity;
+import com.jinyi.odata.datasource.DataSourceRouting;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -18,6 +20,8 @@ import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 应用管理服务
@@ -30,6 +34,9 @@ public class ApplicationService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * 创建新应用
      */
@@ -41,8 +48,9 @@ public class ApplicationService {
         }
 
         String sql = """
-            INSERT INTO applications (app_code, app_name, description, version, active, base_url, owner, created_at, updated_at)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            INSERT INTO applications (app_code, app_name, description, version, active, base_url, owner,
+                                      requests_per_second, rows_per_second, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
             """;
 
         KeyHolder keyHolder = new GeneratedKeyHolder();
@@ -57,16 +65,21 @@ public class ApplicationService {
             ps.setBoolean(5, app.getActive() != null ? app.getActive() : true);
             ps.setString(6, app.getBaseUrl());
             ps.setString(7, app.getOwner());
-            ps.setObject(8, now);
-            ps.setObject(9, now);
+            ps.setObject(8, app.getRequestsPerSecond());
+            ps.setObject(9, app.getRowsPerSecond());
+            ps.setObject(10, now);
+            ps.setObject(11, now);
             return ps;
         }, keyHolder);
+        DataSourceRouting.markPrimaryWrite();
 
         Long id = keyHolder.getKey().longValue();
         app.setId(id);
         app.setCreatedAt(now);
         app.setUpdatedAt(now);
 
+        // 新应用可能此前被当作不存在的appCode缓存
+        eventPublisher.publishEvent(new ApplicationChangedEvent(id));
         log.info("Created application: {} (ID: {})", app.getAppCode(), id);
         return app;
     }
@@ -104,20 +117,24 @@ public class ApplicationService {
     public Application updateApplication(Application app) {
         String sql = """
             UPDATE applications 
-            SET app_name = ?, description = ?, version = ?, active = ?, base_url = ?, owner = ?, updated_at = ?
+            SET app_name = ?, description = ?, version = ?, active = ?, base_url = ?, owner = ?,
+                requests_per_second = ?, rows_per_second = ?, updated_at = ?
             WHERE id = ?
             """;
 
         LocalDateTime now = LocalDateTime.now();
         int updated = jdbcTemplate.update(sql,
                 app.getAppName(), app.getDescription(), app.getVersion(),
-                app.getActive(), app.getBaseUrl(), app.getOwner(), now, app.getId());
+                app.getActive(), app.getBaseUrl(), app.getOwner(),
+                app.getRequestsPerSecond(), app.getRowsPerSecond(), now, app.getId());
+        DataSourceRouting.markPrimaryWrite();
 
         if (updated == 0) {
             throw new RuntimeException("Application not found: " + app.getId());
         }
 
         app.setUpdatedAt(now);
+        eventPublisher.publishEvent(new ApplicationChangedEvent(app.getId()));
         log.info("Updated application: {} (ID: {})", app.getAppCode(), app.getId());
         return app;
     }
@@ -132,10 +149,12 @@ public class ApplicationService {
         
         // 再删除应用
         int deleted = jdbcTemplate.update("DELETE FROM applications WHERE id = ?", id);
+        DataSourceRouting.markPrimaryWrite();
         if (deleted == 0) {
             throw new RuntimeException("Application not found: " + id);
         }
 
+        eventPublisher.publishEvent(new ApplicationChangedEvent(id));
         log.info("Deleted application with ID: {}", id);
     }
 
@@ -175,6 +194,7 @@ public class ApplicationService {
             ps.setObject(8, now);
             return ps;
         }, keyHolder);
+        DataSourceRouting.markPrimaryWrite();
 
         ApplicationEntity appEntity = new ApplicationEntity();
         appEntity.setId(keyHolder.getKey().longValue());
@@ -187,10 +207,50 @@ public class ApplicationService {
         appEntity.setCreatedAt(now);
         appEntity.setUpdatedAt(now);
 
+        eventPublisher.publishEvent(new ApplicationChangedEvent(applicationId));
         log.info("Added entity {} to application {}", entityName, applicationId);
         return appEntity;
     }
 
+    /**
+     * 批量为应用添加实体关联（一次 batchUpdate）
+     */
+    @Transactional
+    public List<ApplicationEntity> addEntitiesToApplication(Long applicationId, List<ApplicationEntity> entities) {
+        if (!existsById(applicationId)) {
+            throw new RuntimeException("Application not found: " + applicationId);
+        }
+        if (entities.isEmpty()) {
+            return entities;
+        }
+
+        String sql = """
+            INSERT INTO application_entities (application_id, entity_name, table_name, description, is_dynamic, active, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+        LocalDateTime now = LocalDateTime.now();
+        jdbcTemplate.batchUpdate(sql, entities, entities.size(), (ps, appEntity) -> {
+            ps.setLong(1, applicationId);
+            ps.setString(2, appEntity.getEntityName());
+            ps.setString(3, appEntity.getTableName());
+            ps.setString(4, appEntity.getDescription());
+            ps.setBoolean(5, Boolean.TRUE.equals(appEntity.getIsDynamic()));
+            ps.setBoolean(6, true);
+            ps.setObject(7, now);
+            ps.setObject(8, now);
+        });
+        DataSourceRouting.markPrimaryWrite();
+
+        eventPublisher.publishEvent(new ApplicationChangedEvent(applicationId));
+        log.info("Added {} entities to application {}", entities.size(), applicationId);
+
+        Set<String> names = entities.stream().map(ApplicationEntity::getEntityName).collect(Collectors.toSet());
+        return getApplicationEntities(applicationId).stream()
+                .filter(appEntity -> names.contains(appEntity.getEntityName()))
+                .collect(Collectors.toList());
+    }
+
     /**
      * 获取应用下的所有实体
      */
@@ -220,14 +280,38 @@ public class ApplicationService {
         int deleted = jdbcTemplate.update(
                 "DELETE FROM application_entities WHERE application_id = ? AND entity_name = ?",
                 applicationId, entityName);
+        DataSourceRouting.markPrimaryWrite();
         
         if (deleted == 0) {
             throw new RuntimeException("Entity not found in application: " + entityName);
         }
 
+        eventPublisher.publishEvent(new ApplicationChangedEvent(applicationId));
         log.info("Removed entity {} from application {}", entityName, applicationId);
     }
 
+    /**
+     * 设置实体集的限流配置，参数为空表示不限制
+     */
+    @Transactional
+    public void updateEntityRateLimits(Long applicationId, String entityName,
+                                       Integer requestsPerSecond, Integer rowsPerSecond) {
+        String sql = """
+            UPDATE application_entities SET requests_per_second = ?, rows_per_second = ?, updated_at = ?
+            WHERE application_id = ? AND entity_name = ?
+            """;
+        int updated = jdbcTemplate.update(sql,
+                requestsPerSecond, rowsPerSecond, LocalDateTime.now(), applicationId, entityName);
+        DataSourceRouting.markPrimaryWrite();
+
+        if (updated == 0) {
+            throw new RuntimeException("Entity not found in application: " + entityName);
+        }
+
+        eventPublisher.publishEvent(new ApplicationChangedEvent(applicationId));
+        log.info("Updated rate limits of entity {} in application {}", entityName, applicationId);
+    }
+
     /**
      * 检查应用代码是否存在
      */
@@ -255,6 +339,11 @@ public class ApplicationService {
         return count != null && count > 0;
     }
 
+    private static Integer getInteger(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
     /**
      * 应用行映射器
      */
@@ -270,6 +359,8 @@ public class ApplicationService {
             app.setActive(rs.getBoolean("active"));
             app.setBaseUrl(rs.getString("base_url"));
             app.setOwner(rs.getString("owner"));
+            app.setRequestsPerSecond(getInteger(rs, "requests_per_second"));
+            app.setRowsPerSecond(getInteger(rs, "rows_per_second"));
             app.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
             app.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
             return app;
@@ -290,6 +381,8 @@ public class ApplicationService {
             appEntity.setDescription(rs.getString("description"));
             appEntity.setIsDynamic(rs.getBoolean("is_dynamic"));
             appEntity.setActive(rs.getBoolean("active"));
+            appEntity.setRequestsPerSecond(getInteger(rs, "requests_per_second"));
+            appEntity.setRowsPerSecond(getInteger(rs, "rows_per_second"));
             appEntity.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
             appEntity.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
             return appEntity;
@@ -0,0 +1,34 @@
+package com.jinyi.odata.accesslog;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * 访问日志配置
+ */
+@Data
+@ConfigurationProperties(prefix = "odata.access-log")
+public class AccessLogProperties {
+
+    /** 是否启用 */
+    private boolean enabled = true;
+
+    /** 日志文件（JSON lines） */
+    private String file = "logs/odata-access.log";
+
+    /** 环形缓冲区容量（向上取整为2的幂），写满时丢弃新记录 */
+    private int bufferSize = 8192;
+
+    /** 每批最多写出的记录数 */
+    private int batchSize = 512;
+
+    /** 缓冲区为空时后台线程的等待间隔（毫秒），也是记录写出的最大延迟 */
+    private long flushInterval = 200;
+
+    /** 单个文件的最大大小，超过后滚动 */
+    private DataSize maxFileSize = DataSize.ofMegabytes(100);
+
+    /** 保留的历史文件数（file.1 ~ file.N） */
+    private int maxHistory = 5;
+}
@@ -0,0 +1,119 @@
+package com.jinyi.odata.accesslog;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 访问日志环形缓冲区（多生产者、单消费者，无锁）
+ * 记录槽预先分配，请求线程通过CAS占用槽位后就地填写字段并发布序号，不分配对象；缓冲区满时直接返回false。
+ * 序号协议：槽位序号等于写入位置时可写，等于写入位置+1时可读，读取后设为写入位置+容量供下一轮使用
+ */
+final class AccessLogRingBuffer {
+
+    /**
+     * 一条访问记录（固定布局）
+     */
+    static final class Slot {
+        long timestamp;
+        String kind;
+        String appCode;
+        String entitySet;
+        int status;
+        int rows;
+        long bytes;
+        long durationNanos;
+        int sqlShape;
+        boolean coalesced;
+    }
+
+    @FunctionalInterface
+    interface SlotConsumer {
+        void accept(Slot slot);
+    }
+
+    private final Slot[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // 只由消费线程访问
+    private long head;
+
+    AccessLogRingBuffer(int requestedCapacity) {
+        int capacity = requestedCapacity <= 2 ? 2 : Integer.highestOneBit(requestedCapacity - 1) << 1;
+        slots = new Slot[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * 待写出的记录数（近似值）
+     */
+    long size() {
+        return Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * 写入一条记录，缓冲区满时返回false
+     */
+    boolean offer(long timestamp, String kind, String appCode, String entitySet, int status, int rows,
+                  long bytes, long durationNanos, int sqlShape, boolean coalesced) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    Slot slot = slots[index];
+                    slot.timestamp = timestamp;
+                    slot.kind = kind;
+                    slot.appCode = appCode;
+                    slot.entitySet = entitySet;
+                    slot.status = status;
+                    slot.rows = rows;
+                    slot.bytes = bytes;
+                    slot.durationNanos = durationNanos;
+                    slot.sqlShape = sqlShape;
+                    slot.coalesced = coalesced;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 读取最多max条记录（只能由消费线程调用），槽位在consumer返回后即被复用
+     * @return 读取的记录数
+     */
+    int drain(SlotConsumer consumer, int max) {
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            Slot slot = slots[index];
+            consumer.accept(slot);
+            slot.kind = null;
+            slot.appCode = null;
+            slot.entitySet = null;
+            sequences.set(index, head + slots.length);
+            head++;
+            drained++;
+        }
+        return drained;
+    }
+}
@@ -0,0 +1,225 @@
+package com.jinyi.odata.accesslog;
+
+import com.jinyi.odata.service.QueryContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * OData访问日志
+ * 请求线程只把固定布局的记录写入无锁环形缓冲区；后台线程批量格式化为JSON lines写入滚动文件。
+ * 缓冲区写满时丢弃记录并计数（odata.access-log.records{result=dropped}），不阻塞请求
+ */
+@Component
+@Slf4j
+@EnableConfigurationProperties(AccessLogProperties.class)
+public class AccessLogWriter {
+
+    @Autowired
+    private AccessLogProperties properties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private AccessLogRingBuffer buffer;
+    private Thread thread;
+    private volatile boolean running;
+
+    private Counter written;
+    private Counter dropped;
+
+    // 以下只由后台线程访问
+    private final StringBuilder line = new StringBuilder(256);
+    private Path file;
+    private Writer writer;
+    private long fileSize;
+
+    @PostConstruct
+    public void init() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        buffer = new AccessLogRingBuffer(properties.getBufferSize());
+        written = Counter.builder("odata.access-log.records")
+                .tag("result", "written")
+                .register(meterRegistry);
+        dropped = Counter.builder("odata.access-log.records")
+                .tag("result", "dropped")
+                .description("Access log records dropped because the ring buffer was full")
+                .register(meterRegistry);
+        Gauge.builder("odata.access-log.backlog", buffer, AccessLogRingBuffer::size).register(meterRegistry);
+
+        file = Paths.get(properties.getFile());
+        running = true;
+        thread = new Thread(this::run, "odata-access-log");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("OData access log enabled: {} (buffer {})", file.toAbsolutePath(), buffer.capacity());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public boolean isEnabled() {
+        return buffer != null;
+    }
+
+    /**
+     * 记录一次请求（请求线程调用，不阻塞、不分配对象）
+     */
+    public void append(QueryContext context, int status, long bytes) {
+        if (buffer == null) {
+            return;
+        }
+        boolean accepted = buffer.offer(System.currentTimeMillis(), context.getKind(), context.getAppCode(),
+                context.getEntitySet(), status, context.getRows(), bytes,
+                System.nanoTime() - context.getStartedAt(), context.getSqlShape(), context.isCoalesced());
+        if (!accepted) {
+            dropped.increment();
+        }
+    }
+
+    private void run() {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(properties.getFlushInterval());
+        while (true) {
+            boolean stopping = !running;
+            int drained;
+            try {
+                drained = buffer.drain(this::write, properties.getBatchSize());
+                if (drained == 0 && writer != null) {
+                    writer.flush();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to write access log: {}", e.getMessage());
+                closeQuietly();
+                drained = 0;
+            }
+            if (drained == 0) {
+                if (stopping) {
+                    break;
+                }
+                LockSupport.parkNanos(idleNanos);
+            }
+        }
+        closeQuietly();
+    }
+
+    private void write(AccessLogRingBuffer.Slot slot) {
+        line.setLength(0);
+        line.append("{\"time\":\"");
+        DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(slot.timestamp), line);
+        line.append("\",\"kind\":");
+        appendString(slot.kind);
+        line.append(",\"app\":");
+        appendString(slot.appCode);
+        line.append(",\"entity\":");
+        appendString(slot.entitySet);
+        line.append(",\"status\":").append(slot.status)
+                .append(",\"rows\":").append(slot.rows)
+                .append(",\"bytes\":").append(slot.bytes)
+                .append(",\"durationMicros\":").append(slot.durationNanos / 1000)
+                .append(",\"sqlShape\":").append(slot.sqlShape)
+                .append(",\"coalesced\":").append(slot.coalesced)
+                .append("}\n");
+
+        try {
+            if (writer == null || fileSize >= properties.getMaxFileSize().toBytes()) {
+                open();
+            }
+            writer.append(line);
+            // 按字符数近似估算文件大小
+            fileSize += line.length();
+            written.increment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void appendString(String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * 打开日志文件，当前文件超过大小上限时先滚动：file.N-1 -> file.N ... file -> file.1
+     */
+    private void open() throws IOException {
+        closeQuietly();
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        if (Files.exists(file) && Files.size(file) >= properties.getMaxFileSize().toBytes()) {
+            for (int i = properties.getMaxHistory() - 1; i >= 1; i--) {
+                Path source = history(i);
+                if (Files.exists(source)) {
+                    Files.move(source, history(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (properties.getMaxHistory() > 0) {
+                Files.move(file, history(1), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(file);
+            }
+        }
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        fileSize = Files.size(file);
+    }
+
+    private Path history(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void closeQuietly() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.debug("Failed to close access log: {}", e.getMessage());
+            }
+            writer = null;
+        }
+    }
+}
@@ -2,17 +2,35 @@ package com.jinyi.odata.controller;
 
 import com.jinyi.business.entity.ApplicationEntity;
 import com.jinyi.business.service.ApplicationService;
+import com.jinyi.odata.format.ArrowResponseWriter;
+import com.jinyi.odata.format.ODataFormat;
+import com.jinyi.odata.format.ODataResponseWriter;
+import com.jinyi.odata.format.ServerTimingWriter;
+import com.jinyi.odata.ratelimit.AdmissionControlService;
+import com.jinyi.odata.ratelimit.QueryRejectedException;
+import com.jinyi.odata.service.HotKeyTracker;
+import com.jinyi.odata.service.ODataQueryExecutor;
 import com.jinyi.odata.service.ODataQueryService;
+import com.jinyi.odata.service.QueryContext;
+import com.jinyi.odata.service.RequestTiming;
+import com.jinyi.odata.service.ResponseCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -27,21 +45,76 @@ public class ApplicationODataController {
     @Autowired
     private ODataQueryService odataQueryService;
 
+    @Autowired
+    private ODataResponseWriter odataResponseWriter;
+
+    @Autowired
+    private ArrowResponseWriter arrowResponseWriter;
+
+    @Autowired
+    private ODataQueryExecutor odataQueryExecutor;
+
+    @Autowired
+    private ServerTimingWriter serverTimingWriter;
+
+    @Autowired
+    private HotKeyTracker hotKeyTracker;
+
+    @Autowired
+    private AdmissionControlService admissionControlService;
+
     @Autowired
     private ApplicationService applicationService;
 
+    @Autowired
+    private ResponseCache responseCache;
+
     /**
      * 查询应用下的实体集合
      */
-    @GetMapping(value = "/{entitySet}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Map<String, Object>> queryEntitySet(
+    @GetMapping(value = "/{entitySet:[^(]+}",
+            produces = {MediaType.APPLICATION_JSON_VALUE, ODataFormat.CBOR_VALUE, ODataFormat.SMILE_VALUE,
+                    ODataFormat.ARROW_VALUE})
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> queryEntitySet(
             @PathVariable String appCode,
             @PathVariable String entitySet,
             HttpServletRequest request) {
         
+        ODataFormat format = ODataFormat.resolve(request.getParameter("$format"), request.getHeader(HttpHeaders.ACCEPT));
+        QueryContext context = QueryContext.fromPreferHeader(request.getHeader("Prefer"));
+        serverTimingWriter.start(context, "entitySet", appCode, entitySet);
+        boolean debugTiming = ServerTimingWriter.isDebugTiming(request.getParameter(ServerTimingWriter.DEBUG_PARAMETER));
+
+        // 提取查询参数（异步执行时不能再访问请求对象）
+        Map<String, String> queryParams = new HashMap<>();
+        request.getParameterMap().forEach((key, values) -> {
+            if (values.length > 0) {
+                queryParams.put(key, values[0]);
+            }
+        });
+
+        // 应用级准入控制
+        long retryAfterNanos = admissionControlService.tryAdmit(appCode, entitySet);
+        if (retryAfterNanos > 0) {
+            return odataQueryExecutor.completed(
+                    serverTimingWriter.finish(tooManyRequests(format, retryAfterNanos), context, false));
+        }
+
+        return odataQueryExecutor.execute(
+                () -> serverTimingWriter.finish(doQueryEntitySet(appCode, entitySet, queryParams, format, context),
+                        context, debugTiming),
+                () -> serviceUnavailable(format), context);
+    }
+
+    private ResponseEntity<StreamingResponseBody> doQueryEntitySet(String appCode, String entitySet,
+                                                                   Map<String, String> queryParams,
+                                                                   ODataFormat format, QueryContext context) {
         try {
             // 验证应用是否存在
-            if (applicationService.getApplicationByCode(appCode).isEmpty()) {
+            long begin = context.getTiming().begin();
+            List<ApplicationEntity> appEntities = getApplicationEntities(appCode);
+            context.getTiming().stop(RequestTiming.Phase.CATALOG, begin);
+            if (appEntities == null) {
                 Map<String, Object> error = new HashMap<>();
                 error.put("error", Map.of(
                     "code", "APPLICATION_NOT_FOUND",
@@ -51,7 +124,6 @@ public class ApplicationODataController {
             }
 
             // 验证实体是否属于该应用
-            List<ApplicationEntity> appEntities = applicationService.getApplicationEntitiesByCode(appCode);
             boolean entityExists = appEntities.stream()
                     .anyMatch(ae -> ae.getEntityName().equals(entitySet));
             
@@ -64,31 +136,38 @@ public class ApplicationODataController {
                 return ResponseEntity.notFound().build();
             }
 
-            // 提取查询参数
-            Map<String, String> queryParams = new HashMap<>();
-            request.getParameterMap().forEach((key, values) -> {
-                if (values.length > 0) {
-                    queryParams.put(key, values[0]);
-                }
-            });
+            log.debug("OData query for application: {} entity: {} with params: {}", appCode, entitySet, queryParams);
 
-            log.info("OData query for application: {} entity: {} with params: {}", appCode, entitySet, queryParams);
+            hotKeyTracker.recordFilter(appCode, entitySet, queryParams.get("$filter"));
+
+            // Arrow列式输出：直接从ResultSet按批次写出
+            if (format == ODataFormat.ARROW) {
+                ODataQueryService.SqlQuery query = odataQueryService.buildQuery(entitySet, queryParams);
+                query.setContext(context);
+                return ResponseEntity.ok().contentType(format.getMediaType())
+                        .body(arrowResponseWriter.writeEntitySet(query,
+                                rows -> admissionControlService.recordRows(appCode, entitySet, rows)));
+            }
 
             // 执行查询
-            ODataQueryService.QueryResult result = odataQueryService.queryEntities(entitySet, queryParams);
+            ODataQueryService.QueryResult result = odataQueryService.queryEntities(entitySet, queryParams, context);
+            admissionControlService.recordRows(appCode, entitySet, result.getData().size());
 
-            // 构建响应
-            Map<String, Object> response = new HashMap<>();
-            response.put("@odata.context", "$metadata#" + entitySet);
-            response.put("@odata.application", appCode);
-            response.put("value", result.getData());
-            
+            // 构建响应（按协商的格式流式写出）
+            Map<String, Object> annotations = new LinkedHashMap<>();
+            annotations.put("@odata.context", "$metadata#" + entitySet);
+            annotations.put("@odata.application", appCode);
             if (result.getCount() > 0) {
-                response.put("@odata.count", result.getCount());
+                annotations.put("@odata.count", result.getCount());
             }
 
-            return ResponseEntity.ok(response);
+            StreamingResponseBody body = odataResponseWriter.writeEntitySet(format, annotations, result);
+            return ResponseEntity.ok().contentType(format.getMediaType()).body(body);
 
+        } catch (QueryTimeoutException e) {
+            return queryTimeout(format);
+        } catch (QueryRejectedException e) {
+            return serviceUnavailable(format);
         } catch (Exception e) {
             log.error("Failed to query entity set: {} in application: {}", entitySet, appCode, e);
             
@@ -98,26 +177,49 @@ public class ApplicationODataController {
                 "message", e.getMessage()
             ));
             
-            return ResponseEntity.badRequest().body(error);
+            return ResponseEntity.badRequest().contentType(format.getDocumentFormat().getMediaType())
+                    .body(odataResponseWriter.writeEntity(format, error));
         }
     }
 
     /**
      * 获取应用下的单个实体
      */
-    @GetMapping(value = "/{entitySet}({key})", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Map<String, Object>> getEntity(
+    @GetMapping(value = "/{entitySet}({key})",
+            produces = {MediaType.APPLICATION_JSON_VALUE, ODataFormat.CBOR_VALUE, ODataFormat.SMILE_VALUE})
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> getEntity(
             @PathVariable String appCode,
             @PathVariable String entitySet,
-            @PathVariable String key) {
+            @PathVariable String key,
+            HttpServletRequest request) {
         
+        ODataFormat format = ODataFormat.resolve(request.getParameter("$format"), request.getHeader(HttpHeaders.ACCEPT));
+        QueryContext context = QueryContext.fromPreferHeader(request.getHeader("Prefer"));
+        serverTimingWriter.start(context, "entity", appCode, entitySet);
+        boolean debugTiming = ServerTimingWriter.isDebugTiming(request.getParameter(ServerTimingWriter.DEBUG_PARAMETER));
+
+        long retryAfterNanos = admissionControlService.tryAdmit(appCode, entitySet);
+        if (retryAfterNanos > 0) {
+            return odataQueryExecutor.completed(
+                    serverTimingWriter.finish(tooManyRequests(format, retryAfterNanos), context, false));
+        }
+
+        return odataQueryExecutor.execute(
+                () -> serverTimingWriter.finish(doGetEntity(appCode, entitySet, key, format, context),
+                        context, debugTiming),
+                () -> serviceUnavailable(format), context);
+    }
+
+    private ResponseEntity<StreamingResponseBody> doGetEntity(String appCode, String entitySet, String key, ODataFormat format, QueryContext context) {
         try {
             // 验证应用和实体
-            if (applicationService.getApplicationByCode(appCode).isEmpty()) {
+            long begin = context.getTiming().begin();
+            List<ApplicationEntity> appEntities = getApplicationEntities(appCode);
+            context.getTiming().stop(RequestTiming.Phase.CATALOG, begin);
+            if (appEntities == null) {
                 return ResponseEntity.notFound().build();
             }
 
-            List<ApplicationEntity> appEntities = applicationService.getApplicationEntitiesByCode(appCode);
             boolean entityExists = appEntities.stream()
                     .anyMatch(ae -> ae.getEntityName().equals(entitySet));
             
@@ -125,27 +227,29 @@ public class ApplicationODataController {
                 return ResponseEntity.notFound().build();
             }
 
-            // 构建过滤条件查询单个实体
-            Map<String, String> queryParams = new HashMap<>();
-            queryParams.put("$filter", "id eq " + key);
-            queryParams.put("$top", "1");
-
-            log.info("OData get entity: {} with key: {} in application: {}", entitySet, key, appCode);
+            // 按键查询单个实体
+            log.debug("OData get entity: {} with key: {} in application: {}", entitySet, key, appCode);
 
-            ODataQueryService.QueryResult result = odataQueryService.queryEntities(entitySet, queryParams);
+            hotKeyTracker.recordKey(appCode, entitySet, key);
+            Map<String, Object> entity = odataQueryService.findByKey(entitySet, key, context);
 
-            if (result.getData().isEmpty()) {
+            if (entity == null) {
                 return ResponseEntity.notFound().build();
             }
 
             // 构建响应
-            Map<String, Object> response = new HashMap<>();
+            Map<String, Object> response = new LinkedHashMap<>();
             response.put("@odata.context", "$metadata#" + entitySet + "/$entity");
             response.put("@odata.application", appCode);
-            response.putAll(result.getData().get(0));
+            response.putAll(entity);
 
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().contentType(format.getMediaType())
+                    .body(odataResponseWriter.writeEntity(format, response));
 
+        } catch (QueryTimeoutException e) {
+            return queryTimeout(format);
+        } catch (QueryRejectedException e) {
+            return serviceUnavailable(format);
         } catch (Exception e) {
             log.error("Failed to get entity: {} with key: {} in application: {}", entitySet, key, appCode, e);
             
@@ -155,7 +259,8 @@ public class ApplicationODataController {
                 "message", e.getMessage()
             ));
             
-            return ResponseEntity.badRequest().body(error);
+            return ResponseEntity.badRequest().contentType(format.getDocumentFormat().getMediaType())
+                    .body(odataResponseWriter.writeEntity(format, error));
         }
     }
 
@@ -165,13 +270,11 @@ public class ApplicationODataController {
     @GetMapping(value = "/$metadata", produces = "application/xml")
     public ResponseEntity<String> getApplicationMetadata(@PathVariable String appCode) {
         try {
-            // 验证应用是否存在
-            if (applicationService.getApplicationByCode(appCode).isEmpty()) {
+            // 获取应用下的所有实体（应用不存在时为null）
+            List<ApplicationEntity> entities = getApplicationEntities(appCode);
+            if (entities == null) {
                 return ResponseEntity.notFound().build();
             }
-
-            // 获取应用下的所有实体
-            List<ApplicationEntity> entities = applicationService.getApplicationEntitiesByCode(appCode);
             
             // 生成应用特定的元数据
             String metadata = generateApplicationMetadata(appCode, entities);
@@ -192,13 +295,11 @@ public class ApplicationODataController {
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Map<String, Object>> getApplicationServiceDocument(@PathVariable String appCode) {
         try {
-            // 验证应用是否存在
-            if (applicationService.getApplicationByCode(appCode).isEmpty()) {
+            // 获取应用下的所有实体（应用不存在时为null）
+            List<ApplicationEntity> entities = getApplicationEntities(appCode);
+            if (entities == null) {
                 return ResponseEntity.notFound().build();
             }
-
-            // 获取应用下的所有实体
-            List<ApplicationEntity> entities = applicationService.getApplicationEntitiesByCode(appCode);
             
             // 构建服务文档
             Map<String, Object> serviceDocument = new HashMap<>();
@@ -233,6 +334,15 @@ public class ApplicationODataController {
         }
     }
 
+    /**
+     * 获取应用下的实体列表（经元数据缓存），应用不存在时返回null
+     */
+    private List<ApplicationEntity> getApplicationEntities(String appCode) {
+        return responseCache.getApplicationEntities(appCode,
+                () -> applicationService.getApplicationByCode(appCode).isPresent()
+                        ? applicationService.getApplicationEntitiesByCode(appCode) : null);
+    }
+
     /**
      * 生成应用特定的元数据XML
      */
@@ -269,4 +379,45 @@ public class ApplicationODataController {
         
         return metadata.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * 超出应用限流配置
+     */
+    private ResponseEntity<StreamingResponseBody> tooManyRequests(ODataFormat format, long retryAfterNanos) {
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + 999_999_999L));
+        return odataResponseWriter.writeError(format,
+                ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds)),
+                "TOO_MANY_REQUESTS", "Rate limit exceeded for application");
+    }
+
+    /**
+     * 查询语句执行超时
+     */
+    private ResponseEntity<StreamingResponseBody> queryTimeout(ODataFormat format) {
+        return odataResponseWriter.writeError(format, ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT),
+                "QUERY_TIMEOUT", "Query exceeded its time limit");
+    }
+
+    /**
+     * 查询执行器饱和或等待超时
+     */
+    /**
+     * Arrow 流式输出在写出响应体时才申请并发许可，被拒绝时尚未写出数据，返回 503
+     */
+    @ExceptionHandler(QueryRejectedException.class)
+    public ResponseEntity<Map<String, Object>> streamRejected() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Map.of("error", Map.of(
+                    "code", "SERVICE_UNAVAILABLE",
+                    "message", "Query executor is busy, please retry later"
+                )));
+    }
+
+    private ResponseEntity<StreamingResponseBody> serviceUnavailable(ODataFormat format) {
+        return odataResponseWriter.writeError(format,
+                ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1"),
+                "SERVICE_UNAVAILABLE", "Query executor is busy, please retry later");
+    }
+}
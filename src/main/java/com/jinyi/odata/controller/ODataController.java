@@ -1,14 +1,28 @@
 package com.jinyi.odata.controller;
 
+import com.jinyi.odata.format.ArrowResponseWriter;
+import com.jinyi.odata.format.ODataFormat;
+import com.jinyi.odata.format.ODataResponseWriter;
+import com.jinyi.odata.format.ServerTimingWriter;
+import com.jinyi.odata.ratelimit.QueryRejectedException;
+import com.jinyi.odata.service.HotKeyTracker;
+import com.jinyi.odata.service.ODataQueryExecutor;
 import com.jinyi.odata.service.ODataQueryService;
+import com.jinyi.odata.service.QueryContext;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -23,39 +37,83 @@ public class ODataController {
     @Autowired
     private ODataQueryService odataQueryService;
 
+    @Autowired
+    private ODataResponseWriter odataResponseWriter;
+
+    @Autowired
+    private ArrowResponseWriter arrowResponseWriter;
+
+    @Autowired
+    private ODataQueryExecutor odataQueryExecutor;
+
+    @Autowired
+    private ServerTimingWriter serverTimingWriter;
+
+    @Autowired
+    private HotKeyTracker hotKeyTracker;
+
     /**
      * 查询实体集合
      */
-    @GetMapping(value = "/{entitySet}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Map<String, Object>> queryEntitySet(
+    @GetMapping(value = "/{entitySet:[^(]+}",
+            produces = {MediaType.APPLICATION_JSON_VALUE, ODataFormat.CBOR_VALUE, ODataFormat.SMILE_VALUE,
+                    ODataFormat.ARROW_VALUE})
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> queryEntitySet(
             @PathVariable String entitySet,
             HttpServletRequest request) {
         
+        ODataFormat format = ODataFormat.resolve(request.getParameter("$format"), request.getHeader(HttpHeaders.ACCEPT));
+        QueryContext context = QueryContext.fromPreferHeader(request.getHeader("Prefer"));
+        serverTimingWriter.start(context, "entitySet", null, entitySet);
+        boolean debugTiming = ServerTimingWriter.isDebugTiming(request.getParameter(ServerTimingWriter.DEBUG_PARAMETER));
+
+        // 提取查询参数（异步执行时不能再访问请求对象）
+        Map<String, String> queryParams = new HashMap<>();
+        request.getParameterMap().forEach((key, values) -> {
+            if (values.length > 0) {
+                queryParams.put(key, values[0]);
+            }
+        });
+
+        return odataQueryExecutor.execute(
+                () -> serverTimingWriter.finish(doQueryEntitySet(entitySet, queryParams, format, context),
+                        context, debugTiming),
+                () -> serviceUnavailable(format), context);
+    }
+
+    private ResponseEntity<StreamingResponseBody> doQueryEntitySet(String entitySet,
+                                                                   Map<String, String> queryParams,
+                                                                   ODataFormat format, QueryContext context) {
         try {
-            // 提取查询参数
-            Map<String, String> queryParams = new HashMap<>();
-            request.getParameterMap().forEach((key, values) -> {
-                if (values.length > 0) {
-                    queryParams.put(key, values[0]);
-                }
-            });
+            log.debug("OData query for entity: {} with params: {}", entitySet, queryParams);
+
+            hotKeyTracker.recordFilter(null, entitySet, queryParams.get("$filter"));
 
-            log.info("OData query for entity: {} with params: {}", entitySet, queryParams);
+            // Arrow列式输出：直接从ResultSet按批次写出
+            if (format == ODataFormat.ARROW) {
+                ODataQueryService.SqlQuery query = odataQueryService.buildQuery(entitySet, queryParams);
+                query.setContext(context);
+                return ResponseEntity.ok().contentType(format.getMediaType())
+                        .body(arrowResponseWriter.writeEntitySet(query));
+            }
 
             // 执行查询
-            ODataQueryService.QueryResult result = odataQueryService.queryEntities(entitySet, queryParams);
+            ODataQueryService.QueryResult result = odataQueryService.queryEntities(entitySet, queryParams, context);
 
-            // 构建响应
-            Map<String, Object> response = new HashMap<>();
-            response.put("@odata.context", "$metadata#" + entitySet);
-            response.put("value", result.getData());
-            
+            // 构建响应（按协商的格式流式写出）
+            Map<String, Object> annotations = new LinkedHashMap<>();
+            annotations.put("@odata.context", "$metadata#" + entitySet);
             if (result.getCount() > 0) {
-                response.put("@odata.count", result.getCount());
+                annotations.put("@odata.count", result.getCount());
             }
 
-            return ResponseEntity.ok(response);
+            StreamingResponseBody body = odataResponseWriter.writeEntitySet(format, annotations, result);
+            return ResponseEntity.ok().contentType(format.getMediaType()).body(body);
 
+        } catch (QueryTimeoutException e) {
+            return queryTimeout(format);
+        } catch (QueryRejectedException e) {
+            return serviceUnavailable(format);
         } catch (Exception e) {
             log.error("Failed to query entity set: {}", entitySet, e);
             
@@ -65,44 +123,56 @@ public class ODataController {
                 "message", e.getMessage()
             ));
             
-            return ResponseEntity.badRequest().body(error);
+            return ResponseEntity.badRequest().contentType(format.getDocumentFormat().getMediaType())
+                    .body(odataResponseWriter.writeEntity(format, error));
         }
     }
 
     /**
      * 获取单个实体
      */
-    @GetMapping(value = "/{entitySet}({key})", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Map<String, Object>> getEntity(
+    @GetMapping(value = "/{entitySet}({key})",
+            produces = {MediaType.APPLICATION_JSON_VALUE, ODataFormat.CBOR_VALUE, ODataFormat.SMILE_VALUE})
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> getEntity(
             @PathVariable String entitySet,
-            @PathVariable String key) {
+            @PathVariable String key,
+            HttpServletRequest request) {
         
-        try {
-            // 构建过滤条件查询单个实体
-            Map<String, String> queryParams = new HashMap<>();
-            queryParams.put("$filter", "id eq " + key);
-            queryParams.put("$top", "1");
+        ODataFormat format = ODataFormat.resolve(request.getParameter("$format"), request.getHeader(HttpHeaders.ACCEPT));
+        QueryContext context = QueryContext.fromPreferHeader(request.getHeader("Prefer"));
+        serverTimingWriter.start(context, "entity", null, entitySet);
+        boolean debugTiming = ServerTimingWriter.isDebugTiming(request.getParameter(ServerTimingWriter.DEBUG_PARAMETER));
 
-            log.info("OData get entity: {} with key: {}", entitySet, key);
+        return odataQueryExecutor.execute(
+                () -> serverTimingWriter.finish(doGetEntity(entitySet, key, format, context),
+                        context, debugTiming),
+                () -> serviceUnavailable(format), context);
+    }
 
-            ODataQueryService.QueryResult result = odataQueryService.queryEntities(entitySet, queryParams);
+    private ResponseEntity<StreamingResponseBody> doGetEntity(String entitySet, String key, ODataFormat format, QueryContext context) {
+        try {
+            // 按键查询单个实体
+            log.debug("OData get entity: {} with key: {}", entitySet, key);
 
-            if (result.getData().isEmpty()) {
-                Map<String, Object> error = new HashMap<>();
-                error.put("error", Map.of(
-                    "code", "NOT_FOUND",
-                    "message", "Entity not found"
-                ));
+            hotKeyTracker.recordKey(null, entitySet, key);
+            Map<String, Object> entity = odataQueryService.findByKey(entitySet, key, context);
+
+            if (entity == null) {
                 return ResponseEntity.notFound().build();
             }
 
             // 构建响应
-            Map<String, Object> response = new HashMap<>();
+            Map<String, Object> response = new LinkedHashMap<>();
             response.put("@odata.context", "$metadata#" + entitySet + "/$entity");
-            response.putAll(result.getData().get(0));
+            response.putAll(entity);
 
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().contentType(format.getMediaType())
+                    .body(odataResponseWriter.writeEntity(format, response));
 
+        } catch (QueryTimeoutException e) {
+            return queryTimeout(format);
+        } catch (QueryRejectedException e) {
+            return serviceUnavailable(format);
         } catch (Exception e) {
             log.error("Failed to get entity: {} with key: {}", entitySet, key, e);
             
@@ -112,7 +182,8 @@ public class ODataController {
                 "message", e.getMessage()
             ));
             
-            return ResponseEntity.badRequest().body(error);
+            return ResponseEntity.badRequest().contentType(format.getDocumentFormat().getMediaType())
+                    .body(odataResponseWriter.writeEntity(format, error));
         }
     }
 
@@ -173,4 +244,34 @@ public class ODataController {
             .contentType(MediaType.APPLICATION_XML)
             .body(metadata);
     }
-}
\ No newline at end of file
+
+    /**
+     * 查询语句执行超时
+     */
+    private ResponseEntity<StreamingResponseBody> queryTimeout(ODataFormat format) {
+        return odataResponseWriter.writeError(format, ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT),
+                "QUERY_TIMEOUT", "Query exceeded its time limit");
+    }
+
+    /**
+     * 查询执行器饱和或等待超时
+     */
+    /**
+     * Arrow 流式输出在写出响应体时才申请并发许可，被拒绝时尚未写出数据，返回 503
+     */
+    @ExceptionHandler(QueryRejectedException.class)
+    public ResponseEntity<Map<String, Object>> streamRejected() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Map.of("error", Map.of(
+                    "code", "SERVICE_UNAVAILABLE",
+                    "message", "Query executor is busy, please retry later"
+                )));
+    }
+
+    private ResponseEntity<StreamingResponseBody> serviceUnavailable(ODataFormat format) {
+        return odataResponseWriter.writeError(format,
+                ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1"),
+                "SERVICE_UNAVAILABLE", "Query executor is busy, please retry later");
+    }
+}
@@ -0,0 +1,50 @@
+package com.jinyi.odata.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * 数据库方言服务
+ * 识别当前数据库产品，提供与驱动相关的参数（如流式读取的fetchSize）
+ */
+@Service
+@Slf4j
+public class DatabaseDialectService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private volatile String productName;
+
+    /**
+     * 获取数据库产品名称
+     */
+    public String getProductName() {
+        String name = productName;
+        if (name == null) {
+            try {
+                name = jdbcTemplate.execute(
+                        (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+            } catch (Exception e) {
+                log.warn("Failed to detect database product: {}", e.getMessage());
+                return "";
+            }
+            productName = name;
+        }
+        return name;
+    }
+
+    public boolean isMySql() {
+        return "MySQL".equalsIgnoreCase(getProductName());
+    }
+
+    /**
+     * 流式读取的fetchSize：MySQL驱动只有在fetchSize为Integer.MIN_VALUE时才逐行读取
+     */
+    public int getStreamingFetchSize(int defaultFetchSize) {
+        return isMySql() ? Integer.MIN_VALUE : defaultFetchSize;
+    }
+}
@@ -0,0 +1,75 @@
+package com.jinyi.odata.core;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 实体元数据
+ * 统一描述注解实体和动态实体的属性结构，供查询、序列化等模块使用
+ */
+@Getter
+public class EntityMetadata {
+
+    private final String entityName;
+    private final String tableName;
+    private final Class<?> entityClass;
+    private final List<PropertyMetadata> properties;
+    private final List<PropertyMetadata> keyProperties;
+
+    private final Map<String, PropertyMetadata> propertiesByName;
+    private final Map<String, PropertyMetadata> propertiesByColumn;
+
+    public EntityMetadata(String entityName, String tableName, Class<?> entityClass, List<PropertyMetadata> properties) {
+        this.entityName = entityName;
+        this.tableName = tableName;
+        this.entityClass = entityClass;
+        this.properties = Collections.unmodifiableList(properties);
+        this.keyProperties = properties.stream()
+                .filter(PropertyMetadata::isKey)
+                .collect(Collectors.toUnmodifiableList());
+
+        Map<String, PropertyMetadata> byName = new LinkedHashMap<>();
+        Map<String, PropertyMetadata> byColumn = new LinkedHashMap<>();
+        for (PropertyMetadata property : properties) {
+            byName.put(property.getName(), property);
+            byColumn.put(property.getColumnName().toLowerCase(Locale.ROOT), property);
+        }
+        this.propertiesByName = Collections.unmodifiableMap(byName);
+        this.propertiesByColumn = Collections.unmodifiableMap(byColumn);
+    }
+
+    /**
+     * 根据属性名获取属性
+     */
+    public PropertyMetadata getProperty(String name) {
+        return propertiesByName.get(name);
+    }
+
+    /**
+     * 根据列名获取属性（忽略大小写）
+     */
+    public PropertyMetadata getPropertyByColumn(String columnName) {
+        return columnName != null ? propertiesByColumn.get(columnName.toLowerCase(Locale.ROOT)) : null;
+    }
+
+    /**
+     * 根据属性名或列名解析属性
+     */
+    public PropertyMetadata resolveProperty(String nameOrColumn) {
+        PropertyMetadata property = getProperty(nameOrColumn);
+        return property != null ? property : getPropertyByColumn(nameOrColumn);
+    }
+
+    /**
+     * 是否为动态实体
+     */
+    public boolean isDynamic() {
+        return entityClass == null;
+    }
+}
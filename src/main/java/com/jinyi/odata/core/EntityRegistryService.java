@@ -3,22 +3,26 @@ package com.jinyi.odata.core;
 import com.jinyi.odata.annotation.ODataEntity;
 import com.jinyi.odata.annotation.ODataField;
 import com.jinyi.odata.dynamic.DynamicEntityRegistrationService;
+import com.jinyi.odata.dynamic.EntityDefinition;
 import lombok.extern.slf4j.Slf4j;
 import org.reflections.Reflections;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
+import java.sql.ResultSet;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * OData实体注册服务
- * 负责扫描和注册OData实体，管理实体与数据库表的映射关系
+ * 负责扫描和注册OData实体，管理实体与数据库表的映射关系。
+ * 注解实体只在启动时注册；动态实体的注册表为不可变快照，注册/注销时复制后整体替换，读取不加锁
  */
 @Service
 @Slf4j
@@ -30,8 +34,14 @@ public class EntityRegistryService {
     private final Map<String, Class<?>> entityRegistry = new ConcurrentHashMap<>();
     private final Map<String, String> entityTableMapping = new ConcurrentHashMap<>();
     
-    // 动态实体注册
-    private final Map<String, DynamicEntityRegistrationService> dynamicEntityServices = new ConcurrentHashMap<>();
+    // 动态实体注册（不可变快照，表名和元数据由动态实体服务的快照提供）
+    private volatile Map<String, DynamicEntityRegistrationService> dynamicEntityServices = Map.of();
+
+    // 注解实体元数据缓存
+    private final Map<String, EntityMetadata> entityMetadataCache = new ConcurrentHashMap<>();
+
+    // 注解实体的行编解码器（注册时预先生成访问器）
+    private final Map<String, EntityRowCodec> rowCodecs = new ConcurrentHashMap<>();
 
     @PostConstruct
     public void scanAndRegisterEntities() {
@@ -55,12 +65,21 @@ public class EntityRegistryService {
         
         entityRegistry.put(entityName, entityClass);
         entityTableMapping.put(entityName, tableName);
+        createRowCodec(entityName, tableName, entityClass);
         
         log.info("Registered entity: {} -> table: {}", entityName, tableName);
         
         createTableIfNotExists(entityClass, tableName);
     }
 
+    private void createRowCodec(String entityName, String tableName, Class<?> entityClass) {
+        try {
+            rowCodecs.put(entityName, EntityRowCodec.create(buildEntityMetadata(entityName, tableName, entityClass)));
+        } catch (IllegalArgumentException e) {
+            log.warn("Entity {} will be queried as map rows: {}", entityName, e.getMessage());
+        }
+    }
+
     private void createTableIfNotExists(Class<?> entityClass, String tableName) {
         try {
             StringBuilder sql = new StringBuilder();
@@ -105,11 +124,47 @@ public class EntityRegistryService {
             jdbcTemplate.execute(sql.toString());
             log.info("Table {} created successfully", tableName);
             
+            addMissingColumns(entityClass, tableName);
+            
         } catch (Exception e) {
             log.error("Failed to create table {}: {}", tableName, e.getMessage());
         }
     }
 
+    /**
+     * 补齐已有表缺少的列（CREATE TABLE IF NOT EXISTS 不会修改已存在的表）
+     * 新增列一律允许为空，避免已有数据无法满足NOT NULL约束
+     */
+    private void addMissingColumns(Class<?> entityClass, String tableName) {
+        Set<String> existingColumns = jdbcTemplate.execute((ConnectionCallback<Set<String>>) connection -> {
+            Set<String> columns = new HashSet<>();
+            try (ResultSet rs = connection.getMetaData().getColumns(connection.getCatalog(), null, tableName, null)) {
+                while (rs.next()) {
+                    columns.add(rs.getString("COLUMN_NAME").toLowerCase());
+                }
+            }
+            return columns;
+        });
+        if (existingColumns == null || existingColumns.isEmpty()) {
+            return;
+        }
+
+        for (Field field : entityClass.getDeclaredFields()) {
+            ODataField fieldAnnotation = field.getAnnotation(ODataField.class);
+            if (fieldAnnotation == null || fieldAnnotation.key()) {
+                continue;
+            }
+            String columnName = fieldAnnotation.name().isEmpty() ?
+                camelToSnake(field.getName()) : fieldAnnotation.name();
+            if (!existingColumns.contains(columnName.toLowerCase())) {
+                String sql = "ALTER TABLE " + tableName + " ADD COLUMN " + columnName + " "
+                        + getSqlType(field.getType(), fieldAnnotation);
+                jdbcTemplate.execute(sql);
+                log.info("Added column {} to table {}", columnName, tableName);
+            }
+        }
+    }
+
     private String getSqlType(Class<?> fieldType, ODataField fieldAnnotation) {
         if (fieldType == String.class) {
             return "VARCHAR(" + fieldAnnotation.length() + ")";
@@ -136,7 +191,13 @@ public class EntityRegistryService {
     }
 
     public String getTableName(String entityName) {
-        return entityTableMapping.get(entityName);
+        String tableName = entityTableMapping.get(entityName);
+        if (tableName != null) {
+            return tableName;
+        }
+        DynamicEntityRegistrationService service = dynamicEntityServices.get(entityName);
+        EntityDefinition entityDef = service != null ? service.getEntityDefinition(entityName) : null;
+        return entityDef != null ? entityDef.getTableName() : null;
     }
 
     public Class<?> getEntityClass(String entityName) {
@@ -144,20 +205,63 @@ public class EntityRegistryService {
     }
 
     /**
-     * 注册动态实体
+     * 获取注解实体的行编解码器，动态实体或无法生成访问器时返回null
      */
-    public void registerDynamicEntity(String entityName, String tableName, DynamicEntityRegistrationService service) {
-        entityTableMapping.put(entityName, tableName);
-        dynamicEntityServices.put(entityName, service);
-        log.info("Registered dynamic entity: {} -> table: {}", entityName, tableName);
+    public EntityRowCodec getRowCodec(String entityName) {
+        return rowCodecs.get(entityName);
+    }
+
+    /**
+     * 获取实体元数据（包括动态实体）
+     */
+    public EntityMetadata getEntityMetadata(String entityName) {
+        EntityMetadata cached = entityMetadataCache.get(entityName);
+        if (cached != null) {
+            return cached;
+        }
+
+        Class<?> entityClass = entityRegistry.get(entityName);
+        if (entityClass != null) {
+            return entityMetadataCache.computeIfAbsent(entityName,
+                    name -> buildEntityMetadata(name, entityTableMapping.get(name), entityClass));
+        }
+
+        // 动态实体的元数据随定义一起发布，不在此缓存
+        DynamicEntityRegistrationService service = dynamicEntityServices.get(entityName);
+        return service != null ? service.getEntityMetadata(entityName) : null;
+    }
+
+    private EntityMetadata buildEntityMetadata(String entityName, String tableName, Class<?> entityClass) {
+        List<PropertyMetadata> properties = new ArrayList<>();
+        for (Field field : entityClass.getDeclaredFields()) {
+            ODataField fieldAnnotation = field.getAnnotation(ODataField.class);
+            if (fieldAnnotation != null) {
+                String columnName = fieldAnnotation.name().isEmpty() ?
+                    camelToSnake(field.getName()) : fieldAnnotation.name();
+                properties.add(new PropertyMetadata(field.getName(), columnName, field.getType(),
+                        fieldAnnotation.key(), fieldAnnotation.nullable(), fieldAnnotation.length()));
+            }
+        }
+        return new EntityMetadata(entityName, tableName, entityClass, properties);
+    }
+
+    /**
+     * 注册动态实体，调用前实体定义应已在动态实体服务中发布
+     */
+    public synchronized void registerDynamicEntity(String entityName, DynamicEntityRegistrationService service) {
+        Map<String, DynamicEntityRegistrationService> services = new HashMap<>(dynamicEntityServices);
+        services.put(entityName, service);
+        dynamicEntityServices = Collections.unmodifiableMap(services);
+        log.info("Registered dynamic entity: {} -> table: {}", entityName, getTableName(entityName));
     }
 
     /**
      * 注销动态实体
      */
-    public void unregisterDynamicEntity(String entityName) {
-        entityTableMapping.remove(entityName);
-        dynamicEntityServices.remove(entityName);
+    public synchronized void unregisterDynamicEntity(String entityName) {
+        Map<String, DynamicEntityRegistrationService> services = new HashMap<>(dynamicEntityServices);
+        services.remove(entityName);
+        dynamicEntityServices = Collections.unmodifiableMap(services);
         log.info("Unregistered dynamic entity: {}", entityName);
     }
 
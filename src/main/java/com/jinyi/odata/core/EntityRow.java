@@ -0,0 +1,111 @@
+package com.jinyi.odata.core;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 注解实体的查询结果行
+ * 包装一个实体对象，序列化时按查询的列布局通过预生成的访问器写出；同时以只读Map的形式兼容按Map处理行数据的代码
+ */
+@JsonSerialize(using = EntityRow.Serializer.class)
+public final class EntityRow extends AbstractMap<String, Object> {
+
+    private final Object entity;
+    private final EntityRowCodec.Layout layout;
+
+    EntityRow(Object entity, EntityRowCodec.Layout layout) {
+        this.entity = entity;
+        this.layout = layout;
+    }
+
+    /**
+     * 获取实体对象
+     */
+    public Object getEntity() {
+        return entity;
+    }
+
+    @Override
+    public Object get(Object key) {
+        EntityRowCodec.Column column = layout.columnsByName.get(key);
+        return column != null ? column.property.getter.apply(entity) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return layout.columnsByName.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return layout.columns.length;
+    }
+
+    /**
+     * 按列顺序遍历的视图，不复制数据
+     */
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < layout.columns.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        EntityRowCodec.Column column = layout.columns[next++];
+                        return new SimpleImmutableEntry<>(column.name.getValue(), column.property.getter.apply(entity));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return layout.columns.length;
+            }
+        };
+    }
+
+    /**
+     * Jackson序列化器：按列布局直接写出字段，不经过反射和Map遍历
+     */
+    public static class Serializer extends StdSerializer<EntityRow> {
+
+        public Serializer() {
+            super(EntityRow.class);
+        }
+
+        @Override
+        public void serialize(EntityRow row, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject(row);
+            for (EntityRowCodec.Column column : row.layout.columns) {
+                generator.writeFieldName(column.name);
+                Object value = column.property.getter.apply(row.entity);
+                if (value == null) {
+                    generator.writeNull();
+                } else {
+                    column.property.writer.write(generator, value);
+                }
+            }
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.jinyi.odata.core;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.springframework.beans.BeanUtils;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.ClassUtils;
+
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 注解实体的行编解码器
+ * 注册实体时通过 LambdaMetafactory 为构造方法和各属性的getter/setter生成访问器；
+ * 查询时首行解析列位置，之后逐行创建实体对象并按类型读取各列，序列化时直接调用getter
+ */
+public class EntityRowCodec {
+
+    @FunctionalInterface
+    interface ColumnReader {
+        Object read(ResultSet rs, int column) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface ValueWriter {
+        void write(JsonGenerator generator, Object value) throws IOException;
+    }
+
+    private static final Map<Class<?>, ColumnReader> READERS = Map.of(
+            String.class, ResultSet::getString,
+            Long.class, (rs, column) -> {
+                long value = rs.getLong(column);
+                return rs.wasNull() ? null : value;
+            },
+            Integer.class, (rs, column) -> {
+                int value = rs.getInt(column);
+                return rs.wasNull() ? null : value;
+            },
+            BigDecimal.class, ResultSet::getBigDecimal,
+            LocalDateTime.class, (rs, column) -> rs.getObject(column, LocalDateTime.class),
+            Boolean.class, (rs, column) -> {
+                boolean value = rs.getBoolean(column);
+                return rs.wasNull() ? null : value;
+            });
+
+    private static final Map<Class<?>, ValueWriter> WRITERS = Map.of(
+            String.class, (generator, value) -> generator.writeString((String) value),
+            Long.class, (generator, value) -> generator.writeNumber((Long) value),
+            Integer.class, (generator, value) -> generator.writeNumber((Integer) value),
+            BigDecimal.class, (generator, value) -> generator.writeNumber((BigDecimal) value),
+            Boolean.class, (generator, value) -> generator.writeBoolean((Boolean) value));
+
+    /** 其他类型（如日期）交给各输出格式的ObjectMapper处理 */
+    private static final ValueWriter OBJECT_WRITER = JsonGenerator::writeObject;
+
+    /**
+     * 属性访问器
+     */
+    static final class Property {
+        final BiConsumer<Object, Object> setter;
+        final Function<Object, Object> getter;
+        final ColumnReader reader;
+        final ValueWriter writer;
+
+        Property(BiConsumer<Object, Object> setter, Function<Object, Object> getter,
+                 ColumnReader reader, ValueWriter writer) {
+            this.setter = setter;
+            this.getter = getter;
+            this.reader = reader;
+            this.writer = writer;
+        }
+    }
+
+    /**
+     * 一次查询中的一列：结果集列序号、输出名和对应的属性
+     */
+    static final class Column {
+        final int index;
+        final SerializableString name;
+        final Property property;
+
+        Column(int index, SerializableString name, Property property) {
+            this.index = index;
+            this.name = name;
+            this.property = property;
+        }
+    }
+
+    /**
+     * 一次查询的列布局：按结果集顺序的列，以及按输出名查找列的索引
+     */
+    static final class Layout {
+        final Column[] columns;
+        final Map<String, Column> columnsByName = new HashMap<>();
+
+        Layout(Column[] columns) {
+            this.columns = columns;
+            for (Column column : columns) {
+                columnsByName.put(column.name.getValue(), column);
+            }
+        }
+    }
+
+    private final EntityMetadata metadata;
+    private final Supplier<Object> constructor;
+    private final Map<String, Property> propertiesByColumn;
+
+    private EntityRowCodec(EntityMetadata metadata, Supplier<Object> constructor,
+                           Map<String, Property> propertiesByColumn) {
+        this.metadata = metadata;
+        this.constructor = constructor;
+        this.propertiesByColumn = propertiesByColumn;
+    }
+
+    /**
+     * 为注解实体生成访问器
+     * @throws IllegalArgumentException 实体缺少无参构造方法、getter/setter，或属性类型不受支持
+     */
+    public static EntityRowCodec create(EntityMetadata metadata) {
+        Class<?> entityClass = metadata.getEntityClass();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Supplier<Object> constructor = constructor(lookup, entityClass);
+
+            Map<String, Property> properties = new HashMap<>();
+            for (PropertyMetadata property : metadata.getProperties()) {
+                Class<?> type = ClassUtils.resolvePrimitiveIfNecessary(property.getJavaType());
+                ColumnReader reader = READERS.get(type);
+                PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(entityClass, property.getName());
+                if (reader == null || descriptor == null
+                        || descriptor.getReadMethod() == null || descriptor.getWriteMethod() == null) {
+                    throw new IllegalArgumentException("Property " + property.getName()
+                            + " has no accessors or an unsupported type");
+                }
+                properties.put(property.getColumnName().toLowerCase(),
+                        new Property(setter(lookup, entityClass, descriptor.getWriteMethod(), type),
+                                getter(lookup, entityClass, descriptor.getReadMethod(), type),
+                                reader, WRITERS.getOrDefault(type, OBJECT_WRITER)));
+            }
+            return new EntityRowCodec(metadata, constructor, properties);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("Failed to create accessors for " + entityClass.getName()
+                    + ": " + e.getMessage(), e);
+        }
+    }
+
+    public EntityMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * 创建行映射器（有状态，每次查询创建一个）
+     * 结果集中存在不属于实体的列（如 $select 中的表达式）时整个查询改用 fallback 映射
+     */
+    public RowMapper<Map<String, Object>> rowMapper(RowMapper<Map<String, Object>> fallback) {
+        return new RowMapper<>() {
+            private Layout layout;
+            private boolean generic;
+
+            @Override
+            public Map<String, Object> mapRow(ResultSet rs, int rowNum) throws SQLException {
+                if (layout == null && !generic) {
+                    layout = resolveLayout(rs.getMetaData());
+                    generic = layout == null;
+                }
+                if (generic) {
+                    return fallback.mapRow(rs, rowNum);
+                }
+
+                Object entity = constructor.get();
+                for (Column column : layout.columns) {
+                    column.property.setter.accept(entity, column.property.reader.read(rs, column.index));
+                }
+                return new EntityRow(entity, layout);
+            }
+        };
+    }
+
+    private Layout resolveLayout(ResultSetMetaData metaData) throws SQLException {
+        Column[] columns = new Column[metaData.getColumnCount()];
+        for (int index = 1; index <= columns.length; index++) {
+            String columnName = metaData.getColumnName(index);
+            Property property = propertiesByColumn.get(columnName.toLowerCase());
+            if (property == null) {
+                return null;
+            }
+            columns[index - 1] = new Column(index, new SerializedString(columnName), property);
+        }
+        return new Layout(columns);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Object> constructor(MethodHandles.Lookup lookup, Class<?> entityClass) throws Throwable {
+        MethodHandle handle = lookup.findConstructor(entityClass, MethodType.methodType(void.class));
+        return (Supplier<Object>) LambdaMetafactory.metafactory(lookup, "get",
+                MethodType.methodType(Supplier.class),
+                MethodType.methodType(Object.class),
+                handle,
+                MethodType.methodType(entityClass)).getTarget().invokeExact();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> setter(MethodHandles.Lookup lookup, Class<?> entityClass,
+                                                     Method method, Class<?> type) throws Throwable {
+        return (BiConsumer<Object, Object>) LambdaMetafactory.metafactory(lookup, "accept",
+                MethodType.methodType(BiConsumer.class),
+                MethodType.methodType(void.class, Object.class, Object.class),
+                lookup.unreflect(method),
+                MethodType.methodType(void.class, entityClass, type)).getTarget().invokeExact();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> getter(MethodHandles.Lookup lookup, Class<?> entityClass,
+                                                   Method method, Class<?> type) throws Throwable {
+        return (Function<Object, Object>) LambdaMetafactory.metafactory(lookup, "apply",
+                MethodType.methodType(Function.class),
+                MethodType.methodType(Object.class, Object.class),
+                lookup.unreflect(method),
+                MethodType.methodType(type, entityClass)).getTarget().invokeExact();
+    }
+}
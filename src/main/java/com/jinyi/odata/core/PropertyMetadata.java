@@ -0,0 +1,32 @@
+package com.jinyi.odata.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 属性元数据
+ * 描述实体属性与数据库列的映射及其Java类型
+ */
+@Getter
+@AllArgsConstructor
+public class PropertyMetadata {
+
+    /**
+     * OData属性名（Java字段名）
+     */
+    private final String name;
+
+    /**
+     * 数据库列名
+     */
+    private final String columnName;
+
+    /**
+     * Java类型：String、Long、Integer、BigDecimal、LocalDateTime、Boolean
+     */
+    private final Class<?> javaType;
+
+    private final boolean key;
+    private final boolean nullable;
+    private final int length;
+}
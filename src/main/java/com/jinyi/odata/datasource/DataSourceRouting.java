@@ -0,0 +1,55 @@
+package com.jinyi.odata.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * 数据源路由上下文
+ * OData查询路径通过 onReplica 声明可读从库；写操作记录时间，窗口期内的读请求回到主库以保证读己之写
+ * 写入时间是进程级的：任意一次管理写入或DDL都会让窗口期内所有应用的OData查询回到主库，
+ * 写入只来自低频的管理接口，按表或应用区分无法覆盖元数据变更对所有查询的影响，因此保持全局
+ */
+public final class DataSourceRouting {
+
+    private static final ThreadLocal<Boolean> REPLICA_REQUESTED = new ThreadLocal<>();
+
+    private static volatile long lastPrimaryWriteNanos;
+
+    private DataSourceRouting() {
+    }
+
+    /**
+     * 在允许读从库的上下文中执行
+     */
+    public static <T> T onReplica(Supplier<T> action) {
+        Boolean previous = REPLICA_REQUESTED.get();
+        REPLICA_REQUESTED.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                REPLICA_REQUESTED.remove();
+            } else {
+                REPLICA_REQUESTED.set(previous);
+            }
+        }
+    }
+
+    public static boolean isReplicaRequested() {
+        return Boolean.TRUE.equals(REPLICA_REQUESTED.get());
+    }
+
+    /**
+     * 记录一次主库写入
+     */
+    public static void markPrimaryWrite() {
+        lastPrimaryWriteNanos = System.nanoTime();
+    }
+
+    /**
+     * 距最近一次主库写入是否仍在窗口期内
+     */
+    public static boolean isWithinWriteWindow(long windowMillis) {
+        long last = lastPrimaryWriteNanos;
+        return last != 0 && System.nanoTime() - last < windowMillis * 1_000_000L;
+    }
+}
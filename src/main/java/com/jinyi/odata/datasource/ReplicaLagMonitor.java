@@ -0,0 +1,20 @@
+package com.jinyi.odata.datasource;
+
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * 从库延迟定时检测
+ */
+public class ReplicaLagMonitor {
+
+    private final ReplicaRoutingDataSource dataSource;
+
+    public ReplicaLagMonitor(ReplicaRoutingDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Scheduled(fixedDelayString = "${odata.datasource.routing.lag-check-interval:5000}")
+    public void checkReplicaLag() {
+        dataSource.checkReplicas();
+    }
+}
@@ -0,0 +1,214 @@
+package com.jinyi.odata.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读写分离路由数据源
+ * 默认路由到主库；处于 DataSourceRouting.onReplica 上下文且不在写后窗口期时，从健康的从库中选择一个
+ * 主库和从库连接池由本数据源持有，容器关闭时随 close 一并关闭
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    public static final String PRIMARY_KEY = "primary";
+
+    private final DataSource primary;
+    private final List<ReplicaNode> replicas = new ArrayList<>();
+    private final ReplicaRoutingProperties.Routing routing;
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
+    /**
+     * 从库节点状态
+     */
+    static class ReplicaNode {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+        private volatile long lagSeconds;
+
+        ReplicaNode(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        int activeConnections() {
+            if (dataSource instanceof HikariDataSource) {
+                HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+                return pool != null ? pool.getActiveConnections() : 0;
+            }
+            return 0;
+        }
+    }
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicaDataSources,
+                                    ReplicaRoutingProperties.Routing routing) {
+        this.primary = primary;
+        this.routing = routing;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY_KEY, primary);
+        replicaDataSources.forEach((name, dataSource) -> {
+            replicas.add(new ReplicaNode(name, dataSource));
+            targets.put(name, dataSource);
+        });
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        ReplicaNode node = selectReplica();
+        return node != null ? node.name : PRIMARY_KEY;
+    }
+
+    /**
+     * 获取连接：从库不可用时标记为不健康并回退主库
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        ReplicaNode node = selectReplica();
+        if (node != null) {
+            try {
+                return node.dataSource.getConnection();
+            } catch (SQLException e) {
+                markUnhealthy(node, "connection failed: " + e.getMessage());
+            }
+        }
+        return primary.getConnection();
+    }
+
+    /**
+     * 关闭主库和所有从库连接池
+     */
+    @Override
+    public void close() {
+        for (ReplicaNode node : replicas) {
+            closeQuietly(node.name, node.dataSource);
+        }
+        closeQuietly(PRIMARY_KEY, primary);
+    }
+
+    private void closeQuietly(String name, DataSource dataSource) {
+        if (!(dataSource instanceof AutoCloseable)) {
+            return;
+        }
+        try {
+            ((AutoCloseable) dataSource).close();
+        } catch (Exception e) {
+            log.warn("Failed to close data source {}: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * 选择从库，返回null表示使用主库
+     */
+    ReplicaNode selectReplica() {
+        if (!DataSourceRouting.isReplicaRequested()
+                || DataSourceRouting.isWithinWriteWindow(routing.getReadAfterWriteWindow())) {
+            return null;
+        }
+
+        List<ReplicaNode> candidates = new ArrayList<>(replicas.size());
+        for (ReplicaNode node : replicas) {
+            if (node.healthy) {
+                candidates.add(node);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        if ("least-loaded".equalsIgnoreCase(routing.getStrategy())) {
+            ReplicaNode best = null;
+            int bestActive = Integer.MAX_VALUE;
+            for (ReplicaNode node : candidates) {
+                int active = node.activeConnections();
+                if (active < bestActive) {
+                    best = node;
+                    bestActive = active;
+                }
+            }
+            return best;
+        }
+        return candidates.get(Math.floorMod(roundRobin.getAndIncrement(), candidates.size()));
+    }
+
+    /**
+     * 检测所有从库的复制延迟，更新健康状态
+     */
+    public void checkReplicas() {
+        for (ReplicaNode node : replicas) {
+            try {
+                Long lag = queryLagSeconds(node.dataSource);
+                if (lag == null) {
+                    markUnhealthy(node, "replication is not running");
+                } else if (lag > routing.getMaxLagSeconds()) {
+                    node.lagSeconds = lag;
+                    markUnhealthy(node, "lag " + lag + "s exceeds " + routing.getMaxLagSeconds() + "s");
+                } else {
+                    node.lagSeconds = lag;
+                    if (!node.healthy) {
+                        log.info("Replica {} is back in rotation (lag {}s)", node.name, lag);
+                    }
+                    node.healthy = true;
+                }
+            } catch (Exception e) {
+                markUnhealthy(node, "lag check failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void markUnhealthy(ReplicaNode node, String reason) {
+        if (node.healthy) {
+            log.warn("Replica {} removed from rotation: {}", node.name, reason);
+        }
+        node.healthy = false;
+    }
+
+    private Long queryLagSeconds(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            if (StringUtils.hasText(routing.getLagQuery())) {
+                try (ResultSet rs = statement.executeQuery(routing.getLagQuery())) {
+                    return rs.next() ? rs.getLong(1) : null;
+                }
+            }
+
+            if (!"MySQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName())) {
+                statement.execute("SELECT 1");
+                return 0L;
+            }
+
+            // MySQL 8.0.22+ 使用 SHOW REPLICA STATUS，旧版本回退到 SHOW SLAVE STATUS
+            try (ResultSet rs = statement.executeQuery("SHOW REPLICA STATUS")) {
+                return rs.next() ? readLag(rs, "Seconds_Behind_Source") : null;
+            } catch (SQLException e) {
+                try (ResultSet rs = statement.executeQuery("SHOW SLAVE STATUS")) {
+                    return rs.next() ? readLag(rs, "Seconds_Behind_Master") : null;
+                }
+            }
+        }
+    }
+
+    private Long readLag(ResultSet rs, String column) throws SQLException {
+        long lag = rs.getLong(column);
+        return rs.wasNull() ? null : lag;
+    }
+}
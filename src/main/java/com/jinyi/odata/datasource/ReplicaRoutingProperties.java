@@ -0,0 +1,45 @@
+package com.jinyi.odata.datasource;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读写分离配置
+ */
+@Data
+@ConfigurationProperties(prefix = "odata.datasource")
+public class ReplicaRoutingProperties {
+
+    private Routing routing = new Routing();
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    @Data
+    public static class Routing {
+        /** 是否启用从库路由 */
+        private boolean enabled = false;
+        /** 从库选择策略：round-robin / least-loaded */
+        private String strategy = "round-robin";
+        /** 允许的最大复制延迟（秒），超过则暂停使用该从库 */
+        private long maxLagSeconds = 5;
+        /** 延迟检测间隔（毫秒） */
+        private long lagCheckInterval = 5000;
+        /** 主库写入后强制读主库的窗口（毫秒） */
+        private long readAfterWriteWindow = 3000;
+        /** 自定义延迟查询（返回秒数），为空时MySQL使用 SHOW REPLICA STATUS，其它数据库只做连通性检测 */
+        private String lagQuery;
+    }
+
+    @Data
+    public static class Replica {
+        private String name;
+        private String url;
+        private String username;
+        private String password;
+        private String driverClassName;
+        private int maximumPoolSize = 10;
+    }
+}
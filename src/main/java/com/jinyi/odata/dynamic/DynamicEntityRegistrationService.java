@@ -1,19 +1,43 @@
 package com.jinyi.odata.dynamic;
 
+import com.jinyi.odata.core.EntityMetadata;
 import com.jinyi.odata.core.EntityRegistryService;
+import com.jinyi.odata.core.PropertyMetadata;
+import com.jinyi.odata.datasource.DataSourceRouting;
+import com.jinyi.odata.jfr.DdlEvent;
+import com.jinyi.odata.jfr.EntityRegistryEvent;
+import com.jinyi.odata.service.EntityKeyCache;
+import com.jinyi.odata.service.ResponseCache;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.math.BigDecimal;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 动态实体注册服务
- * 负责动态实体的注册、管理和数据库表创建
+ * 负责动态实体的注册、管理和数据库表创建。
+ * 同一实体名的注册、替换和注销通过分段锁串行执行，注册时还锁定表名所在的分段，同一张表只能被一个实体使用；已注册实体（定义、字段映射、元数据、行编解码器）作为不可变快照整体发布，
+ * 读取不加锁，也不会看到只完成一半的注册
  */
 @Service
 @Slf4j
@@ -28,11 +52,74 @@ public class DynamicEntityRegistrationService {
     @Autowired
     private EntityFileGeneratorService entityFileGeneratorService;
 
-    // 存储动态注册的实体定义
-    private final Map<String, EntityDefinition> dynamicEntities = new ConcurrentHashMap<>();
-    
-    // 存储动态实体的字段映射
-    private final Map<String, Map<String, EntityDefinition.FieldDefinition>> entityFieldMappings = new ConcurrentHashMap<>();
+    @Autowired
+    private EntityKeyCache entityKeyCache;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Value("${odata.dynamic.bulk-parallelism:4}")
+    private int bulkParallelism;
+
+    @Value("${odata.dynamic.typed-rows:true}")
+    private boolean typedRows;
+
+    /** 分段锁数量 */
+    private static final int LOCK_STRIPES = 64;
+
+    // 已注册的动态实体（不可变快照，写入时复制后整体替换）
+    private final AtomicReference<Map<String, RegisteredEntity>> dynamicEntities = new AtomicReference<>(Map.of());
+
+    // 按实体名分段的锁，串行化同名实体的注册、替换和注销
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    // 批量注册的DDL线程池，所有批量请求共用，线程数不超过 bulk-parallelism
+    private ThreadPoolExecutor bulkExecutor;
+
+    {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        int threads = Math.max(1, bulkParallelism);
+        bulkExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "entity-ddl-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        bulkExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (bulkExecutor != null) {
+            bulkExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 一个已注册的动态实体，发布后不再修改
+     */
+    private static final class RegisteredEntity {
+        final EntityDefinition definition;
+        final Map<String, EntityDefinition.FieldDefinition> fields;
+        final EntityMetadata metadata;
+        // 生成的行编解码器，生成失败或未启用时为null（按Map行处理）
+        final DynamicRowCodec rowCodec;
+
+        RegisteredEntity(EntityDefinition definition, Map<String, EntityDefinition.FieldDefinition> fields,
+                         EntityMetadata metadata, DynamicRowCodec rowCodec) {
+            this.definition = definition;
+            this.fields = fields;
+            this.metadata = metadata;
+            this.rowCodec = rowCodec;
+        }
+    }
 
     /**
      * 动态注册实体
@@ -52,81 +139,333 @@ public class DynamicEntityRegistrationService {
      * 动态注册实体（支持应用关联）
      */
     public String registerEntity(EntityDefinition entityDef, boolean generateJavaFile, Long applicationId) {
+        EntityRegistryEvent event = new EntityRegistryEvent();
+        event.begin();
+        List<ReentrantLock> held = List.of();
         try {
             validateEntityDefinition(entityDef);
             
             String entityName = entityDef.getEntityName();
             String tableName = entityDef.getTableName();
+            held = lock(entityName, tableName);
             
             // 检查实体是否已存在
-            if (dynamicEntities.containsKey(entityName) || entityRegistryService.getEntityClass(entityName) != null) {
+            if (isDynamicEntity(entityName) || entityRegistryService.getEntityClass(entityName) != null) {
                 throw new RuntimeException("Entity already exists: " + entityName);
             }
+
+            // 检查表是否已被其它实体使用（持有表名所在的分段锁，同表的并发注册只有一个成功）
+            String owner = findTableOwner(tableName);
+            if (owner != null) {
+                throw new RuntimeException("Table " + tableName + " is already used by entity: " + owner);
+            }
             
             // 创建数据库表
             if (entityDef.isAutoCreate()) {
                 createDatabaseTable(entityDef);
             }
             
-            // 生成Java实体文件
+            // 生成Java实体文件（后台执行，不阻止实体注册，状态通过 file-status 查询）
             String javaFilePath = null;
             if (generateJavaFile) {
-                try {
-                    javaFilePath = entityFileGeneratorService.generateEntityFile(entityDef);
-                    log.info("Generated Java entity file: {}", javaFilePath);
-                } catch (Exception e) {
-                    log.warn("Failed to generate Java entity file for {}: {}", entityName, e.getMessage());
-                    // 不阻止实体注册，只记录警告
-                }
+                javaFilePath = entityFileGeneratorService.generateEntityFileAsync(entityDef);
             }
             
-            // 注册实体到内存
-            dynamicEntities.put(entityName, entityDef);
-            
-            // 创建字段映射
-            Map<String, EntityDefinition.FieldDefinition> fieldMap = new HashMap<>();
-            for (EntityDefinition.FieldDefinition field : entityDef.getFields()) {
-                fieldMap.put(field.getFieldName(), field);
-            }
-            entityFieldMappings.put(entityName, fieldMap);
-            
-            // 注册到实体注册服务
-            entityRegistryService.registerDynamicEntity(entityName, tableName, this);
+            // 发布实体（定义、字段映射、元数据和行编解码器一起可见），再注册到实体注册服务
+            publish(entityName, register(entityDef));
+            entityRegistryService.registerDynamicEntity(entityName, this);
             
             String message = "Entity registered successfully: " + entityName;
             if (javaFilePath != null) {
-                message += " (Java file generated: " + javaFilePath + ")";
+                message += " (Java file generation queued: " + javaFilePath + ")";
             }
             
             log.info("Successfully registered dynamic entity: {} -> table: {}", entityName, tableName);
+            commitRegistryEvent(event, "register", entityDef.getEntityName(), entityDef.getTableName(), true);
             return message;
             
         } catch (Exception e) {
+            commitRegistryEvent(event, "register", entityDef.getEntityName(), entityDef.getTableName(), false);
             log.error("Failed to register entity: {}", entityDef.getEntityName(), e);
             throw new RuntimeException("Failed to register entity: " + e.getMessage());
+        } finally {
+            for (int i = held.size() - 1; i >= 0; i--) {
+                held.get(i).unlock();
+            }
+        }
+    }
+
+    /**
+     * 批量注册结果
+     */
+    @Data
+    public static class RegistrationResult {
+        private String entityName;
+        private String tableName;
+        private boolean success;
+        private String message;
+    }
+
+    /**
+     * 批量校验实体定义：名称不重复、实体不存在、表未被其它实体使用，自动建表时表在数据库中不存在
+     * @return 实体名 -> 错误信息，全部通过时为空
+     */
+    public Map<String, String> validateEntities(List<EntityDefinition> entityDefs) {
+        Map<String, String> errors = new LinkedHashMap<>();
+        Set<String> entityNames = new HashSet<>();
+        Set<String> tableNames = new HashSet<>();
+        for (int i = 0; i < entityDefs.size(); i++) {
+            EntityDefinition entityDef = entityDefs.get(i);
+            String name = entityDef.getEntityName() != null ? entityDef.getEntityName() : "#" + i;
+            try {
+                validateEntityDefinition(entityDef);
+                if (!entityNames.add(entityDef.getEntityName())) {
+                    throw new RuntimeException("Duplicate entity name in request: " + entityDef.getEntityName());
+                }
+                if (!tableNames.add(entityDef.getTableName().toLowerCase())) {
+                    throw new RuntimeException("Duplicate table name in request: " + entityDef.getTableName());
+                }
+                if (isDynamicEntity(entityDef.getEntityName())
+                        || entityRegistryService.getEntityClass(entityDef.getEntityName()) != null) {
+                    throw new RuntimeException("Entity already exists: " + entityDef.getEntityName());
+                }
+                String owner = findTableOwner(entityDef.getTableName());
+                if (owner != null) {
+                    throw new RuntimeException("Table " + entityDef.getTableName() + " is already used by entity: " + owner);
+                }
+                if (entityDef.isAutoCreate() && tableExists(entityDef.getTableName())) {
+                    throw new RuntimeException("Table already exists: " + entityDef.getTableName());
+                }
+            } catch (Exception e) {
+                errors.put(name, e.getMessage());
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * 批量注册实体：建表和生成文件在共用的DDL线程池中以有限并发执行，返回与输入顺序一致的逐个结果
+     * 调用前应先通过 validateEntities 校验
+     */
+    public List<RegistrationResult> registerEntities(List<EntityDefinition> entityDefs, boolean generateJavaFile) {
+        List<Future<String>> futures = new ArrayList<>();
+        for (EntityDefinition entityDef : entityDefs) {
+            futures.add(bulkExecutor.submit(() -> registerEntity(entityDef, generateJavaFile)));
+        }
+
+        try {
+
+            List<RegistrationResult> results = new ArrayList<>();
+            for (int i = 0; i < entityDefs.size(); i++) {
+                RegistrationResult result = new RegistrationResult();
+                result.setEntityName(entityDefs.get(i).getEntityName());
+                result.setTableName(entityDefs.get(i).getTableName());
+                try {
+                    result.setMessage(futures.get(i).get());
+                    result.setSuccess(true);
+                } catch (ExecutionException e) {
+                    result.setMessage(e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.setMessage("Interrupted");
+                }
+                results.add(result);
+            }
+            log.info("Bulk registration finished: {}/{} entities registered",
+                    results.stream().filter(RegistrationResult::isSuccess).count(), results.size());
+            return results;
+        } finally {
+            // 调用方被中断时不再执行尚未开始的注册
+            futures.forEach(future -> future.cancel(false));
+        }
+    }
+
+    /**
+     * 查找使用该表的实体（表名不区分大小写），没有时返回null
+     */
+    private String findTableOwner(String tableName) {
+        for (RegisteredEntity entity : dynamicEntities.get().values()) {
+            if (entity.definition.getTableName().equalsIgnoreCase(tableName)) {
+                return entity.definition.getEntityName();
+            }
+        }
+        for (String entityName : entityRegistryService.getAllEntityNames()) {
+            String owned = entityRegistryService.getTableName(entityName);
+            if (owned != null && owned.equalsIgnoreCase(tableName)) {
+                return entityName;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 数据库中是否已存在该表或视图（按原样、小写和大写名称查找）
+     */
+    private boolean tableExists(String tableName) {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            for (String name : new LinkedHashSet<>(List.of(tableName, tableName.toLowerCase(), tableName.toUpperCase()))) {
+                try (ResultSet rs = metaData.getTables(connection.getCatalog(), connection.getSchema(), name, null)) {
+                    if (rs.next()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }));
+    }
+
+    /**
+     * 替换动态实体定义（结构变更完成后调用），后续查询立即使用新的字段和表结构
+     */
+    public void replaceEntityDefinition(EntityDefinition entityDef) {
+        EntityRegistryEvent event = new EntityRegistryEvent();
+        event.begin();
+        String entityName = entityDef.getEntityName();
+        ReentrantLock lock = lock(entityName);
+        try {
+            if (!isDynamicEntity(entityName)) {
+                throw new RuntimeException("Entity not found: " + entityName);
+            }
+
+            publish(entityName, register(entityDef));
+            entityKeyCache.invalidate(entityName);
+            responseCache.invalidate(entityName);
+        } finally {
+            lock.unlock();
         }
+        log.info("Replaced definition of dynamic entity: {}", entityName);
+        commitRegistryEvent(event, "replace", entityName, entityDef.getTableName(), true);
     }
 
     /**
      * 获取动态实体定义
      */
     public EntityDefinition getEntityDefinition(String entityName) {
-        return dynamicEntities.get(entityName);
+        RegisteredEntity entity = dynamicEntities.get().get(entityName);
+        return entity != null ? entity.definition : null;
+    }
+
+    /**
+     * 获取动态实体的元数据
+     */
+    public EntityMetadata getEntityMetadata(String entityName) {
+        RegisteredEntity entity = dynamicEntities.get().get(entityName);
+        return entity != null ? entity.metadata : null;
+    }
+
+    /**
+     * 由实体定义构建元数据
+     */
+    private EntityMetadata buildEntityMetadata(EntityDefinition entityDef) {
+        String entityName = entityDef.getEntityName();
+        List<PropertyMetadata> properties = new ArrayList<>();
+        for (EntityDefinition.FieldDefinition field : entityDef.getFields()) {
+            properties.add(new PropertyMetadata(field.getFieldName(), getColumnName(field),
+                    getJavaType(field.getDataType()), field.isKey(), field.isNullable(), field.getLength()));
+        }
+        return new EntityMetadata(entityName, entityDef.getTableName(), null, properties);
+    }
+
+    /**
+     * 获取动态实体的行编解码器，未生成时返回null
+     */
+    public DynamicRowCodec getRowCodec(String entityName) {
+        RegisteredEntity entity = dynamicEntities.get().get(entityName);
+        return entity != null ? entity.rowCodec : null;
+    }
+
+    /**
+     * 按实体定义构建待发布的注册状态：字段映射、元数据和行类
+     */
+    private RegisteredEntity register(EntityDefinition entityDef) {
+        Map<String, EntityDefinition.FieldDefinition> fieldMap = new HashMap<>();
+        for (EntityDefinition.FieldDefinition field : entityDef.getFields()) {
+            fieldMap.put(field.getFieldName(), field);
+        }
+        EntityMetadata metadata = buildEntityMetadata(entityDef);
+        return new RegisteredEntity(entityDef, Collections.unmodifiableMap(fieldMap), metadata,
+                generateRowCodec(metadata));
+    }
+
+    /**
+     * 生成行类，未启用或生成失败时返回null
+     */
+    private DynamicRowCodec generateRowCodec(EntityMetadata metadata) {
+        if (!typedRows) {
+            return null;
+        }
+        try {
+            DynamicRowCodec codec = DynamicRowCodec.generate(metadata);
+            log.debug("Generated row class {} for dynamic entity {}", codec.getRowClass().getName(),
+                    metadata.getEntityName());
+            return codec;
+        } catch (RuntimeException e) {
+            log.warn("Failed to generate row class for {}, falling back to map rows: {}",
+                    metadata.getEntityName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 发布或移除（entity 为null）实体，复制当前快照后原子替换
+     */
+    private void publish(String entityName, RegisteredEntity entity) {
+        dynamicEntities.updateAndGet(current -> {
+            Map<String, RegisteredEntity> next = new HashMap<>(current);
+            if (entity != null) {
+                next.put(entityName, entity);
+            } else {
+                next.remove(entityName);
+            }
+            return Collections.unmodifiableMap(next);
+        });
+    }
+
+    /**
+     * 获取并锁定实体名所在的分段锁
+     */
+    private ReentrantLock lock(String entityName) {
+        ReentrantLock lock = locks[stripe(entityName)];
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * 获取并锁定实体名和表名（小写）所在的分段锁，按分段下标顺序加锁避免死锁，两者在同一分段时只锁一次
+     * @return 按加锁顺序排列的锁，应按相反顺序释放
+     */
+    private List<ReentrantLock> lock(String entityName, String tableName) {
+        int first = stripe(entityName);
+        int second = stripe(tableName.toLowerCase());
+        List<ReentrantLock> held = new ArrayList<>(2);
+        for (int stripe : first == second ? new int[]{first} : new int[]{Math.min(first, second), Math.max(first, second)}) {
+            locks[stripe].lock();
+            held.add(locks[stripe]);
+        }
+        return held;
+    }
+
+    private static int stripe(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1);
     }
 
     /**
      * 获取实体字段定义
      */
     public EntityDefinition.FieldDefinition getFieldDefinition(String entityName, String fieldName) {
-        Map<String, EntityDefinition.FieldDefinition> fieldMap = entityFieldMappings.get(entityName);
-        return fieldMap != null ? fieldMap.get(fieldName) : null;
+        RegisteredEntity entity = dynamicEntities.get().get(entityName);
+        return entity != null ? entity.fields.get(fieldName) : null;
     }
 
     /**
-     * 获取所有动态注册的实体
+     * 获取所有动态注册的实体（当前快照）
      */
     public Map<String, EntityDefinition> getAllDynamicEntities() {
-        return Collections.unmodifiableMap(dynamicEntities);
+        Map<String, EntityDefinition> entities = new HashMap<>();
+        dynamicEntities.get().forEach((entityName, entity) -> entities.put(entityName, entity.definition));
+        return Collections.unmodifiableMap(entities);
     }
 
     /**
@@ -140,16 +479,22 @@ public class DynamicEntityRegistrationService {
      * 删除动态实体（可选择是否删除Java文件）
      */
     public String unregisterEntity(String entityName, boolean dropTable, boolean deleteJavaFile) {
+        EntityRegistryEvent event = new EntityRegistryEvent();
+        event.begin();
+        String tableName = null;
+        ReentrantLock lock = lock(entityName);
         try {
-            EntityDefinition entityDef = dynamicEntities.get(entityName);
+            EntityDefinition entityDef = getEntityDefinition(entityName);
             if (entityDef == null) {
                 throw new RuntimeException("Entity not found: " + entityName);
             }
+            tableName = entityDef.getTableName();
             
             // 删除数据库表（如果需要）
             if (dropTable) {
                 String sql = "DROP TABLE IF EXISTS " + entityDef.getTableName();
-                jdbcTemplate.execute(sql);
+                executeDdl(entityName, sql);
+                DataSourceRouting.markPrimaryWrite();
                 log.info("Dropped table: {}", entityDef.getTableName());
             }
             
@@ -167,12 +512,11 @@ public class DynamicEntityRegistrationService {
                 }
             }
             
-            // 从内存中移除
-            dynamicEntities.remove(entityName);
-            entityFieldMappings.remove(entityName);
-            
-            // 从实体注册服务中移除
+            // 先从实体注册服务中移除，再移除实体本身
             entityRegistryService.unregisterDynamicEntity(entityName);
+            publish(entityName, null);
+            entityKeyCache.invalidate(entityName);
+            responseCache.invalidate(entityName);
             
             String message = "Entity unregistered successfully: " + entityName;
             if (dropTable) {
@@ -183,11 +527,15 @@ public class DynamicEntityRegistrationService {
             }
             
             log.info("Successfully unregistered dynamic entity: {}", entityName);
+            commitRegistryEvent(event, "unregister", entityName, tableName, true);
             return message;
             
         } catch (Exception e) {
+            commitRegistryEvent(event, "unregister", entityName, tableName, false);
             log.error("Failed to unregister entity: {}", entityName, e);
             throw new RuntimeException("Failed to unregister entity: " + e.getMessage());
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -207,6 +555,8 @@ public class DynamicEntityRegistrationService {
             throw new RuntimeException("At least one field is required");
         }
         
+        validateIndexes(entityDef);
+
         // 检查是否有主键字段
         boolean hasKey = entityDef.getFields().stream().anyMatch(EntityDefinition.FieldDefinition::isKey);
         if (!hasKey) {
@@ -230,19 +580,128 @@ public class DynamicEntityRegistrationService {
         }
     }
 
+    /**
+     * 验证索引定义：名称唯一，字段必须存在
+     */
+    void validateIndexes(EntityDefinition entityDef) {
+        if (entityDef.getIndexes() == null) {
+            return;
+        }
+        Set<String> fieldNames = new HashSet<>();
+        for (EntityDefinition.FieldDefinition field : entityDef.getFields()) {
+            fieldNames.add(field.getFieldName());
+        }
+        Set<String> indexNames = new HashSet<>();
+        for (EntityDefinition.IndexDefinition index : entityDef.getIndexes()) {
+            if (index.getName() == null || index.getName().trim().isEmpty()) {
+                throw new RuntimeException("Index name is required");
+            }
+            if (!indexNames.add(index.getName())) {
+                throw new RuntimeException("Duplicate index name: " + index.getName());
+            }
+            if (index.getFields() == null || index.getFields().isEmpty()) {
+                throw new RuntimeException("At least one field is required for index: " + index.getName());
+            }
+            for (String fieldName : index.getFields()) {
+                if (!fieldNames.contains(fieldName)) {
+                    throw new RuntimeException("Unknown field in index " + index.getName() + ": " + fieldName);
+                }
+            }
+        }
+    }
+
     /**
      * 创建数据库表
      */
     private void createDatabaseTable(EntityDefinition entityDef) {
+        String sql = buildCreateTableSql(entityDef, entityDef.getTableName());
+        executeDdl(entityDef.getEntityName(), sql);
+        createIndexes(entityDef, entityDef.getTableName(), entityDef.getIndexes());
+        DataSourceRouting.markPrimaryWrite();
+        log.info("Created table: {}", entityDef.getTableName());
+        log.debug("Create table SQL: {}", sql);
+    }
+
+    /**
+     * 在指定表上创建索引
+     */
+    void createIndexes(EntityDefinition entityDef, String tableName, List<EntityDefinition.IndexDefinition> indexes) {
+        createIndexes(entityDef, tableName, indexes, "");
+    }
+
+    /**
+     * 在指定表上创建索引，索引名追加后缀（部分数据库的索引名在整个schema内唯一）
+     */
+    void createIndexes(EntityDefinition entityDef, String tableName, List<EntityDefinition.IndexDefinition> indexes,
+                       String nameSuffix) {
+        if (indexes == null) {
+            return;
+        }
+        for (EntityDefinition.IndexDefinition index : indexes) {
+            List<String> columns = new ArrayList<>();
+            for (String fieldName : index.getFields()) {
+                entityDef.getFields().stream()
+                        .filter(field -> field.getFieldName().equals(fieldName))
+                        .findFirst()
+                        .ifPresent(field -> columns.add(getColumnName(field)));
+            }
+            String sql = "CREATE " + (index.isUnique() ? "UNIQUE " : "") + "INDEX " + index.getName() + nameSuffix
+                    + " ON " + tableName + " (" + String.join(", ", columns) + ")";
+            executeDdl(entityDef.getEntityName(), sql);
+            log.debug("Created index: {}", sql);
+        }
+    }
+
+    /**
+     * 执行动态实体的DDL语句并记录JFR事件
+     */
+    void executeDdl(String entityName, String sql) {
+        executeDdl(entityName, jdbcTemplate, sql);
+    }
+
+    /**
+     * 在指定连接上执行DDL（如持有 LOCK TABLES 的连接）
+     */
+    void executeDdl(String entityName, JdbcOperations jdbc, String sql) {
+        DdlEvent event = new DdlEvent();
+        event.begin();
+        boolean success = false;
+        try {
+            jdbc.execute(sql);
+            success = true;
+        } finally {
+            if (event.shouldCommit()) {
+                event.setEntity(entityName);
+                event.setSql(sql);
+                event.setSuccess(success);
+                event.commit();
+            }
+        }
+    }
+
+    private static void commitRegistryEvent(EntityRegistryEvent event, String operation, String entityName,
+                                            String tableName, boolean success) {
+        if (event.shouldCommit()) {
+            event.setOperation(operation);
+            event.setEntity(entityName);
+            event.setTable(tableName);
+            event.setSuccess(success);
+            event.commit();
+        }
+    }
+
+    /**
+     * 生成建表语句
+     */
+    String buildCreateTableSql(EntityDefinition entityDef, String tableName) {
         StringBuilder sql = new StringBuilder();
-        sql.append("CREATE TABLE ").append(entityDef.getTableName()).append(" (");
+        sql.append("CREATE TABLE ").append(tableName).append(" (");
         
         List<String> columns = new ArrayList<>();
         List<String> keyColumns = new ArrayList<>();
         
         for (EntityDefinition.FieldDefinition field : entityDef.getFields()) {
-            String columnName = field.getColumnName() != null && !field.getColumnName().trim().isEmpty() 
-                ? field.getColumnName() : camelToSnake(field.getFieldName());
+            String columnName = getColumnName(field);
             
             StringBuilder columnDef = new StringBuilder();
             columnDef.append(columnName).append(" ").append(getSqlType(field));
@@ -268,15 +727,13 @@ public class DynamicEntityRegistrationService {
         }
         
         sql.append(")");
-        
-        jdbcTemplate.execute(sql.toString());
-        log.info("Created table: {} with SQL: {}", entityDef.getTableName(), sql.toString());
+        return sql.toString();
     }
 
     /**
      * 获取SQL数据类型
      */
-    private String getSqlType(EntityDefinition.FieldDefinition field) {
+    String getSqlType(EntityDefinition.FieldDefinition field) {
         switch (field.getDataType().toUpperCase()) {
             case "STRING":
                 return "VARCHAR(" + field.getLength() + ")";
@@ -317,6 +774,14 @@ public class DynamicEntityRegistrationService {
         }
     }
 
+    /**
+     * 获取字段对应的列名
+     */
+    String getColumnName(EntityDefinition.FieldDefinition field) {
+        return field.getColumnName() != null && !field.getColumnName().trim().isEmpty()
+            ? field.getColumnName() : camelToSnake(field.getFieldName());
+    }
+
     /**
      * 驼峰转下划线
      */
@@ -328,6 +793,6 @@ public class DynamicEntityRegistrationService {
      * 检查动态实体是否存在
      */
     public boolean isDynamicEntity(String entityName) {
-        return dynamicEntities.containsKey(entityName);
+        return dynamicEntities.get().containsKey(entityName);
     }
 }
\ No newline at end of file
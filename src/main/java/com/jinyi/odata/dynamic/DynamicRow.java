@@ -0,0 +1,253 @@
+package com.jinyi.odata.dynamic;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 动态实体行的基类
+ * 子类由 DynamicRowClassGenerator 在注册实体时生成（隐藏类），每个属性对应一个强类型字段，
+ * 读取和序列化逻辑直接生成在子类中；同时以只读Map的形式兼容按Map处理行数据的代码
+ */
+@JsonSerialize(using = DynamicRow.Serializer.class)
+public abstract class DynamicRow extends AbstractMap<String, Object> {
+
+    /**
+     * 一次查询的列布局：各属性槽位对应的结果集列序号（0表示未选择）和输出名，以及按输出名查找槽位的索引
+     */
+    public static final class Layout {
+        final int[] columns;
+        final SerializableString[] names;
+        final int[] selected;
+        final Map<String, Integer> slots = new HashMap<>();
+
+        Layout(int[] columns, SerializableString[] names) {
+            this.columns = columns;
+            this.names = names;
+            for (int slot = 0; slot < names.length; slot++) {
+                if (names[slot] != null) {
+                    slots.put(names[slot].getValue(), slot);
+                }
+            }
+            this.selected = new int[slots.size()];
+            for (int slot = 0, i = 0; slot < names.length; slot++) {
+                if (names[slot] != null) {
+                    selected[i++] = slot;
+                }
+            }
+        }
+    }
+
+    private Layout layout;
+
+    protected DynamicRow() {
+    }
+
+    /**
+     * 创建同类型的空行
+     */
+    protected abstract DynamicRow newRow();
+
+    /**
+     * 按布局从结果集当前行读取各字段
+     */
+    protected abstract void read(ResultSet rs, int[] columns) throws SQLException;
+
+    /**
+     * 写出已选择的字段（不含对象起止符）
+     */
+    protected abstract void writeFields(JsonGenerator generator, SerializableString[] names) throws IOException;
+
+    /**
+     * 按槽位读取字段值
+     */
+    protected abstract Object get(int slot);
+
+    DynamicRow readRow(ResultSet rs, Layout layout) throws SQLException {
+        DynamicRow row = newRow();
+        row.layout = layout;
+        row.read(rs, layout.columns);
+        return row;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Integer slot = layout.slots.get(key);
+        return slot != null ? get(slot.intValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return layout.slots.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return layout.selected.length;
+    }
+
+    /**
+     * 按槽位顺序遍历已选择字段的视图，不复制数据
+     */
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < layout.selected.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int slot = layout.selected[next++];
+                        return new SimpleImmutableEntry<>(layout.names[slot].getValue(), get(slot));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return layout.selected.length;
+            }
+        };
+    }
+
+    /**
+     * Jackson序列化器：直接调用生成的 writeFields，不经过Map遍历
+     */
+    public static class Serializer extends StdSerializer<DynamicRow> {
+
+        public Serializer() {
+            super(DynamicRow.class);
+        }
+
+        @Override
+        public void serialize(DynamicRow row, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject(row);
+            row.writeFields(generator, row.layout.names);
+            generator.writeEndObject();
+        }
+    }
+
+    // 以下方法供生成的子类调用，列序号为0时表示该列未被选择
+
+    protected static String readString(ResultSet rs, int column) throws SQLException {
+        return column != 0 ? rs.getString(column) : null;
+    }
+
+    protected static Long readLong(ResultSet rs, int column) throws SQLException {
+        if (column == 0) {
+            return null;
+        }
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    protected static Integer readInteger(ResultSet rs, int column) throws SQLException {
+        if (column == 0) {
+            return null;
+        }
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    protected static BigDecimal readBigDecimal(ResultSet rs, int column) throws SQLException {
+        return column != 0 ? rs.getBigDecimal(column) : null;
+    }
+
+    protected static LocalDateTime readLocalDateTime(ResultSet rs, int column) throws SQLException {
+        return column != 0 ? rs.getObject(column, LocalDateTime.class) : null;
+    }
+
+    protected static Boolean readBoolean(ResultSet rs, int column) throws SQLException {
+        if (column == 0) {
+            return null;
+        }
+        boolean value = rs.getBoolean(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    protected static void writeString(JsonGenerator generator, SerializableString name, String value)
+            throws IOException {
+        if (name != null) {
+            generator.writeFieldName(name);
+            generator.writeString(value);
+        }
+    }
+
+    protected static void writeLong(JsonGenerator generator, SerializableString name, Long value)
+            throws IOException {
+        if (name != null) {
+            generator.writeFieldName(name);
+            if (value != null) {
+                generator.writeNumber(value.longValue());
+            } else {
+                generator.writeNull();
+            }
+        }
+    }
+
+    protected static void writeInteger(JsonGenerator generator, SerializableString name, Integer value)
+            throws IOException {
+        if (name != null) {
+            generator.writeFieldName(name);
+            if (value != null) {
+                generator.writeNumber(value.intValue());
+            } else {
+                generator.writeNull();
+            }
+        }
+    }
+
+    protected static void writeBigDecimal(JsonGenerator generator, SerializableString name, BigDecimal value)
+            throws IOException {
+        if (name != null) {
+            generator.writeFieldName(name);
+            generator.writeNumber(value);
+        }
+    }
+
+    protected static void writeLocalDateTime(JsonGenerator generator, SerializableString name, LocalDateTime value)
+            throws IOException {
+        if (name != null) {
+            generator.writeFieldName(name);
+            // 日期格式由各输出格式的ObjectMapper决定（JSON为ISO文本，CBOR/Smile为UTC纪元毫秒）
+            generator.writeObject(value);
+        }
+    }
+
+    protected static void writeBoolean(JsonGenerator generator, SerializableString name, Boolean value)
+            throws IOException {
+        if (name != null) {
+            generator.writeFieldName(name);
+            if (value != null) {
+                generator.writeBoolean(value);
+            } else {
+                generator.writeNull();
+            }
+        }
+    }
+}
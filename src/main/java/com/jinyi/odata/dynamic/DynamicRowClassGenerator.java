@@ -0,0 +1,184 @@
+package com.jinyi.odata.dynamic;
+
+import com.jinyi.odata.core.PropertyMetadata;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 动态实体行类生成器
+ * 按实体属性生成 DynamicRow 的子类字节码，并以隐藏类的方式定义：不需要javac和重启，
+ * 实体注销或结构变更后旧的行类不再被引用时可被卸载
+ */
+final class DynamicRowClassGenerator {
+
+    private static final String ROW = Type.getInternalName(DynamicRow.class);
+    private static final String RESULT_SET = "Ljava/sql/ResultSet;";
+    private static final String GENERATOR = "Lcom/fasterxml/jackson/core/JsonGenerator;";
+    private static final String NAME = "Lcom/fasterxml/jackson/core/SerializableString;";
+
+    /** 支持的属性类型及对应的 DynamicRow 读写方法后缀 */
+    private static final Map<Class<?>, String> ACCESSORS = Map.of(
+            String.class, "String",
+            Long.class, "Long",
+            Integer.class, "Integer",
+            BigDecimal.class, "BigDecimal",
+            LocalDateTime.class, "LocalDateTime",
+            Boolean.class, "Boolean");
+
+    private DynamicRowClassGenerator() {
+    }
+
+    /**
+     * 生成行类并创建原型实例
+     */
+    static DynamicRow generate(String entityName, List<PropertyMetadata> properties) {
+        byte[] bytecode = generateBytecode(entityName, properties);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytecode, true);
+            return (DynamicRow) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to define row class for " + entityName + ": " + e.getMessage(), e);
+        }
+    }
+
+    static byte[] generateBytecode(String entityName, List<PropertyMetadata> properties) {
+        String className = ROW + "$" + entityName.replaceAll("[^A-Za-z0-9_]", "_");
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                // 生成的方法中没有需要合并引用类型的分支
+                return "java/lang/Object";
+            }
+        };
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null, ROW, null);
+
+        for (int slot = 0; slot < properties.size(); slot++) {
+            cw.visitField(Opcodes.ACC_PRIVATE, field(slot), descriptor(properties.get(slot)), null, null).visitEnd();
+        }
+
+        // 构造方法
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, ROW, "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // DynamicRow newRow()
+        mv = cw.visitMethod(Opcodes.ACC_PROTECTED, "newRow", "()L" + ROW + ";", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(Opcodes.NEW, className);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, className, "<init>", "()V", false);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // void read(ResultSet rs, int[] columns)：this.fN = readX(rs, columns[N])
+        mv = cw.visitMethod(Opcodes.ACC_PROTECTED, "read", "(" + RESULT_SET + "[I)V", null,
+                new String[]{"java/sql/SQLException"});
+        mv.visitCode();
+        for (int slot = 0; slot < properties.size(); slot++) {
+            String descriptor = descriptor(properties.get(slot));
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+            pushInt(mv, slot);
+            mv.visitInsn(Opcodes.IALOAD);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, ROW, "read" + accessor(properties.get(slot)),
+                    "(" + RESULT_SET + "I)" + descriptor, false);
+            mv.visitFieldInsn(Opcodes.PUTFIELD, className, field(slot), descriptor);
+        }
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // void writeFields(JsonGenerator generator, SerializableString[] names)：writeX(generator, names[N], this.fN)
+        mv = cw.visitMethod(Opcodes.ACC_PROTECTED, "writeFields", "(" + GENERATOR + "[" + NAME + ")V", null,
+                new String[]{"java/io/IOException"});
+        mv.visitCode();
+        for (int slot = 0; slot < properties.size(); slot++) {
+            String descriptor = descriptor(properties.get(slot));
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+            pushInt(mv, slot);
+            mv.visitInsn(Opcodes.AALOAD);
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitFieldInsn(Opcodes.GETFIELD, className, field(slot), descriptor);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, ROW, "write" + accessor(properties.get(slot)),
+                    "(" + GENERATOR + NAME + descriptor + ")V", false);
+        }
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // Object get(int slot)
+        mv = cw.visitMethod(Opcodes.ACC_PROTECTED, "get", "(I)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        Label notFound = new Label();
+        if (!properties.isEmpty()) {
+            Label[] labels = new Label[properties.size()];
+            for (int slot = 0; slot < labels.length; slot++) {
+                labels[slot] = new Label();
+            }
+            mv.visitVarInsn(Opcodes.ILOAD, 1);
+            mv.visitTableSwitchInsn(0, labels.length - 1, notFound, labels);
+            for (int slot = 0; slot < labels.length; slot++) {
+                mv.visitLabel(labels[slot]);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(Opcodes.GETFIELD, className, field(slot), descriptor(properties.get(slot)));
+                mv.visitInsn(Opcodes.ARETURN);
+            }
+        }
+        mv.visitLabel(notFound);
+        mv.visitInsn(Opcodes.ACONST_NULL);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static String field(int slot) {
+        return "f" + slot;
+    }
+
+    private static String accessor(PropertyMetadata property) {
+        String accessor = ACCESSORS.get(property.getJavaType());
+        if (accessor == null) {
+            throw new IllegalArgumentException("Unsupported property type: " + property.getJavaType());
+        }
+        return accessor;
+    }
+
+    private static String descriptor(PropertyMetadata property) {
+        accessor(property);
+        return Type.getDescriptor(property.getJavaType());
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+        if (value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.jinyi.odata.dynamic;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.jinyi.odata.core.EntityMetadata;
+import com.jinyi.odata.core.PropertyMetadata;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 动态实体的行编解码器
+ * 持有生成的行类原型，为每次查询创建行映射器：首行解析列布局，之后逐行直接读入强类型字段
+ */
+public class DynamicRowCodec {
+
+    private final EntityMetadata metadata;
+    private final DynamicRow prototype;
+
+    private DynamicRowCodec(EntityMetadata metadata, DynamicRow prototype) {
+        this.metadata = metadata;
+        this.prototype = prototype;
+    }
+
+    /**
+     * 根据实体元数据生成行类
+     */
+    public static DynamicRowCodec generate(EntityMetadata metadata) {
+        return new DynamicRowCodec(metadata,
+                DynamicRowClassGenerator.generate(metadata.getEntityName(), metadata.getProperties()));
+    }
+
+    public Class<?> getRowClass() {
+        return prototype.getClass();
+    }
+
+    /**
+     * 创建行映射器（有状态，每次查询创建一个）
+     * 结果集中存在不属于实体的列（如 $select 中的表达式）时整个查询改用 fallback 映射
+     */
+    public RowMapper<Map<String, Object>> rowMapper(RowMapper<Map<String, Object>> fallback) {
+        return new RowMapper<>() {
+            private DynamicRow.Layout layout;
+            private boolean generic;
+
+            @Override
+            public Map<String, Object> mapRow(ResultSet rs, int rowNum) throws SQLException {
+                if (layout == null && !generic) {
+                    layout = resolveLayout(rs.getMetaData());
+                    generic = layout == null;
+                }
+                return generic ? fallback.mapRow(rs, rowNum) : prototype.readRow(rs, layout);
+            }
+        };
+    }
+
+    private DynamicRow.Layout resolveLayout(ResultSetMetaData metaData) throws SQLException {
+        List<PropertyMetadata> properties = metadata.getProperties();
+        int[] columns = new int[properties.size()];
+        SerializableString[] names = new SerializableString[properties.size()];
+
+        for (int column = 1; column <= metaData.getColumnCount(); column++) {
+            String columnName = metaData.getColumnName(column);
+            PropertyMetadata property = metadata.getPropertyByColumn(columnName);
+            int slot = property != null ? properties.indexOf(property) : -1;
+            if (slot < 0 || columns[slot] != 0) {
+                return null;
+            }
+            columns[slot] = column;
+            names[slot] = new SerializedString(columnName);
+        }
+        return new DynamicRow.Layout(columns, names);
+    }
+}
@@ -15,6 +15,7 @@ public class EntityDefinition {
     private String description;
     private boolean autoCreate = true;
     private List<FieldDefinition> fields;
+    private List<IndexDefinition> indexes;
     
     /**
      * 字段定义
@@ -29,4 +30,14 @@ public class EntityDefinition {
         private int length = 255;
         private String description;
     }
+
+    /**
+     * 索引定义
+     */
+    @Data
+    public static class IndexDefinition {
+        private String name;
+        private List<String> fields;
+        private boolean unique = false;
+    }
 }
\ No newline at end of file
@@ -1,17 +1,34 @@
 package com.jinyi.odata.dynamic;
 
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
 import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * 实体文件生成服务
- * 负责根据动态实体定义生成对应的Java实体类文件
+ * 负责根据动态实体定义生成对应的Java实体类文件。
+ * 注册流程通过 generateEntityFileAsync 把生成请求放入后台队列，同一实体排队中的请求合并为最新的定义；
+ * 文件以临时文件+移动的方式原子写入，内容哈希未变化时不重写
  */
 @Service
 @Slf4j
@@ -20,38 +37,137 @@ public class EntityFileGeneratorService {
     private static final String ENTITY_PACKAGE = "com.jinyi.business.entity";
     private static final String ENTITY_PATH = "src/main/java/com/jinyi/business/entity/";
 
+    /** 排队中的生成请求，key为实体名，value为最新的实体定义 */
+    private final Map<String, EntityDefinition> pending = new ConcurrentHashMap<>();
+    private final Map<String, FileStatus> statuses = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "entity-file-generator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public enum GenerationState {
+        PENDING, WRITTEN, UNCHANGED, FAILED, DELETED
+    }
+
+    /**
+     * 实体文件的最近一次生成状态
+     */
+    @Data
+    public static class FileStatus {
+        private GenerationState state;
+        private String contentHash;
+        private String error;
+        private LocalDateTime updatedAt;
+    }
+
     /**
-     * 根据实体定义生成 Java 实体类文件
+     * 根据实体定义生成 Java 实体类文件（同步执行）
      */
     public String generateEntityFile(EntityDefinition entityDef) {
-        try {
-            String className = entityDef.getEntityName();
-            String fileName = className + ".java";
-            String filePath = ENTITY_PATH + fileName;
-            
-            // 确保目录存在
-            File directory = new File(ENTITY_PATH);
-            if (!directory.exists()) {
-                directory.mkdirs();
+        String entityName = entityDef.getEntityName();
+        synchronized (this) {
+            // 同步生成已包含最新定义，丢弃排队中的旧请求
+            pending.remove(entityName);
+            return writeEntityFile(entityDef);
+        }
+    }
+
+    /**
+     * 提交后台生成请求，立即返回文件路径
+     * 实体已有排队中的请求时只替换为最新定义，不重复排队
+     */
+    public String generateEntityFileAsync(EntityDefinition entityDef) {
+        String entityName = entityDef.getEntityName();
+        updateStatus(entityName, GenerationState.PENDING, null, null);
+        if (pending.put(entityName, entityDef) == null) {
+            executor.submit(() -> generatePending(entityName));
+        }
+        return getEntityFilePath(entityName);
+    }
+
+    /**
+     * 获取实体文件的生成状态，从未生成过时返回null
+     */
+    public FileStatus getFileStatus(String entityName) {
+        return statuses.get(entityName);
+    }
+
+    private void generatePending(String entityName) {
+        synchronized (this) {
+            EntityDefinition entityDef = pending.remove(entityName);
+            if (entityDef == null) {
+                // 已被同步生成或删除
+                return;
             }
-            
-            // 生成 Java 代码
+            try {
+                writeEntityFile(entityDef);
+            } catch (RuntimeException e) {
+                // 状态已记录为 FAILED
+            }
+        }
+    }
+
+    private String writeEntityFile(EntityDefinition entityDef) {
+        String entityName = entityDef.getEntityName();
+        Path path = Paths.get(getEntityFilePath(entityName));
+        try {
             String javaCode = generateJavaCode(entityDef);
-            
-            // 写入文件
-            try (FileWriter writer = new FileWriter(filePath)) {
-                writer.write(javaCode);
+            byte[] content = javaCode.getBytes(StandardCharsets.UTF_8);
+            String hash = sha256(content);
+
+            if (Files.exists(path) && hash.equals(sha256(Files.readAllBytes(path)))) {
+                updateStatus(entityName, GenerationState.UNCHANGED, hash, null);
+                log.debug("Entity file unchanged: {}", path);
+                return path.toString();
             }
-            
-            log.info("Generated entity file: {}", filePath);
-            return filePath;
-            
+
+            // 确保目录存在
+            Path directory = path.getParent();
+            Files.createDirectories(directory);
+
+            // 写入同目录下的临时文件后原子替换，读者不会看到写了一半的文件
+            Path temp = Files.createTempFile(directory, entityName, ".tmp");
+            try {
+                Files.write(temp, content);
+                try {
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+
+            updateStatus(entityName, GenerationState.WRITTEN, hash, null);
+            log.info("Generated entity file: {}", path);
+            return path.toString();
+
         } catch (IOException e) {
-            log.error("Failed to generate entity file for {}: {}", entityDef.getEntityName(), e.getMessage());
+            updateStatus(entityName, GenerationState.FAILED, null, e.getMessage());
+            log.error("Failed to generate entity file for {}: {}", entityName, e.getMessage());
             throw new RuntimeException("Failed to generate entity file: " + e.getMessage());
         }
     }
 
+    private void updateStatus(String entityName, GenerationState state, String contentHash, String error) {
+        FileStatus status = new FileStatus();
+        status.setState(state);
+        status.setContentHash(contentHash);
+        status.setError(error);
+        status.setUpdatedAt(LocalDateTime.now());
+        statuses.put(entityName, status);
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * 生成 Java 代码
      */
@@ -210,7 +326,9 @@ public class EntityFileGeneratorService {
     /**
      * 删除实体文件
      */
-    public boolean deleteEntityFile(String entityName) {
+    public synchronized boolean deleteEntityFile(String entityName) {
+        // 取消排队中的生成请求，避免删除后又被写回
+        pending.remove(entityName);
         try {
             String filePath = ENTITY_PATH + entityName + ".java";
             File file = new File(filePath);
@@ -218,6 +336,7 @@ public class EntityFileGeneratorService {
             if (file.exists()) {
                 boolean deleted = file.delete();
                 if (deleted) {
+                    updateStatus(entityName, GenerationState.DELETED, null, null);
                     log.info("Deleted entity file: {}", filePath);
                 } else {
                     log.warn("Failed to delete entity file: {}", filePath);
@@ -246,4 +365,9 @@ public class EntityFileGeneratorService {
     public String previewEntityFile(EntityDefinition entityDef) {
         return generateJavaCode(entityDef);
     }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
 }
\ No newline at end of file
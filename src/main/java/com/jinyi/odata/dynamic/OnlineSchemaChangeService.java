@@ -0,0 +1,481 @@
+package com.jinyi.odata.dynamic;
+
+import com.jinyi.odata.core.DatabaseDialectService;
+import com.jinyi.odata.datasource.DataSourceRouting;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 动态实体在线结构变更服务
+ * 小表直接 ALTER TABLE；大表新建影子表，按主键分批复制并限速，补齐追加的行并校验行数后切换表、替换实体定义。
+ * 变更在后台线程执行，期间原表继续提供查询。同一实体同时只能有一个未完成的变更，
+ * 新的实体定义在任务开始执行时根据当时注册的定义生成
+ */
+@Service
+@Slf4j
+public class OnlineSchemaChangeService {
+
+    private static final String SHADOW_SUFFIX = "__new";
+    private static final String OLD_SUFFIX = "__old";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DynamicEntityRegistrationService registrationService;
+
+    @Autowired
+    private EntityFileGeneratorService entityFileGeneratorService;
+
+    @Autowired
+    private DatabaseDialectService databaseDialectService;
+
+    @Value("${odata.schema-change.online-threshold:10000}")
+    private long onlineThreshold;
+
+    @Value("${odata.schema-change.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${odata.schema-change.throttle:50}")
+    private long throttleMillis;
+
+    @Value("${odata.schema-change.keep-old-table:false}")
+    private boolean keepOldTable;
+
+    @Value("${odata.schema-change.job-retention:3600000}")
+    private long jobRetentionMillis;
+
+    private final Map<Long, SchemaChangeJob> jobs = new ConcurrentHashMap<>();
+
+    // 实体名 -> 未完成的任务，提交时 putIfAbsent 保证同一实体只有一个
+    private final Map<String, SchemaChangeJob> activeJobs = new ConcurrentHashMap<>();
+    private final AtomicLong jobIds = new AtomicLong();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "schema-change");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 提交结构变更任务
+     * 提交时按当前定义校验变更；任务执行时再根据届时注册的定义生成新定义
+     */
+    public SchemaChangeJob alterEntity(String entityName, SchemaAlterRequest request) {
+        EntityDefinition current = registrationService.getEntityDefinition(entityName);
+        if (current == null) {
+            throw new RuntimeException("Entity not found: " + entityName);
+        }
+        applyChanges(current, request);
+        long rows = countRows(current.getTableName());
+        boolean online = request.getOnline() != null ? request.getOnline() : rows > onlineThreshold;
+        List<EntityDefinition.FieldDefinition> keys = current.getFields().stream()
+                .filter(EntityDefinition.FieldDefinition::isKey)
+                .collect(Collectors.toList());
+        if (online && keys.size() != 1) {
+            throw new RuntimeException("Online schema change requires a single key field");
+        }
+
+        SchemaChangeJob job = new SchemaChangeJob();
+        job.setId(jobIds.incrementAndGet());
+        job.setEntityName(entityName);
+        job.setStrategy(online ? SchemaChangeJob.Strategy.SHADOW_COPY : SchemaChangeJob.Strategy.IN_PLACE);
+        job.setTotalRows(rows);
+        job.setStartedAt(LocalDateTime.now());
+        if (activeJobs.putIfAbsent(entityName, job) != null) {
+            throw new RuntimeException("A schema change is already running for entity: " + entityName);
+        }
+        pruneJobs();
+        jobs.put(job.getId(), job);
+
+        try {
+            executor.submit(() -> run(job, request));
+        } catch (RuntimeException e) {
+            activeJobs.remove(entityName, job);
+            jobs.remove(job.getId());
+            throw e;
+        }
+        log.info("Schema change {} submitted for {} ({}, {} rows)", job.getId(), entityName, job.getStrategy(), rows);
+        return job;
+    }
+
+    public Optional<SchemaChangeJob> getJob(long jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void run(SchemaChangeJob job, SchemaAlterRequest request) {
+        job.setStatus(SchemaChangeJob.Status.RUNNING);
+        try {
+            // 以执行时注册的定义为准
+            EntityDefinition current = registrationService.getEntityDefinition(job.getEntityName());
+            if (current == null) {
+                throw new RuntimeException("Entity not found: " + job.getEntityName());
+            }
+            EntityDefinition target = applyChanges(current, request);
+
+            if (job.getStrategy() == SchemaChangeJob.Strategy.SHADOW_COPY) {
+                copyToShadowTable(job, current, target);
+            } else {
+                alterInPlace(current, target, request);
+            }
+            DataSourceRouting.markPrimaryWrite();
+
+            registrationService.replaceEntityDefinition(target);
+            regenerateEntityFile(target);
+
+            job.setMessage("Schema change completed");
+            job.setStatus(SchemaChangeJob.Status.COMPLETED);
+            log.info("Schema change {} for {} completed", job.getId(), job.getEntityName());
+        } catch (Exception e) {
+            job.setMessage(e.getMessage());
+            job.setStatus(SchemaChangeJob.Status.FAILED);
+            log.error("Schema change {} for {} failed", job.getId(), job.getEntityName(), e);
+        } finally {
+            job.setFinishedAt(LocalDateTime.now());
+            activeJobs.remove(job.getEntityName(), job);
+        }
+    }
+
+    /**
+     * 移除结束超过保留时间的任务
+     */
+    private void pruneJobs() {
+        LocalDateTime expiry = LocalDateTime.now().minusNanos(jobRetentionMillis * 1_000_000);
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(expiry));
+    }
+
+    /**
+     * 直接在原表上执行 ALTER TABLE
+     */
+    private void alterInPlace(EntityDefinition current, EntityDefinition target, SchemaAlterRequest request) {
+        String tableName = current.getTableName();
+        String entityName = current.getEntityName();
+        for (EntityDefinition.FieldDefinition field : nullToEmpty(request.getAddFields())) {
+            execute(entityName, "ALTER TABLE " + tableName + " ADD COLUMN " + columnDefinition(field));
+        }
+        for (EntityDefinition.FieldDefinition field : nullToEmpty(request.getModifyFields())) {
+            EntityDefinition.FieldDefinition modified = findField(target, field.getFieldName());
+            if (databaseDialectService.isMySql()) {
+                execute(entityName, "ALTER TABLE " + tableName + " MODIFY COLUMN " + columnDefinition(modified));
+            } else {
+                // 标准语法只修改类型，保留原有的 NULL/NOT NULL 约束
+                execute(entityName, "ALTER TABLE " + tableName + " ALTER COLUMN "
+                        + registrationService.getColumnName(modified) + " SET DATA TYPE "
+                        + registrationService.getSqlType(modified));
+            }
+        }
+        for (String fieldName : nullToEmpty(request.getDropFields())) {
+            execute(entityName, "ALTER TABLE " + tableName + " DROP COLUMN "
+                    + registrationService.getColumnName(findField(current, fieldName)));
+        }
+        registrationService.createIndexes(target, tableName, request.getAddIndexes());
+    }
+
+    /**
+     * 影子表迁移：建表、按主键分批复制、建索引、补齐并校验行数后切换表
+     */
+    private void copyToShadowTable(SchemaChangeJob job, EntityDefinition current, EntityDefinition target)
+            throws InterruptedException {
+        String tableName = current.getTableName();
+        String entityName = current.getEntityName();
+        String shadowTable = tableName + SHADOW_SUFFIX;
+        String oldTable = tableName + OLD_SUFFIX;
+
+        // 新旧结构都存在的列（新增列使用默认值，删除的列不复制）
+        Set<String> currentColumns = current.getFields().stream()
+                .map(registrationService::getColumnName)
+                .collect(Collectors.toSet());
+        String columns = target.getFields().stream()
+                .map(registrationService::getColumnName)
+                .filter(currentColumns::contains)
+                .collect(Collectors.joining(", "));
+        EntityDefinition.FieldDefinition keyField = current.getFields().stream()
+                .filter(EntityDefinition.FieldDefinition::isKey)
+                .findFirst()
+                .orElseThrow();
+        String keyColumn = registrationService.getColumnName(keyField);
+
+        execute(entityName, "DROP TABLE IF EXISTS " + shadowTable);
+        execute(entityName, "DROP TABLE IF EXISTS " + oldTable);
+        execute(entityName, registrationService.buildCreateTableSql(target, shadowTable));
+        boolean mySql = databaseDialectService.isMySql();
+        try {
+            Object lastKey = copyRows(job, tableName, shadowTable, columns, keyColumn);
+
+            // MySQL的索引名按表区分，其它数据库先使用临时名称，切换后再改回
+            registrationService.createIndexes(target, shadowTable, target.getIndexes(), mySql ? "" : SHADOW_SUFFIX);
+
+            if (mySql) {
+                // 锁住两张表阻止写入，补齐最后一批之后追加的行，校验行数后在锁内原子地交换两张表
+                // LOCK TABLES 只对当前会话有效，补齐、校验和改名必须在同一个连接上执行
+                jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                    JdbcTemplate locked = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+                    locked.execute("LOCK TABLES " + tableName + " WRITE, " + shadowTable + " WRITE");
+                    try {
+                        catchUp(job, locked, tableName, shadowTable, columns, keyColumn, lastKey);
+                        verifyRowCount(locked, tableName, shadowTable);
+                        registrationService.executeDdl(entityName, locked, "RENAME TABLE " + tableName
+                                + " TO " + oldTable + ", " + shadowTable + " TO " + tableName);
+                    } finally {
+                        locked.execute("UNLOCK TABLES");
+                    }
+                    return null;
+                });
+            } else {
+                // 其它数据库没有表级写锁：补齐并校验行数后立即切换，校验到改名之间写入的行仍会留在旧表
+                catchUp(job, jdbcTemplate, tableName, shadowTable, columns, keyColumn, lastKey);
+                verifyRowCount(jdbcTemplate, tableName, shadowTable);
+                if ("LONG".equals(keyField.getDataType()) || "INTEGER".equals(keyField.getDataType())) {
+                    // MySQL会根据已有数据调整自增值，其它数据库需要手动设置
+                    Long maxKey = jdbcTemplate.queryForObject(
+                            "SELECT MAX(" + keyColumn + ") FROM " + shadowTable, Long.class);
+                    if (maxKey != null) {
+                        execute(entityName, "ALTER TABLE " + shadowTable + " ALTER COLUMN " + keyColumn
+                                + " RESTART WITH " + (maxKey + 1));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            execute(entityName, "DROP TABLE IF EXISTS " + shadowTable);
+            throw e;
+        }
+
+        // 切换表：MySQL 已在锁内用 RENAME TABLE 原子地交换两张表；其它数据库分两条语句改名，
+        // 两条语句之间原表名不存在，期间到达的查询会失败（DDL自动提交，无法放进同一事务）
+        if (!mySql) {
+            execute(entityName, "ALTER TABLE " + tableName + " RENAME TO " + oldTable);
+            execute(entityName, "ALTER TABLE " + shadowTable + " RENAME TO " + tableName);
+        }
+
+        if (keepOldTable) {
+            if (!mySql) {
+                for (EntityDefinition.IndexDefinition index : nullToEmpty(current.getIndexes())) {
+                    execute(entityName, "ALTER INDEX " + index.getName() + " RENAME TO " + index.getName() + OLD_SUFFIX);
+                }
+            }
+        } else {
+            execute(entityName, "DROP TABLE IF EXISTS " + oldTable);
+        }
+        if (!mySql) {
+            for (EntityDefinition.IndexDefinition index : nullToEmpty(target.getIndexes())) {
+                execute(entityName, "ALTER INDEX " + index.getName() + SHADOW_SUFFIX + " RENAME TO " + index.getName());
+            }
+        }
+    }
+
+    /**
+     * 按主键范围分批复制到影子表（不阻塞写入）
+     * @return 已复制的最大主键，表为空时为null
+     */
+    private Object copyRows(SchemaChangeJob job, String tableName, String shadowTable, String columns,
+                            String keyColumn) throws InterruptedException {
+        // 按主键范围分批复制；最后一次探测之后追加的行由切换前的补齐步骤处理
+        Object lastKey = null;
+        while (true) {
+            String rangeCondition = lastKey == null ? "" : " WHERE " + keyColumn + " > ?";
+            Object[] rangeArgs = lastKey == null ? new Object[0] : new Object[]{lastKey};
+            Object upperKey = jdbcTemplate.queryForObject(
+                    "SELECT MAX(" + keyColumn + ") FROM (SELECT " + keyColumn + " FROM " + tableName + rangeCondition
+                            + " ORDER BY " + keyColumn + " LIMIT " + chunkSize + ") chunk",
+                    Object.class, rangeArgs);
+            if (upperKey == null) {
+                break;
+            }
+
+            List<Object> args = new ArrayList<>(Arrays.asList(rangeArgs));
+            args.add(upperKey);
+            int copied = jdbcTemplate.update("INSERT INTO " + shadowTable + " (" + columns + ") SELECT " + columns
+                    + " FROM " + tableName + (lastKey == null ? " WHERE " : rangeCondition + " AND ")
+                    + keyColumn + " <= ?", args.toArray());
+            addCopiedRows(job, copied);
+            lastKey = upperKey;
+
+            if (throttleMillis > 0) {
+                Thread.sleep(throttleMillis);
+            }
+        }
+        log.info("Schema change {}: copied {} rows into {}", job.getId(), job.getCopiedRows(), shadowTable);
+        return lastKey;
+    }
+
+    /**
+     * 补齐分批复制结束后追加的行（主键大于已复制的最大主键）
+     */
+    private void catchUp(SchemaChangeJob job, JdbcOperations jdbc, String tableName, String shadowTable,
+                         String columns, String keyColumn, Object lastKey) {
+        String sql = "INSERT INTO " + shadowTable + " (" + columns + ") SELECT " + columns + " FROM " + tableName;
+        int copied = lastKey == null ? jdbc.update(sql) : jdbc.update(sql + " WHERE " + keyColumn + " > ?", lastKey);
+        addCopiedRows(job, copied);
+        if (copied > 0) {
+            log.info("Schema change {}: caught up {} rows appended during copy", job.getId(), copied);
+        }
+    }
+
+    /**
+     * 切换前校验原表与影子表行数一致，不一致（如复制期间删除了已复制的行）时放弃本次变更
+     */
+    private void verifyRowCount(JdbcOperations jdbc, String tableName, String shadowTable) {
+        Long sourceRows = jdbc.queryForObject("SELECT COUNT(*) FROM " + tableName, Long.class);
+        Long shadowRows = jdbc.queryForObject("SELECT COUNT(*) FROM " + shadowTable, Long.class);
+        if (!Objects.equals(sourceRows, shadowRows)) {
+            throw new RuntimeException("Row count mismatch after copy: " + tableName + " has " + sourceRows
+                    + " rows, " + shadowTable + " has " + shadowRows + " rows");
+        }
+    }
+
+    private void addCopiedRows(SchemaChangeJob job, int copied) {
+        job.setCopiedRows(job.getCopiedRows() + copied);
+        if (job.getCopiedRows() > job.getTotalRows()) {
+            job.setTotalRows(job.getCopiedRows());
+        }
+        log.debug("Schema change {}: copied {}/{} rows", job.getId(), job.getCopiedRows(), job.getTotalRows());
+    }
+
+    /**
+     * 根据变更请求生成新的实体定义并校验
+     */
+    private EntityDefinition applyChanges(EntityDefinition current, SchemaAlterRequest request) {
+        Map<String, EntityDefinition.FieldDefinition> fields = new LinkedHashMap<>();
+        for (EntityDefinition.FieldDefinition field : current.getFields()) {
+            fields.put(field.getFieldName(), copyField(field));
+        }
+
+        for (String fieldName : nullToEmpty(request.getDropFields())) {
+            EntityDefinition.FieldDefinition field = fields.remove(fieldName);
+            if (field == null) {
+                throw new RuntimeException("Field not found: " + fieldName);
+            }
+            if (field.isKey()) {
+                throw new RuntimeException("Key field cannot be dropped: " + fieldName);
+            }
+        }
+
+        for (EntityDefinition.FieldDefinition change : nullToEmpty(request.getModifyFields())) {
+            EntityDefinition.FieldDefinition field = fields.get(change.getFieldName());
+            if (field == null) {
+                throw new RuntimeException("Field not found: " + change.getFieldName());
+            }
+            if (field.isKey()) {
+                throw new RuntimeException("Key field cannot be modified: " + change.getFieldName());
+            }
+            widenField(field, change);
+        }
+
+        for (EntityDefinition.FieldDefinition added : nullToEmpty(request.getAddFields())) {
+            if (added.getFieldName() == null || added.getDataType() == null) {
+                throw new RuntimeException("Field name and data type are required");
+            }
+            if (fields.containsKey(added.getFieldName())) {
+                throw new RuntimeException("Field already exists: " + added.getFieldName());
+            }
+            if (added.isKey() || !added.isNullable()) {
+                throw new RuntimeException("Added field must be a nullable non-key field: " + added.getFieldName());
+            }
+            fields.put(added.getFieldName(), copyField(added));
+        }
+
+        EntityDefinition target = new EntityDefinition();
+        target.setEntityName(current.getEntityName());
+        target.setTableName(current.getTableName());
+        target.setDescription(current.getDescription());
+        target.setAutoCreate(current.isAutoCreate());
+        target.setFields(new ArrayList<>(fields.values()));
+
+        // 保留引用字段仍存在的索引
+        List<EntityDefinition.IndexDefinition> indexes = new ArrayList<>();
+        for (EntityDefinition.IndexDefinition index : nullToEmpty(current.getIndexes())) {
+            if (fields.keySet().containsAll(index.getFields())) {
+                indexes.add(index);
+            }
+        }
+        indexes.addAll(nullToEmpty(request.getAddIndexes()));
+        target.setIndexes(indexes);
+        registrationService.validateIndexes(target);
+        return target;
+    }
+
+    /**
+     * 放宽字段定义，不允许收窄或改变类型
+     */
+    private void widenField(EntityDefinition.FieldDefinition field, EntityDefinition.FieldDefinition change) {
+        String type = field.getDataType().toUpperCase();
+        String newType = change.getDataType() != null ? change.getDataType().toUpperCase() : type;
+        if (!type.equals(newType) && !("INTEGER".equals(type) && "LONG".equals(newType))) {
+            throw new RuntimeException("Cannot change type of " + field.getFieldName() + " from " + type + " to " + newType);
+        }
+        if ("STRING".equals(newType) && change.getLength() < field.getLength()) {
+            throw new RuntimeException("Cannot shrink length of " + field.getFieldName());
+        }
+        field.setDataType(newType);
+        if ("STRING".equals(newType)) {
+            field.setLength(change.getLength());
+        }
+        if (change.getDescription() != null) {
+            field.setDescription(change.getDescription());
+        }
+    }
+
+    private EntityDefinition.FieldDefinition copyField(EntityDefinition.FieldDefinition source) {
+        EntityDefinition.FieldDefinition field = new EntityDefinition.FieldDefinition();
+        field.setFieldName(source.getFieldName());
+        field.setColumnName(source.getColumnName());
+        field.setDataType(source.getDataType());
+        field.setKey(source.isKey());
+        field.setNullable(source.isNullable());
+        field.setLength(source.getLength());
+        field.setDescription(source.getDescription());
+        return field;
+    }
+
+    private EntityDefinition.FieldDefinition findField(EntityDefinition entityDef, String fieldName) {
+        return entityDef.getFields().stream()
+                .filter(field -> field.getFieldName().equals(fieldName))
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Field not found: " + fieldName));
+    }
+
+    private String columnDefinition(EntityDefinition.FieldDefinition field) {
+        return registrationService.getColumnName(field) + " " + registrationService.getSqlType(field)
+                + (field.isNullable() ? "" : " NOT NULL");
+    }
+
+    private long countRows(String tableName) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + tableName, Long.class);
+        return count != null ? count : 0;
+    }
+
+    private void execute(String entityName, String sql) {
+        log.info("Schema change: {}", sql);
+        registrationService.executeDdl(entityName, sql);
+    }
+
+    private void regenerateEntityFile(EntityDefinition entityDef) {
+        if (!entityFileGeneratorService.entityFileExists(entityDef.getEntityName())) {
+            return;
+        }
+        entityFileGeneratorService.generateEntityFileAsync(entityDef);
+    }
+
+    private static <T> List<T> nullToEmpty(List<T> list) {
+        return list != null ? list : Collections.emptyList();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,22 @@
+package com.jinyi.odata.dynamic;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 动态实体结构变更请求
+ */
+@Data
+public class SchemaAlterRequest {
+    /** 新增字段（必须可为空） */
+    private List<EntityDefinition.FieldDefinition> addFields;
+    /** 修改字段：只允许放宽：加大字符串长度或INTEGER改为LONG */
+    private List<EntityDefinition.FieldDefinition> modifyFields;
+    /** 删除字段（不能删除主键） */
+    private List<String> dropFields;
+    /** 新增索引 */
+    private List<EntityDefinition.IndexDefinition> addIndexes;
+    /** 是否使用影子表在线迁移，为空时按表行数自动选择 */
+    private Boolean online;
+}
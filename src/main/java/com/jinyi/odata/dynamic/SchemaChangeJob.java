@@ -0,0 +1,46 @@
+package com.jinyi.odata.dynamic;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 结构变更任务状态
+ */
+@Data
+public class SchemaChangeJob {
+
+    public enum Strategy {
+        /** 直接 ALTER TABLE */
+        IN_PLACE,
+        /** 影子表分批复制后切换 */
+        SHADOW_COPY
+    }
+
+    public enum Status {
+        PENDING, RUNNING, COMPLETED, FAILED
+    }
+
+    private long id;
+    private String entityName;
+    private Strategy strategy;
+    private volatile Status status = Status.PENDING;
+    private volatile long totalRows;
+    private volatile long copiedRows;
+    private volatile String message;
+    private LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    /**
+     * 复制进度（百分比）
+     */
+    public int getProgress() {
+        if (status == Status.COMPLETED) {
+            return 100;
+        }
+        if (totalRows <= 0) {
+            return 0;
+        }
+        return (int) Math.min(99, copiedRows * 100 / totalRows);
+    }
+}
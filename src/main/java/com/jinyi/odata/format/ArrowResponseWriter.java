@@ -0,0 +1,330 @@
+package com.jinyi.odata.format;
+
+import com.jinyi.odata.core.DatabaseDialectService;
+import com.jinyi.odata.core.EntityMetadata;
+import com.jinyi.odata.core.EntityRegistryService;
+import com.jinyi.odata.core.PropertyMetadata;
+import com.jinyi.odata.service.ODataQueryService;
+import com.jinyi.odata.service.QueryContext;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Arrow IPC流写出器
+ * 按实体元数据推导Arrow Schema，直接从JDBC ResultSet按批次填充列向量并写出record batch
+ */
+@Component
+@Slf4j
+public class ArrowResponseWriter {
+
+    @Autowired
+    private ODataQueryService odataQueryService;
+
+    @Autowired
+    private EntityRegistryService entityRegistryService;
+
+    @Autowired
+    private DatabaseDialectService databaseDialectService;
+
+    @Value("${odata.arrow.batch-size:4096}")
+    private int batchSize;
+
+    @Value("${odata.arrow.max-memory:268435456}")
+    private long maxMemory;
+
+    private final BufferAllocator rootAllocator = new RootAllocator();
+
+    /**
+     * 单列写入器：把当前行的第column列写入向量的第row个位置
+     */
+    private interface ColumnWriter {
+        void write(ResultSet rs, int column, int row) throws SQLException;
+    }
+
+    /**
+     * 写出实体集合
+     */
+    public StreamingResponseBody writeEntitySet(ODataQueryService.SqlQuery query) {
+        return writeEntitySet(query, null);
+    }
+
+    /**
+     * 写出实体集合，写完后回调实际写出的行数
+     */
+    public StreamingResponseBody writeEntitySet(ODataQueryService.SqlQuery query, LongConsumer rowsWritten) {
+        EntityMetadata metadata = entityRegistryService.getEntityMetadata(query.getEntityName());
+        int fetchSize = databaseDialectService.getStreamingFetchSize(batchSize);
+        return outputStream -> {
+            try {
+                long rows = odataQueryService.streamQuery(query, fetchSize,
+                        rs -> writeResultSet(rs, metadata, outputStream, query.getContext()));
+                if (rowsWritten != null) {
+                    rowsWritten.accept(rows);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    private long writeResultSet(ResultSet rs, EntityMetadata metadata, OutputStream outputStream,
+                                QueryContext context) throws SQLException {
+        Schema schema = buildSchema(rs.getMetaData(), metadata);
+        try (BufferAllocator allocator = rootAllocator.newChildAllocator("arrow-" + metadata.getEntityName(), 0, maxMemory);
+             VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator);
+             ArrowStreamWriter writer = new ArrowStreamWriter(root, null,
+                     Channels.newChannel(StreamUtils.nonClosing(outputStream)))) {
+
+            List<ColumnWriter> columnWriters = new ArrayList<>();
+            for (FieldVector vector : root.getFieldVectors()) {
+                columnWriters.add(createColumnWriter(vector));
+            }
+
+            writer.start();
+            root.allocateNew();
+            int rowCount = 0;
+            long total = 0;
+            while (rs.next()) {
+                for (int i = 0; i < columnWriters.size(); i++) {
+                    columnWriters.get(i).write(rs, i + 1, rowCount);
+                }
+                rowCount++;
+                if (rowCount == batchSize) {
+                    root.setRowCount(rowCount);
+                    writer.writeBatch();
+                    total += rowCount;
+                    rowCount = 0;
+                    root.allocateNew();
+                }
+            }
+            if (rowCount > 0) {
+                root.setRowCount(rowCount);
+                writer.writeBatch();
+                total += rowCount;
+            }
+            writer.end();
+            log.debug("Arrow stream for {} written: {} rows", metadata.getEntityName(), total);
+            return total;
+        } catch (IOException e) {
+            // 客户端已断开：先取消语句，避免关闭流式结果集时继续读取剩余数据
+            if (context != null) {
+                context.cancel();
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 根据结果集列推导Schema：优先使用实体属性类型，未知列按JDBC类型推导
+     */
+    private Schema buildSchema(ResultSetMetaData rsMetaData, EntityMetadata metadata) throws SQLException {
+        List<Field> fields = new ArrayList<>();
+        for (int i = 1; i <= rsMetaData.getColumnCount(); i++) {
+            String label = rsMetaData.getColumnLabel(i);
+            PropertyMetadata property = metadata.resolveProperty(label);
+
+            ArrowType type;
+            String name;
+            boolean nullable;
+            if (property != null) {
+                type = toArrowType(property.getJavaType(), rsMetaData, i);
+                name = property.getName();
+                nullable = property.isNullable();
+            } else {
+                type = toArrowType(rsMetaData.getColumnType(i), rsMetaData, i);
+                name = label;
+                nullable = true;
+            }
+            fields.add(new Field(name, new FieldType(nullable, type, null), Collections.emptyList()));
+        }
+        return new Schema(fields);
+    }
+
+    private ArrowType toArrowType(Class<?> javaType, ResultSetMetaData rsMetaData, int column) throws SQLException {
+        if (javaType == Long.class || javaType == long.class) {
+            return new ArrowType.Int(64, true);
+        }
+        if (javaType == Integer.class || javaType == int.class) {
+            return new ArrowType.Int(32, true);
+        }
+        if (javaType == BigDecimal.class) {
+            return decimalType(rsMetaData, column);
+        }
+        if (javaType == LocalDateTime.class) {
+            return new ArrowType.Timestamp(TimeUnit.MILLISECOND, null);
+        }
+        if (javaType == Boolean.class || javaType == boolean.class) {
+            return ArrowType.Bool.INSTANCE;
+        }
+        if (javaType == Double.class || javaType == double.class || javaType == Float.class || javaType == float.class) {
+            return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+        }
+        return ArrowType.Utf8.INSTANCE;
+    }
+
+    private ArrowType toArrowType(int jdbcType, ResultSetMetaData rsMetaData, int column) throws SQLException {
+        switch (jdbcType) {
+            case Types.BIGINT:
+                return new ArrowType.Int(64, true);
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                return new ArrowType.Int(32, true);
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return decimalType(rsMetaData, column);
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return new ArrowType.Timestamp(TimeUnit.MILLISECOND, null);
+            case Types.BOOLEAN:
+            case Types.BIT:
+                return ArrowType.Bool.INSTANCE;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            default:
+                return ArrowType.Utf8.INSTANCE;
+        }
+    }
+
+    /**
+     * DECIMAL映射为Decimal128，精度超出38位时截断为38位
+     */
+    private ArrowType decimalType(ResultSetMetaData rsMetaData, int column) throws SQLException {
+        int precision = rsMetaData.getPrecision(column);
+        int scale = rsMetaData.getScale(column);
+        if (precision <= 0) {
+            precision = 19;
+            scale = 2;
+        }
+        return new ArrowType.Decimal(Math.min(precision, 38), scale, 128);
+    }
+
+    private ColumnWriter createColumnWriter(FieldVector vector) {
+        if (vector instanceof BigIntVector) {
+            BigIntVector v = (BigIntVector) vector;
+            return (rs, column, row) -> {
+                long value = rs.getLong(column);
+                if (rs.wasNull()) {
+                    v.setNull(row);
+                } else {
+                    v.setSafe(row, value);
+                }
+            };
+        }
+        if (vector instanceof IntVector) {
+            IntVector v = (IntVector) vector;
+            return (rs, column, row) -> {
+                int value = rs.getInt(column);
+                if (rs.wasNull()) {
+                    v.setNull(row);
+                } else {
+                    v.setSafe(row, value);
+                }
+            };
+        }
+        if (vector instanceof DecimalVector) {
+            DecimalVector v = (DecimalVector) vector;
+            int scale = v.getScale();
+            return (rs, column, row) -> {
+                BigDecimal value = rs.getBigDecimal(column);
+                if (value == null) {
+                    v.setNull(row);
+                } else {
+                    v.setSafe(row, value.setScale(scale, RoundingMode.HALF_UP));
+                }
+            };
+        }
+        if (vector instanceof TimeStampMilliVector) {
+            TimeStampMilliVector v = (TimeStampMilliVector) vector;
+            return (rs, column, row) -> {
+                Timestamp value = rs.getTimestamp(column);
+                if (value == null) {
+                    v.setNull(row);
+                } else {
+                    // 无时区时间戳：按墙上时间编码
+                    v.setSafe(row, value.toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli());
+                }
+            };
+        }
+        if (vector instanceof BitVector) {
+            BitVector v = (BitVector) vector;
+            return (rs, column, row) -> {
+                boolean value = rs.getBoolean(column);
+                if (rs.wasNull()) {
+                    v.setNull(row);
+                } else {
+                    v.setSafe(row, value ? 1 : 0);
+                }
+            };
+        }
+        if (vector instanceof Float8Vector) {
+            Float8Vector v = (Float8Vector) vector;
+            return (rs, column, row) -> {
+                double value = rs.getDouble(column);
+                if (rs.wasNull()) {
+                    v.setNull(row);
+                } else {
+                    v.setSafe(row, value);
+                }
+            };
+        }
+        VarCharVector v = (VarCharVector) vector;
+        return (rs, column, row) -> {
+            String value = rs.getString(column);
+            if (value == null) {
+                v.setNull(row);
+            } else {
+                v.setSafe(row, value.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    @PreDestroy
+    public void close() {
+        rootAllocator.close();
+    }
+}
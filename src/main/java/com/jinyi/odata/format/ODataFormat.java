@@ -0,0 +1,73 @@
+package com.jinyi.odata.format;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+
+/**
+ * OData响应格式
+ * 优先使用 $format 参数，其次按 Accept 头协商，默认JSON
+ */
+public enum ODataFormat {
+
+    JSON("json", MediaType.APPLICATION_JSON),
+    CBOR("cbor", MediaType.APPLICATION_CBOR),
+    SMILE("smile", new MediaType("application", "x-jackson-smile")),
+    ARROW("arrow", new MediaType("application", "vnd.apache.arrow.stream"));
+
+    public static final String CBOR_VALUE = "application/cbor";
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+    public static final String ARROW_VALUE = "application/vnd.apache.arrow.stream";
+
+    private final String formatName;
+    private final MediaType mediaType;
+
+    ODataFormat(String formatName, MediaType mediaType) {
+        this.formatName = formatName;
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * 文档格式：Arrow只用于实体集合，单个实体和错误信息回退为JSON
+     */
+    public ODataFormat getDocumentFormat() {
+        return this == ARROW ? JSON : this;
+    }
+
+    /**
+     * 解析响应格式
+     */
+    public static ODataFormat resolve(String format, String accept) {
+        if (StringUtils.hasText(format)) {
+            for (ODataFormat candidate : values()) {
+                if (candidate.formatName.equalsIgnoreCase(format)
+                        || candidate.mediaType.toString().equalsIgnoreCase(format)) {
+                    return candidate;
+                }
+            }
+        }
+
+        if (StringUtils.hasText(accept)) {
+            try {
+                List<MediaType> mediaTypes = MediaType.parseMediaTypes(accept);
+                MediaType.sortBySpecificityAndQuality(mediaTypes);
+                for (MediaType requested : mediaTypes) {
+                    for (ODataFormat candidate : values()) {
+                        if (requested.isCompatibleWith(candidate.mediaType) && !requested.isWildcardType()) {
+                            return candidate;
+                        }
+                    }
+                }
+            } catch (InvalidMediaTypeException e) {
+                return JSON;
+            }
+        }
+        return JSON;
+    }
+}
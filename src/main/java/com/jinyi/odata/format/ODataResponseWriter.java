@@ -0,0 +1,144 @@
+package com.jinyi.odata.format;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.jinyi.odata.service.ODataQueryService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OData响应写出器
+ * 使用Jackson流式生成器逐行写出响应信封，JSON/CBOR/Smile共用同一套写出逻辑
+ */
+@Component
+public class ODataResponseWriter {
+
+    private final Map<ODataFormat, ObjectMapper> mappers = new EnumMap<>(ODataFormat.class);
+
+    public ODataResponseWriter(ObjectMapper objectMapper, Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        // 二进制格式沿用Spring的Jackson配置（模块等），LocalDateTime 改为纪元毫秒以避免文本格式化开销
+        // （按UTC换算，与Arrow格式一致；JavaTimeModule的时间戳模式写出的是数组而不是时间戳）
+        mappers.put(ODataFormat.JSON, objectMapper);
+        objectMapperBuilder.serializerByType(LocalDateTime.class, new EpochMillisSerializer());
+        mappers.put(ODataFormat.CBOR, objectMapperBuilder.factory(new CBORFactory()).build());
+        mappers.put(ODataFormat.SMILE, objectMapperBuilder.factory(new SmileFactory()).build());
+    }
+
+    public ObjectMapper getObjectMapper(ODataFormat format) {
+        return mappers.get(format.getDocumentFormat());
+    }
+
+    /**
+     * 创建生成器，输出流由Servlet容器负责关闭
+     */
+    public JsonGenerator createGenerator(ObjectMapper mapper, OutputStream outputStream) throws IOException {
+        JsonGenerator generator = mapper.getFactory().createGenerator(outputStream);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setCodec(mapper);
+        return generator;
+    }
+
+    /**
+     * 写出查询结果
+     * 结果被多个合并的请求共用或来自结果缓存时，同一格式和注解只序列化一次，各请求直接写出相同的字节
+     */
+    public StreamingResponseBody writeEntitySet(ODataFormat format, Map<String, Object> annotations,
+                                                ODataQueryService.QueryResult result) {
+        StreamingResponseBody body = writeEntitySet(format, annotations, result.getData());
+        if (result.getSharedBy() <= 1 && !result.isCached()) {
+            return body;
+        }
+
+        byte[] bytes = result.getSerializedBody(format.getDocumentFormat() + "\n" + annotations, () -> {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try {
+                body.writeTo(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return buffer.toByteArray();
+        });
+        return outputStream -> outputStream.write(bytes);
+    }
+
+    /**
+     * 写出实体集合：先写注解（@odata.context、@odata.count 等），再逐行写出 value 数组
+     */
+    public StreamingResponseBody writeEntitySet(ODataFormat format, Map<String, Object> annotations,
+                                                List<Map<String, Object>> rows) {
+        ObjectMapper mapper = mappers.get(format.getDocumentFormat());
+        return outputStream -> {
+            try (JsonGenerator generator = createGenerator(mapper, outputStream)) {
+                generator.writeStartObject();
+                for (Map.Entry<String, Object> annotation : annotations.entrySet()) {
+                    generator.writeObjectField(annotation.getKey(), annotation.getValue());
+                }
+                generator.writeArrayFieldStart("value");
+                for (Map<String, Object> row : rows) {
+                    generator.writeObject(row);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+        };
+    }
+
+    /**
+     * 写出错误响应，状态码和响应头由调用方在builder中设置
+     */
+    public ResponseEntity<StreamingResponseBody> writeError(ODataFormat format, ResponseEntity.BodyBuilder builder,
+                                                            String code, String message) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", Map.of(
+            "code", code,
+            "message", message
+        ));
+        ODataFormat documentFormat = format.getDocumentFormat();
+        return builder.contentType(documentFormat.getMediaType()).body(writeEntity(documentFormat, error));
+    }
+
+    /**
+     * 写出单个实体
+     */
+    public StreamingResponseBody writeEntity(ODataFormat format, Map<String, Object> entity) {
+        ObjectMapper mapper = mappers.get(format.getDocumentFormat());
+        return outputStream -> {
+            try (JsonGenerator generator = createGenerator(mapper, outputStream)) {
+                generator.writeObject(entity);
+            }
+        };
+    }
+
+    /**
+     * LocalDateTime 写为纪元毫秒（按UTC换算）
+     */
+    private static class EpochMillisSerializer extends StdSerializer<LocalDateTime> {
+
+        EpochMillisSerializer() {
+            super(LocalDateTime.class);
+        }
+
+        @Override
+        public void serialize(LocalDateTime value, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            generator.writeNumber(value.toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+    }
+}
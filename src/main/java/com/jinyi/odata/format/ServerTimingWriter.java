@@ -0,0 +1,225 @@
+package com.jinyi.odata.format;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jinyi.odata.accesslog.AccessLogWriter;
+import com.jinyi.odata.jfr.QueryEvent;
+import com.jinyi.odata.service.QueryContext;
+import com.jinyi.odata.service.RequestTiming;
+import com.jinyi.odata.service.UsageMeteringService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求分阶段计时的输出
+ * 序列化之前的各阶段写入 Server-Timing 响应头；序列化完成后各阶段汇总到 odata.request.phase 直方图。
+ * 请求带 {@code $debug=timing} 且响应为JSON时，先将响应写入缓冲区，再连同包括序列化在内的各阶段耗时以信封形式写出。
+ * 响应写出后提交请求的 {@link QueryEvent}（开启JFR记录时），写入访问日志并计入应用用量
+ */
+@Component
+public class ServerTimingWriter {
+
+    public static final String SERVER_TIMING = "Server-Timing";
+
+    public static final String DEBUG_PARAMETER = "$debug";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AccessLogWriter accessLogWriter;
+
+    @Autowired
+    private UsageMeteringService usageMeteringService;
+
+    @Value("${odata.timing.enabled:true}")
+    private boolean enabled;
+
+    private final Timer[] phaseTimers = new Timer[RequestTiming.PHASES.length];
+    private Timer totalTimer;
+
+    @PostConstruct
+    public void init() {
+        for (RequestTiming.Phase phase : RequestTiming.PHASES) {
+            phaseTimers[phase.ordinal()] = phaseTimer(phase.getMetricName());
+        }
+        totalTimer = phaseTimer("total");
+    }
+
+    /**
+     * 开始计时，未启用时上下文保持不计时
+     * @param kind 请求类型（entitySet / entity）
+     * @param appCode 应用编码，全局服务为null
+     */
+    public void start(QueryContext context, String kind, String appCode, String entitySet) {
+        context.describe(kind, appCode, entitySet);
+        if (enabled) {
+            context.setTiming(RequestTiming.start());
+        }
+        QueryEvent event = context.getEvent();
+        if (event.isEnabled()) {
+            event.begin();
+        }
+    }
+
+    /**
+     * 是否请求了计时信封
+     */
+    public static boolean isDebugTiming(String debug) {
+        return "timing".equalsIgnoreCase(debug);
+    }
+
+    /**
+     * 添加 Server-Timing 响应头，并在响应体写出后记录序列化耗时、直方图、访问日志、应用用量和JFR事件
+     * @param debug 是否以 {@code {"@odata.debug":{"timing":{...}},"response":...}} 信封写出（仅JSON响应）
+     */
+    public ResponseEntity<StreamingResponseBody> finish(ResponseEntity<StreamingResponseBody> response,
+                                                        QueryContext context, boolean debug) {
+        RequestTiming timing = context.getTiming();
+        QueryEvent event = context.getEvent();
+        if (!timing.isEnabled() && !event.isEnabled() && !accessLogWriter.isEnabled()
+                && !usageMeteringService.isEnabled()) {
+            return response;
+        }
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders());
+        if (timing.isEnabled()) {
+            builder.header(SERVER_TIMING, timing.toServerTiming());
+        }
+        int status = response.getStatusCodeValue();
+        StreamingResponseBody body = response.getBody();
+        if (body == null) {
+            complete(context, status, 0);
+            return builder.build();
+        }
+
+        boolean envelope = debug && timing.isEnabled()
+                && MediaType.APPLICATION_JSON.isCompatibleWith(response.getHeaders().getContentType());
+        return builder.body(outputStream -> {
+            CountingOutputStream counted = new CountingOutputStream(outputStream);
+            long begin = timing.begin();
+            // 写出失败（序列化异常或客户端断开）时状态码已发出，按500记录已写出的字节数
+            int completedStatus = HttpStatus.INTERNAL_SERVER_ERROR.value();
+            try {
+                if (envelope) {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    body.writeTo(buffer);
+                    timing.stop(RequestTiming.Phase.SERIALIZE, begin);
+                    writeEnvelope(counted, timing, buffer);
+                } else {
+                    body.writeTo(counted);
+                    timing.stop(RequestTiming.Phase.SERIALIZE, begin);
+                }
+                completedStatus = status;
+            } finally {
+                complete(context, completedStatus, counted.count);
+            }
+        });
+    }
+
+    private void complete(QueryContext context, int status, long bytes) {
+        RequestTiming timing = context.getTiming();
+        if (timing.isEnabled()) {
+            record(timing);
+        }
+        accessLogWriter.append(context, status, bytes);
+        if (status < 400) {
+            // 只计量成功的请求，避免不存在的实体集名称进入计量表
+            usageMeteringService.record(context.getAppCode(), context.getEntitySet(), context.getRows(), bytes,
+                    timing.getNanos(RequestTiming.Phase.DB));
+        }
+
+        QueryEvent event = context.getEvent();
+        if (event.shouldCommit()) {
+            event.setKind(context.getKind());
+            event.setAppCode(context.getAppCode());
+            event.setEntity(context.getEntitySet());
+            event.setSqlShape(context.getSqlShape());
+            event.setRows(context.getRows());
+            event.setCoalesced(context.isCoalesced());
+            event.setStatus(status);
+            event.setBytes(bytes);
+            event.setCatalog(timing.getNanos(RequestTiming.Phase.CATALOG));
+            event.setBuild(timing.getNanos(RequestTiming.Phase.BUILD));
+            event.setDb(timing.getNanos(RequestTiming.Phase.DB));
+            event.setMap(timing.getNanos(RequestTiming.Phase.MAP));
+            event.setSerialize(timing.getNanos(RequestTiming.Phase.SERIALIZE));
+            event.commit();
+        }
+    }
+
+    private void writeEnvelope(OutputStream outputStream, RequestTiming timing,
+                               ByteArrayOutputStream response) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("@odata.debug");
+        generator.writeFieldName("timing");
+        generator.writeObject(timing.toMillis());
+        generator.writeEndObject();
+        generator.writeFieldName("response");
+        generator.writeRawValue(response.toString(StandardCharsets.UTF_8));
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    private void record(RequestTiming timing) {
+        for (RequestTiming.Phase phase : RequestTiming.PHASES) {
+            long nanos = timing.getNanos(phase);
+            if (nanos > 0) {
+                phaseTimers[phase.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        totalTimer.record(timing.getElapsedNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 统计写出的字节数（JFR事件的响应大小）
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private Timer phaseTimer(String phase) {
+        return Timer.builder("odata.request.phase")
+                .tag("phase", phase)
+                .description("Time spent in each phase of OData entity requests")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
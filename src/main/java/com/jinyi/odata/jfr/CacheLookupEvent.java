@@ -0,0 +1,27 @@
+package com.jinyi.odata.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * 缓存查找的JFR事件，未命中时持续时间包含同步加载
+ */
+@Name("com.jinyi.odata.CacheLookup")
+@Label("OData Cache Lookup")
+@Category({"OData", "Cache"})
+@Description("Lookup in the key, result or application cache")
+@StackTrace(false)
+@Setter
+public class CacheLookupEvent extends jdk.jfr.Event {
+
+    @Label("Cache")
+    private String cache;
+
+    @Label("Result")
+    @Description("hit, stale or miss")
+    private String result;
+}
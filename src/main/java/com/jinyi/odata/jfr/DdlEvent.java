@@ -0,0 +1,29 @@
+package com.jinyi.odata.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * 动态实体DDL语句的JFR事件（建表、建索引、删表和在线结构变更）
+ */
+@Name("com.jinyi.odata.Ddl")
+@Label("Dynamic Entity DDL")
+@Category({"OData", "Registry"})
+@Description("DDL statement executed for a dynamic entity")
+@StackTrace(false)
+@Setter
+public class DdlEvent extends jdk.jfr.Event {
+
+    @Label("Entity Set")
+    private String entity;
+
+    @Label("SQL")
+    private String sql;
+
+    @Label("Success")
+    private boolean success;
+}
@@ -0,0 +1,32 @@
+package com.jinyi.odata.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * 动态实体注册、结构替换和注销的JFR事件
+ */
+@Name("com.jinyi.odata.EntityRegistry")
+@Label("Dynamic Entity Registry")
+@Category({"OData", "Registry"})
+@Description("Dynamic entity register, replace or unregister operation")
+@StackTrace(false)
+@Setter
+public class EntityRegistryEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    private String operation;
+
+    @Label("Entity Set")
+    private String entity;
+
+    @Label("Table")
+    private String table;
+
+    @Label("Success")
+    private boolean success;
+}
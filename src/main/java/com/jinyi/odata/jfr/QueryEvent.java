@@ -0,0 +1,70 @@
+package com.jinyi.odata.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import lombok.Setter;
+
+/**
+ * OData查询请求的JFR事件
+ * 持续时间为请求开始到响应写出完成，各阶段耗时取自请求计时
+ */
+@Name("com.jinyi.odata.Query")
+@Label("OData Query")
+@Category({"OData", "Query"})
+@Description("OData entity set or single entity request")
+@StackTrace(false)
+@Setter
+public class QueryEvent extends jdk.jfr.Event {
+
+    @Label("Request Kind")
+    private String kind;
+
+    @Label("Application")
+    private String appCode;
+
+    @Label("Entity Set")
+    private String entity;
+
+    @Label("SQL Shape Hash")
+    @Description("Hash of the parameterized SQL, equal for queries that differ only in literal values")
+    private int sqlShape;
+
+    @Label("Rows")
+    private int rows;
+
+    @Label("Response Size")
+    @DataAmount
+    private long bytes;
+
+    @Label("Status")
+    private int status;
+
+    @Label("Coalesced")
+    @Description("Result was shared with other identical in-flight queries")
+    private boolean coalesced;
+
+    @Label("Catalog")
+    @Timespan
+    private long catalog;
+
+    @Label("Build")
+    @Timespan
+    private long build;
+
+    @Label("Database")
+    @Timespan
+    private long db;
+
+    @Label("Row Mapping")
+    @Timespan
+    private long map;
+
+    @Label("Serialization")
+    @Timespan
+    private long serialize;
+}
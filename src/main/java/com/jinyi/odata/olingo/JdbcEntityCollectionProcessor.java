@@ -0,0 +1,171 @@
+package com.jinyi.odata.olingo;
+
+import com.jinyi.odata.core.EntityMetadata;
+import com.jinyi.odata.core.PropertyMetadata;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.olingo.commons.api.data.ContextURL;
+import org.apache.olingo.commons.api.edm.EdmEntitySet;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataLibraryException;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.processor.EntityCollectionProcessor;
+import org.apache.olingo.server.api.serializer.EntityCollectionSerializerOptions;
+import org.apache.olingo.server.api.serializer.ODataSerializer;
+import org.apache.olingo.server.api.serializer.SerializerStreamResult;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.api.uri.queryoption.CountOption;
+import org.apache.olingo.server.api.uri.queryoption.FilterOption;
+import org.apache.olingo.server.api.uri.queryoption.OrderByItem;
+import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 实体集合处理器
+ * 将UriInfo翻译为SQL，并通过Olingo流式序列化器直接从ResultSet输出
+ */
+@Slf4j
+public class JdbcEntityCollectionProcessor extends JdbcProcessorSupport implements EntityCollectionProcessor {
+
+    public JdbcEntityCollectionProcessor(RegistryEdmProvider edmProvider, JdbcTemplate jdbcTemplate, int fetchSize,
+                                         QueryPolicy policy) {
+        super(edmProvider, jdbcTemplate, fetchSize, policy);
+    }
+
+    @Override
+    public void readEntityCollection(ODataRequest request, ODataResponse response, UriInfo uriInfo,
+                                     ContentType responseFormat) throws ODataApplicationException, ODataLibraryException {
+        EdmEntitySet edmEntitySet = getEntitySetResource(uriInfo).getEntitySet();
+        EdmEntityType edmEntityType = edmEntitySet.getEntityType();
+        EntityMetadata metadata = getEntityMetadata(edmEntitySet);
+        int timeout = policy.queryTimeout(metadata.getEntityName());
+
+        SelectOption selectOption = uriInfo.getSelectOption();
+        List<PropertyMetadata> columns = selectColumns(metadata, selectOption);
+
+        // WHERE
+        List<Object> whereParameters = new ArrayList<>();
+        String whereClause = buildWhereClause(metadata, uriInfo.getFilterOption(), whereParameters);
+
+        // COUNT（流式读取期间连接不能执行其他语句，因此先统计总数）
+        CountOption countOption = uriInfo.getCountOption();
+        Integer count = null;
+        if (countOption != null && countOption.getValue()) {
+            count = queryCount(metadata, whereClause, whereParameters, timeout);
+        }
+
+        // SELECT ... ORDER BY ... LIMIT ... OFFSET ...
+        List<Object> parameters = new ArrayList<>(whereParameters);
+        StringBuilder sql = new StringBuilder("SELECT ").append(columnList(columns))
+                .append(" FROM ").append(metadata.getTableName());
+        if (!whereClause.isEmpty()) {
+            sql.append(" WHERE ").append(whereClause);
+        }
+        String orderClause = buildOrderClause(metadata, uriInfo.getOrderByOption(), parameters);
+        if (!orderClause.isEmpty()) {
+            sql.append(" ORDER BY ").append(orderClause);
+        }
+        Long top = uriInfo.getTopOption() != null ? (long) uriInfo.getTopOption().getValue() : null;
+        top = policy.checkCost(metadata.getEntityName(), sql.toString(), new ArrayList<>(parameters), top);
+        appendLimit(sql, top, uriInfo, parameters);
+
+        log.debug("Olingo SQL: {}", sql);
+        log.debug("Parameters: {}", parameters);
+
+        ResultSetEntityIterator iterator;
+        try {
+            iterator = track(new ResultSetEntityIterator(dataSource, sql.toString(), parameters, fetchSize, timeout,
+                    columns, entity -> buildEntityId(edmEntitySet, entity),
+                    rows -> policy.recordRows(edmEntitySet.getName(), rows)));
+        } catch (SQLException e) {
+            throw new ODataApplicationException("Query failed: " + e.getMessage(),
+                    HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ROOT, e);
+        }
+        iterator.setCount(count);
+
+        ODataSerializer serializer = odata.createSerializer(responseFormat);
+        ContextURL contextUrl = ContextURL.with()
+                .entitySet(edmEntitySet)
+                .selectList(odata.createUriHelper().buildContextURLSelectList(edmEntityType, null, selectOption))
+                .build();
+        EntityCollectionSerializerOptions options = EntityCollectionSerializerOptions.with()
+                .contextURL(contextUrl)
+                .select(selectOption)
+                .count(countOption)
+                .id(request.getRawBaseUri() + "/" + edmEntitySet.getName())
+                .writeContentErrorCallback((context, channel) ->
+                        log.error("Failed to stream entity set: {}", edmEntitySet.getName(), context.getException()))
+                .build();
+
+        SerializerStreamResult result = serializer.entityCollectionStreamed(serviceMetadata, edmEntityType, iterator, options);
+        response.setODataContent(result.getODataContent());
+        response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+        response.setHeader(HttpHeader.CONTENT_TYPE, responseFormat.toContentTypeString());
+    }
+
+    private String buildWhereClause(EntityMetadata metadata, FilterOption filterOption, List<Object> parameters)
+            throws ODataApplicationException {
+        if (filterOption == null) {
+            return "";
+        }
+        try {
+            return filterOption.getExpression().accept(new SqlExpressionVisitor(metadata, parameters));
+        } catch (ExpressionVisitException e) {
+            throw new ODataApplicationException("Invalid $filter: " + e.getMessage(),
+                    HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ROOT, e);
+        }
+    }
+
+    private String buildOrderClause(EntityMetadata metadata, OrderByOption orderByOption, List<Object> parameters)
+            throws ODataApplicationException {
+        if (orderByOption == null) {
+            return "";
+        }
+
+        SqlExpressionVisitor visitor = new SqlExpressionVisitor(metadata, parameters);
+        List<String> orders = new ArrayList<>();
+        try {
+            for (OrderByItem item : orderByOption.getOrders()) {
+                orders.add(item.getExpression().accept(visitor) + (item.isDescending() ? " DESC" : " ASC"));
+            }
+        } catch (ExpressionVisitException e) {
+            throw new ODataApplicationException("Invalid $orderby: " + e.getMessage(),
+                    HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ROOT, e);
+        }
+        return String.join(", ", orders);
+    }
+
+    private void appendLimit(StringBuilder sql, Long top, UriInfo uriInfo, List<Object> parameters) {
+        Integer skip = uriInfo.getSkipOption() != null ? uriInfo.getSkipOption().getValue() : null;
+
+        if (top != null || skip != null) {
+            sql.append(" LIMIT ?");
+            parameters.add(top != null ? top : Long.MAX_VALUE);
+        }
+        if (skip != null) {
+            sql.append(" OFFSET ?");
+            parameters.add((long) skip);
+        }
+    }
+
+    private Integer queryCount(EntityMetadata metadata, String whereClause, List<Object> parameters, int timeout) {
+        StringBuilder countSql = new StringBuilder("SELECT COUNT(*) FROM ").append(metadata.getTableName());
+        if (!whereClause.isEmpty()) {
+            countSql.append(" WHERE ").append(whereClause);
+        }
+        Long count = jdbcTemplate.query(statement(countSql.toString(), parameters, timeout),
+                rs -> rs.next() ? rs.getLong(1) : 0L);
+        return count != null ? count.intValue() : 0;
+    }
+}
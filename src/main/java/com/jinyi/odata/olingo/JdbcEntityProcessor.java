@@ -0,0 +1,145 @@
+package com.jinyi.odata.olingo;
+
+import com.jinyi.odata.core.EntityMetadata;
+import com.jinyi.odata.core.PropertyMetadata;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.olingo.commons.api.data.ContextURL;
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.Property;
+import org.apache.olingo.commons.api.data.ValueType;
+import org.apache.olingo.commons.api.edm.EdmEntitySet;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
+import org.apache.olingo.commons.api.edm.EdmProperty;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataLibraryException;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.processor.EntityProcessor;
+import org.apache.olingo.server.api.serializer.EntitySerializerOptions;
+import org.apache.olingo.server.api.serializer.SerializerResult;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.api.uri.UriParameter;
+import org.apache.olingo.server.api.uri.UriResourceEntitySet;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 单个实体处理器
+ * 按主键读取实体；写操作暂不支持
+ */
+@Slf4j
+public class JdbcEntityProcessor extends JdbcProcessorSupport implements EntityProcessor {
+
+    public JdbcEntityProcessor(RegistryEdmProvider edmProvider, JdbcTemplate jdbcTemplate, int fetchSize,
+                               QueryPolicy policy) {
+        super(edmProvider, jdbcTemplate, fetchSize, policy);
+    }
+
+    @Override
+    public void readEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType responseFormat)
+            throws ODataApplicationException, ODataLibraryException {
+        UriResourceEntitySet resource = getEntitySetResource(uriInfo);
+        EdmEntitySet edmEntitySet = resource.getEntitySet();
+        EdmEntityType edmEntityType = edmEntitySet.getEntityType();
+        EntityMetadata metadata = getEntityMetadata(edmEntitySet);
+
+        SelectOption selectOption = uriInfo.getSelectOption();
+        List<PropertyMetadata> columns = selectColumns(metadata, selectOption);
+
+        List<Object> parameters = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        for (UriParameter keyPredicate : resource.getKeyPredicates()) {
+            PropertyMetadata property = metadata.getProperty(keyPredicate.getName());
+            conditions.add(property.getColumnName() + " = ?");
+            parameters.add(parseKeyValue(edmEntityType, keyPredicate));
+        }
+
+        String sql = "SELECT " + columnList(columns) + " FROM " + metadata.getTableName()
+                + " WHERE " + String.join(" AND ", conditions);
+        log.debug("Olingo SQL: {}", sql);
+        log.debug("Parameters: {}", parameters);
+
+        int timeout = policy.queryTimeout(metadata.getEntityName());
+        List<Entity> entities = jdbcTemplate.query(statement(sql, parameters, timeout), (rs, rowNum) -> {
+            Entity entity = new Entity();
+            for (int i = 0; i < columns.size(); i++) {
+                PropertyMetadata column = columns.get(i);
+                entity.addProperty(new Property(null, column.getName(), ValueType.PRIMITIVE,
+                        ResultSetEntityIterator.readValue(rs, i + 1, column.getJavaType())));
+            }
+            return entity;
+        });
+        policy.recordRows(edmEntitySet.getName(), entities.size());
+
+        if (entities.isEmpty()) {
+            throw new ODataApplicationException("Entity not found",
+                    HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ROOT);
+        }
+
+        Entity entity = entities.get(0);
+        entity.setId(buildEntityId(edmEntitySet, entity));
+
+        ContextURL contextUrl = ContextURL.with()
+                .entitySet(edmEntitySet)
+                .selectList(odata.createUriHelper().buildContextURLSelectList(edmEntityType, null, selectOption))
+                .suffix(ContextURL.Suffix.ENTITY)
+                .build();
+        EntitySerializerOptions options = EntitySerializerOptions.with()
+                .contextURL(contextUrl)
+                .select(selectOption)
+                .build();
+
+        SerializerResult result = odata.createSerializer(responseFormat)
+                .entity(serviceMetadata, edmEntityType, entity, options);
+        response.setContent(result.getContent());
+        response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+        response.setHeader(HttpHeader.CONTENT_TYPE, responseFormat.toContentTypeString());
+    }
+
+    /**
+     * 将主键字面量转换为JDBC参数
+     */
+    private Object parseKeyValue(EdmEntityType edmEntityType, UriParameter keyPredicate) throws ODataApplicationException {
+        EdmProperty edmProperty = (EdmProperty) edmEntityType.getProperty(keyPredicate.getName());
+        EdmPrimitiveType type = (EdmPrimitiveType) edmProperty.getType();
+        try {
+            String value = type.fromUriLiteral(keyPredicate.getText());
+            return type.valueOfString(value, edmProperty.isNullable(), edmProperty.getMaxLength(),
+                    edmProperty.getPrecision(), edmProperty.getScale(), edmProperty.isUnicode(), type.getDefaultType());
+        } catch (EdmPrimitiveTypeException e) {
+            throw new ODataApplicationException("Invalid key: " + keyPredicate.getText(),
+                    HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ROOT, e);
+        }
+    }
+
+    @Override
+    public void createEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo,
+                             ContentType requestFormat, ContentType responseFormat) throws ODataApplicationException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo,
+                             ContentType requestFormat, ContentType responseFormat) throws ODataApplicationException {
+        throw readOnly();
+    }
+
+    @Override
+    public void deleteEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo) throws ODataApplicationException {
+        throw readOnly();
+    }
+
+    private ODataApplicationException readOnly() {
+        return new ODataApplicationException("Entity modification is not supported",
+                HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ROOT);
+    }
+}
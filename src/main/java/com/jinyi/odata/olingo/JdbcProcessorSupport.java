@@ -0,0 +1,168 @@
+package com.jinyi.odata.olingo;
+
+import com.jinyi.odata.core.EntityMetadata;
+import com.jinyi.odata.core.PropertyMetadata;
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.edm.EdmEntitySet;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.processor.Processor;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.apache.olingo.server.api.uri.UriInfoResource;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceEntitySet;
+import org.apache.olingo.server.api.uri.UriResourcePrimitiveProperty;
+import org.apache.olingo.server.api.uri.queryoption.SelectItem;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * JDBC处理器公共逻辑
+ * 负责实体集解析、列选择、查询约束以及本次请求打开的JDBC资源的释放
+ */
+abstract class JdbcProcessorSupport implements Processor, AutoCloseable {
+
+    protected final RegistryEdmProvider edmProvider;
+    protected final JdbcTemplate jdbcTemplate;
+    protected final DataSource dataSource;
+    protected final int fetchSize;
+    protected final QueryPolicy policy;
+
+    protected OData odata;
+    protected ServiceMetadata serviceMetadata;
+
+    private final List<AutoCloseable> openResources = new ArrayList<>();
+
+    protected JdbcProcessorSupport(RegistryEdmProvider edmProvider, JdbcTemplate jdbcTemplate, int fetchSize,
+                                   QueryPolicy policy) {
+        this.edmProvider = edmProvider;
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = jdbcTemplate.getDataSource();
+        this.fetchSize = fetchSize;
+        this.policy = policy;
+    }
+
+    @Override
+    public void init(OData odata, ServiceMetadata serviceMetadata) {
+        this.odata = odata;
+        this.serviceMetadata = serviceMetadata;
+    }
+
+    /**
+     * 解析URI中的实体集
+     */
+    protected UriResourceEntitySet getEntitySetResource(UriInfoResource uriInfo) throws ODataApplicationException {
+        List<UriResource> parts = uriInfo.getUriResourceParts();
+        if (parts.size() != 1 || !(parts.get(0) instanceof UriResourceEntitySet)) {
+            throw new ODataApplicationException("Navigation is not supported",
+                    HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ROOT);
+        }
+        return (UriResourceEntitySet) parts.get(0);
+    }
+
+    protected EntityMetadata getEntityMetadata(EdmEntitySet edmEntitySet) throws ODataApplicationException {
+        EntityMetadata metadata = edmProvider.getEntityMetadata(edmEntitySet.getName());
+        if (metadata == null) {
+            throw new ODataApplicationException("Entity not found: " + edmEntitySet.getName(),
+                    HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ROOT);
+        }
+        return metadata;
+    }
+
+    /**
+     * 根据$select确定需要查询的列，主键列始终包含（用于生成实体ID）
+     */
+    protected List<PropertyMetadata> selectColumns(EntityMetadata metadata, SelectOption selectOption) {
+        if (selectOption == null || selectOption.getSelectItems().stream().anyMatch(SelectItem::isStar)) {
+            return metadata.getProperties();
+        }
+
+        Set<PropertyMetadata> columns = new LinkedHashSet<>(metadata.getKeyProperties());
+        for (SelectItem item : selectOption.getSelectItems()) {
+            if (item.getResourcePath() == null) {
+                continue;
+            }
+            for (UriResource part : item.getResourcePath().getUriResourceParts()) {
+                if (part instanceof UriResourcePrimitiveProperty) {
+                    PropertyMetadata property = metadata.getProperty(
+                            ((UriResourcePrimitiveProperty) part).getProperty().getName());
+                    if (property != null) {
+                        columns.add(property);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(columns);
+    }
+
+    protected String columnList(List<PropertyMetadata> columns) {
+        List<String> names = new ArrayList<>(columns.size());
+        for (PropertyMetadata column : columns) {
+            names.add(column.getColumnName());
+        }
+        return String.join(", ", names);
+    }
+
+    /**
+     * 生成实体ID，例如 Orders(1)
+     */
+    protected URI buildEntityId(EdmEntitySet edmEntitySet, Entity entity) {
+        try {
+            String keyPredicate = odata.createUriHelper().buildKeyPredicate(edmEntitySet.getEntityType(), entity);
+            return new URI(edmEntitySet.getName() + "(" + keyPredicate + ")");
+        } catch (SerializerException | URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 带查询超时的语句
+     */
+    protected static PreparedStatementCreator statement(String sql, List<Object> parameters, int timeout) {
+        return connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            try {
+                if (timeout > 0) {
+                    ps.setQueryTimeout(timeout);
+                }
+                new ArgumentPreparedStatementSetter(parameters.toArray()).setValues(ps);
+            } catch (SQLException e) {
+                ps.close();
+                throw e;
+            }
+            return ps;
+        };
+    }
+
+    protected <T extends AutoCloseable> T track(T resource) {
+        openResources.add(resource);
+        return resource;
+    }
+
+    @Override
+    public void close() {
+        for (AutoCloseable resource : openResources) {
+            try {
+                resource.close();
+            } catch (Exception ignored) {
+                // 资源释放失败不影响响应
+            }
+        }
+        openResources.clear();
+    }
+}
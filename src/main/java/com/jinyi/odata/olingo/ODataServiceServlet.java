@@ -0,0 +1,130 @@
+package com.jinyi.odata.olingo;
+
+import com.jinyi.odata.core.DatabaseDialectService;
+import com.jinyi.odata.datasource.DataSourceRouting;
+import com.jinyi.odata.ratelimit.AdaptiveConcurrencyLimiter;
+import com.jinyi.odata.ratelimit.AdmissionControlService;
+import com.jinyi.odata.ratelimit.QueryRejectedException;
+import com.jinyi.odata.service.ODataQueryService;
+import com.jinyi.odata.service.QueryCostGuard;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataHttpHandler;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Olingo的OData服务Servlet
+ * 路径格式：{servletPath}/{appCode}/...，appCode之后的部分交由ODataHttpHandler解析，应用的EDM和服务元数据由 ServiceMetadataCache 缓存。
+ * 实体集和实体请求与 /odata/{appCode} 控制器一样经过应用准入控制和自适应并发限制（许可保持到流式输出结束），
+ * 语句超时、EXPLAIN 成本守卫和行数计费由处理器通过 QueryPolicy 执行
+ */
+public class ODataServiceServlet extends HttpServlet {
+
+    private final ServiceMetadataCache serviceMetadataCache;
+    private final DatabaseDialectService databaseDialectService;
+    private final JdbcTemplate jdbcTemplate;
+    private final AdmissionControlService admissionControlService;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final QueryCostGuard queryCostGuard;
+    private final ODataQueryService queryService;
+    private final int fetchSize;
+
+    public ODataServiceServlet(ServiceMetadataCache serviceMetadataCache,
+                               DatabaseDialectService databaseDialectService, JdbcTemplate jdbcTemplate,
+                               AdmissionControlService admissionControlService,
+                               AdaptiveConcurrencyLimiter concurrencyLimiter, QueryCostGuard queryCostGuard,
+                               ODataQueryService queryService, int fetchSize) {
+        this.serviceMetadataCache = serviceMetadataCache;
+        this.databaseDialectService = databaseDialectService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.admissionControlService = admissionControlService;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.queryCostGuard = queryCostGuard;
+        this.queryService = queryService;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String appCode = extractAppCode(request.getPathInfo());
+        ServiceMetadataCache.AppMetadata appMetadata = appCode != null ? serviceMetadataCache.get(appCode) : null;
+        if (appMetadata == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Application not found: " + appCode);
+            return;
+        }
+
+        // 应用级准入控制（$metadata、服务文档不计）
+        String entitySet = extractEntitySet(request.getPathInfo());
+        if (entitySet != null) {
+            long retryAfterNanos = admissionControlService.tryAdmit(appCode, entitySet);
+            if (retryAfterNanos > 0) {
+                long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + 999_999_999L));
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+                response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Rate limit exceeded for application");
+                return;
+            }
+        }
+
+        RegistryEdmProvider edmProvider = appMetadata.getEdmProvider();
+        int streamingFetchSize = databaseDialectService.getStreamingFetchSize(fetchSize);
+        QueryPolicy policy = new QueryPolicy(appCode, request.getHeader("Prefer"),
+                admissionControlService, queryCostGuard, queryService);
+        JdbcEntityCollectionProcessor collectionProcessor =
+                new JdbcEntityCollectionProcessor(edmProvider, jdbcTemplate, streamingFetchSize, policy);
+        JdbcEntityProcessor entityProcessor =
+                new JdbcEntityProcessor(edmProvider, jdbcTemplate, streamingFetchSize, policy);
+
+        try {
+            // OData实例不在线程间共用，服务元数据按应用缓存
+            ODataHttpHandler handler = OData.newInstance().createHandler(appMetadata.getServiceMetadata());
+            handler.setSplit(1);
+            handler.register(collectionProcessor);
+            handler.register(entityProcessor);
+            if (entitySet != null && "GET".equals(request.getMethod())) {
+                // 只读请求允许路由到从库；Olingo在 process 内写出响应，并发许可覆盖整个流式读取
+                concurrencyLimiter.execute(() -> DataSourceRouting.onReplica(() -> {
+                    handler.process(request, response);
+                    return null;
+                }));
+            } else {
+                handler.process(request, response);
+            }
+        } catch (QueryRejectedException e) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Query executor is busy, please retry later");
+        } finally {
+            collectionProcessor.close();
+            entityProcessor.close();
+        }
+    }
+
+    /**
+     * 提取appCode之后的实体集名称，$metadata、服务文档等返回null
+     */
+    private String extractEntitySet(String pathInfo) {
+        int start = pathInfo.indexOf('/', 1);
+        if (start < 0 || start + 1 >= pathInfo.length() || pathInfo.charAt(start + 1) == '$') {
+            return null;
+        }
+        int end = start + 1;
+        while (end < pathInfo.length() && pathInfo.charAt(end) != '(' && pathInfo.charAt(end) != '/') {
+            end++;
+        }
+        return pathInfo.substring(start + 1, end);
+    }
+
+    private String extractAppCode(String pathInfo) {
+        if (pathInfo == null || pathInfo.length() <= 1) {
+            return null;
+        }
+        int end = pathInfo.indexOf('/', 1);
+        return end < 0 ? pathInfo.substring(1) : pathInfo.substring(1, end);
+    }
+}
@@ -0,0 +1,49 @@
+package com.jinyi.odata.olingo;
+
+import com.jinyi.business.service.ApplicationService;
+import com.jinyi.odata.core.DatabaseDialectService;
+import com.jinyi.odata.core.EntityRegistryService;
+import com.jinyi.odata.ratelimit.AdaptiveConcurrencyLimiter;
+import com.jinyi.odata.ratelimit.AdmissionControlService;
+import com.jinyi.odata.service.ODataQueryService;
+import com.jinyi.odata.service.QueryCostGuard;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Olingo OData服务注册
+ * Servlet按路径前缀映射，优先于DispatcherServlet处理，因此不会与 /odata/{appCode} 控制器冲突
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "odata.olingo", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ODataServletConfiguration {
+
+    @Bean
+    public ServiceMetadataCache serviceMetadataCache(ApplicationService applicationService,
+                                                     EntityRegistryService entityRegistryService) {
+        return new ServiceMetadataCache(applicationService, entityRegistryService);
+    }
+
+    @Bean
+    public ServletRegistrationBean<ODataServiceServlet> odataServiceServlet(
+            ServiceMetadataCache serviceMetadataCache,
+            DatabaseDialectService databaseDialectService,
+            JdbcTemplate jdbcTemplate,
+            AdmissionControlService admissionControlService,
+            AdaptiveConcurrencyLimiter concurrencyLimiter,
+            QueryCostGuard queryCostGuard,
+            ODataQueryService queryService,
+            @Value("${odata.olingo.path:/odata/v4}") String path,
+            @Value("${odata.olingo.fetch-size:500}") int fetchSize) {
+        ODataServiceServlet servlet = new ODataServiceServlet(serviceMetadataCache, databaseDialectService,
+                jdbcTemplate, admissionControlService, concurrencyLimiter, queryCostGuard, queryService, fetchSize);
+        ServletRegistrationBean<ODataServiceServlet> registration = new ServletRegistrationBean<>(servlet, path + "/*");
+        registration.setName("odataServiceServlet");
+        registration.setLoadOnStartup(1);
+        return registration;
+    }
+}
@@ -0,0 +1,64 @@
+package com.jinyi.odata.olingo;
+
+import com.jinyi.odata.ratelimit.AdmissionControlService;
+import com.jinyi.odata.service.ODataQueryService;
+import com.jinyi.odata.service.QueryContext;
+import com.jinyi.odata.service.QueryCostGuard;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 一次Olingo请求的查询约束
+ * 与 /odata/{appCode} 控制器共用同一套规则：实体集查询超时（Prefer: wait 只能缩短）、EXPLAIN 成本守卫和返回行数计费
+ */
+final class QueryPolicy {
+
+    private final String appCode;
+    private final QueryContext context;
+    private final AdmissionControlService admissionControlService;
+    private final QueryCostGuard queryCostGuard;
+    private final ODataQueryService queryService;
+
+    QueryPolicy(String appCode, String prefer, AdmissionControlService admissionControlService,
+                QueryCostGuard queryCostGuard, ODataQueryService queryService) {
+        this.appCode = appCode;
+        this.context = QueryContext.fromPreferHeader(prefer);
+        this.admissionControlService = admissionControlService;
+        this.queryCostGuard = queryCostGuard;
+        this.queryService = queryService;
+    }
+
+    /**
+     * 查询超时（秒），0表示不限制
+     */
+    int queryTimeout(String entityName) {
+        return queryService.getQueryTimeout(entityName, context);
+    }
+
+    /**
+     * 检查查询成本
+     * @param sql 不含 LIMIT/OFFSET 的查询语句
+     * @return 实际使用的 $top（cap 模式下可能被缩小）
+     * @throws ODataApplicationException 查询超出阈值且处理方式为 reject
+     */
+    Long checkCost(String entityName, String sql, List<Object> parameters, Long top)
+            throws ODataApplicationException {
+        try {
+            // EXPLAIN 按形态在请求间共享，使用实体集的超时而不是本次请求的 Prefer: wait
+            return queryCostGuard.check(entityName, sql, parameters, top, queryService.getQueryTimeout(entityName, null));
+        } catch (RuntimeException e) {
+            throw new ODataApplicationException(e.getMessage(),
+                    HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ROOT, e);
+        }
+    }
+
+    /**
+     * 按返回行数扣减应用和实体集的行数令牌
+     */
+    void recordRows(String entitySet, long rows) {
+        admissionControlService.recordRows(appCode, entitySet, rows);
+    }
+}
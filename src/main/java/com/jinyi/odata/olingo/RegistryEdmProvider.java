@@ -0,0 +1,150 @@
+package com.jinyi.odata.olingo;
+
+import com.jinyi.odata.core.EntityMetadata;
+import com.jinyi.odata.core.PropertyMetadata;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edm.provider.CsdlAbstractEdmProvider;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntityContainer;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntityContainerInfo;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntitySet;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntityType;
+import org.apache.olingo.commons.api.edm.provider.CsdlProperty;
+import org.apache.olingo.commons.api.edm.provider.CsdlPropertyRef;
+import org.apache.olingo.commons.api.edm.provider.CsdlSchema;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于实体注册表的EDM提供者
+ * 每个应用一个命名空间，实体集与实体类型同名
+ */
+public class RegistryEdmProvider extends CsdlAbstractEdmProvider {
+
+    public static final String CONTAINER_NAME = "Container";
+
+    private final String namespace;
+    private final FullQualifiedName containerName;
+    private final Map<String, EntityMetadata> entities = new LinkedHashMap<>();
+
+    public RegistryEdmProvider(String namespace, List<EntityMetadata> entityMetadata) {
+        this.namespace = namespace;
+        this.containerName = new FullQualifiedName(namespace, CONTAINER_NAME);
+        for (EntityMetadata metadata : entityMetadata) {
+            entities.put(metadata.getEntityName(), metadata);
+        }
+    }
+
+    /**
+     * 根据实体集名称获取实体元数据
+     */
+    public EntityMetadata getEntityMetadata(String entitySetName) {
+        return entities.get(entitySetName);
+    }
+
+    @Override
+    public CsdlEntityType getEntityType(FullQualifiedName entityTypeName) {
+        if (!namespace.equals(entityTypeName.getNamespace())) {
+            return null;
+        }
+        EntityMetadata metadata = entities.get(entityTypeName.getName());
+        if (metadata == null) {
+            return null;
+        }
+
+        List<CsdlProperty> properties = new ArrayList<>();
+        List<CsdlPropertyRef> keys = new ArrayList<>();
+        for (PropertyMetadata property : metadata.getProperties()) {
+            properties.add(toCsdlProperty(property));
+            if (property.isKey()) {
+                keys.add(new CsdlPropertyRef().setName(property.getName()));
+            }
+        }
+
+        return new CsdlEntityType()
+                .setName(metadata.getEntityName())
+                .setProperties(properties)
+                .setKey(keys);
+    }
+
+    @Override
+    public CsdlEntitySet getEntitySet(FullQualifiedName entityContainer, String entitySetName) {
+        if (!containerName.equals(entityContainer) || !entities.containsKey(entitySetName)) {
+            return null;
+        }
+        return new CsdlEntitySet()
+                .setName(entitySetName)
+                .setType(new FullQualifiedName(namespace, entitySetName));
+    }
+
+    @Override
+    public CsdlEntityContainer getEntityContainer() {
+        List<CsdlEntitySet> entitySets = new ArrayList<>();
+        for (String entitySetName : entities.keySet()) {
+            entitySets.add(getEntitySet(containerName, entitySetName));
+        }
+        return new CsdlEntityContainer()
+                .setName(CONTAINER_NAME)
+                .setEntitySets(entitySets);
+    }
+
+    @Override
+    public CsdlEntityContainerInfo getEntityContainerInfo(FullQualifiedName entityContainerName) {
+        if (entityContainerName == null || containerName.equals(entityContainerName)) {
+            return new CsdlEntityContainerInfo().setContainerName(containerName);
+        }
+        return null;
+    }
+
+    @Override
+    public List<CsdlSchema> getSchemas() {
+        List<CsdlEntityType> entityTypes = new ArrayList<>();
+        for (String entityName : entities.keySet()) {
+            entityTypes.add(getEntityType(new FullQualifiedName(namespace, entityName)));
+        }
+
+        CsdlSchema schema = new CsdlSchema()
+                .setNamespace(namespace)
+                .setEntityTypes(entityTypes)
+                .setEntityContainer(getEntityContainer());
+        return Collections.singletonList(schema);
+    }
+
+    private CsdlProperty toCsdlProperty(PropertyMetadata property) {
+        CsdlProperty csdlProperty = new CsdlProperty()
+                .setName(property.getName())
+                .setType(toEdmType(property.getJavaType()).getFullQualifiedName())
+                .setNullable(property.isNullable() && !property.isKey());
+
+        if (property.getJavaType() == String.class) {
+            csdlProperty.setMaxLength(property.getLength());
+        } else if (property.getJavaType() == BigDecimal.class) {
+            csdlProperty.setPrecision(19).setScale(2);
+        }
+        return csdlProperty;
+    }
+
+    /**
+     * Java类型到EDM基本类型的映射
+     */
+    public static EdmPrimitiveTypeKind toEdmType(Class<?> javaType) {
+        if (javaType == Long.class || javaType == long.class) {
+            return EdmPrimitiveTypeKind.Int64;
+        } else if (javaType == Integer.class || javaType == int.class) {
+            return EdmPrimitiveTypeKind.Int32;
+        } else if (javaType == BigDecimal.class) {
+            return EdmPrimitiveTypeKind.Decimal;
+        } else if (javaType == LocalDateTime.class) {
+            return EdmPrimitiveTypeKind.DateTimeOffset;
+        } else if (javaType == Boolean.class || javaType == boolean.class) {
+            return EdmPrimitiveTypeKind.Boolean;
+        }
+        return EdmPrimitiveTypeKind.String;
+    }
+}
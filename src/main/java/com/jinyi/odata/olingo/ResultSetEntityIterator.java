@@ -0,0 +1,153 @@
+package com.jinyi.odata.olingo;
+
+import com.jinyi.odata.core.PropertyMetadata;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.EntityIterator;
+import org.apache.olingo.commons.api.data.Property;
+import org.apache.olingo.commons.api.data.ValueType;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * 基于JDBC ResultSet的流式实体迭代器
+ * 序列化器逐行拉取数据，结果集耗尽或出错时立即释放连接，并报告已读取的行数
+ */
+@Slf4j
+public class ResultSetEntityIterator extends EntityIterator implements AutoCloseable {
+
+    private final DataSource dataSource;
+    private final List<PropertyMetadata> columns;
+    private final Function<Entity, URI> idBuilder;
+    private final LongConsumer rowsConsumer;
+
+    private Connection connection;
+    private PreparedStatement statement;
+    private ResultSet resultSet;
+
+    private boolean advanced;
+    private boolean hasRow;
+    private boolean closed;
+    private long rows;
+
+    /**
+     * @param queryTimeout 查询超时（秒），0表示不限制
+     * @param rowsConsumer 关闭时接收已读取的行数
+     */
+    public ResultSetEntityIterator(DataSource dataSource, String sql, List<Object> parameters, int fetchSize,
+                                   int queryTimeout, List<PropertyMetadata> columns, Function<Entity, URI> idBuilder,
+                                   LongConsumer rowsConsumer) throws SQLException {
+        this.dataSource = dataSource;
+        this.columns = columns;
+        this.idBuilder = idBuilder;
+        this.rowsConsumer = rowsConsumer;
+
+        try {
+            connection = DataSourceUtils.getConnection(dataSource);
+            statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            if (queryTimeout > 0) {
+                statement.setQueryTimeout(queryTimeout);
+            }
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i));
+            }
+            resultSet = statement.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!advanced) {
+            try {
+                hasRow = resultSet.next();
+            } catch (SQLException e) {
+                close();
+                throw new IllegalStateException("Failed to read next row: " + e.getMessage(), e);
+            }
+            advanced = true;
+            if (!hasRow) {
+                close();
+            }
+        }
+        return hasRow;
+    }
+
+    @Override
+    public Entity next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        advanced = false;
+        rows++;
+
+        try {
+            return readEntity(resultSet);
+        } catch (SQLException e) {
+            close();
+            throw new IllegalStateException("Failed to read row: " + e.getMessage(), e);
+        }
+    }
+
+    private Entity readEntity(ResultSet rs) throws SQLException {
+        Entity entity = new Entity();
+        for (int i = 0; i < columns.size(); i++) {
+            PropertyMetadata column = columns.get(i);
+            Object value = readValue(rs, i + 1, column.getJavaType());
+            entity.addProperty(new Property(null, column.getName(), ValueType.PRIMITIVE, value));
+        }
+        entity.setId(idBuilder.apply(entity));
+        return entity;
+    }
+
+    /**
+     * 按属性类型读取列值，转换为Olingo可以序列化的类型
+     */
+    static Object readValue(ResultSet rs, int index, Class<?> javaType) throws SQLException {
+        Object value;
+        if (javaType == Long.class || javaType == long.class) {
+            value = rs.getLong(index);
+        } else if (javaType == Integer.class || javaType == int.class) {
+            value = rs.getInt(index);
+        } else if (javaType == BigDecimal.class) {
+            value = rs.getBigDecimal(index);
+        } else if (javaType == Boolean.class || javaType == boolean.class) {
+            value = rs.getBoolean(index);
+        } else if (javaType == java.time.LocalDateTime.class) {
+            value = rs.getTimestamp(index);
+        } else {
+            value = rs.getString(index);
+        }
+        return rs.wasNull() ? null : value;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        JdbcUtils.closeResultSet(resultSet);
+        JdbcUtils.closeStatement(statement);
+        DataSourceUtils.releaseConnection(connection, dataSource);
+        rowsConsumer.accept(rows);
+    }
+}
@@ -0,0 +1,131 @@
+package com.jinyi.odata.olingo;
+
+import com.jinyi.business.entity.ApplicationEntity;
+import com.jinyi.business.service.ApplicationChangedEvent;
+import com.jinyi.business.service.ApplicationService;
+import com.jinyi.odata.core.EntityMetadata;
+import com.jinyi.odata.core.EntityRegistryService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.springframework.context.event.EventListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Olingo服务元数据缓存
+ * 按appCode缓存应用的EDM和 ServiceMetadata（Olingo的EDM内部缓存是线程安全的，可在请求间共用）；
+ * 应用或其实体变更（ApplicationChangedEvent）时清空，动态实体注册、替换或注销后（发布了新的元数据实例）按需重建。
+ * 不存在的应用不缓存
+ */
+@Slf4j
+public class ServiceMetadataCache {
+
+    private final ApplicationService applicationService;
+    private final EntityRegistryService entityRegistryService;
+
+    private final Map<String, AppMetadata> entries = new ConcurrentHashMap<>();
+
+    // 清空时递增，清空前开始的加载结果不再写入
+    private long generation;
+
+    /**
+     * 一个应用的服务元数据，发布后不再修改
+     */
+    static final class AppMetadata {
+        // 实体名 -> 加载时的元数据（未注册时为null）
+        private final Map<String, EntityMetadata> entities;
+        private final RegistryEdmProvider edmProvider;
+        private final ServiceMetadata serviceMetadata;
+
+        private AppMetadata(Map<String, EntityMetadata> entities, RegistryEdmProvider edmProvider,
+                            ServiceMetadata serviceMetadata) {
+            this.entities = entities;
+            this.edmProvider = edmProvider;
+            this.serviceMetadata = serviceMetadata;
+        }
+
+        RegistryEdmProvider getEdmProvider() {
+            return edmProvider;
+        }
+
+        ServiceMetadata getServiceMetadata() {
+            return serviceMetadata;
+        }
+    }
+
+    public ServiceMetadataCache(ApplicationService applicationService, EntityRegistryService entityRegistryService) {
+        this.applicationService = applicationService;
+        this.entityRegistryService = entityRegistryService;
+    }
+
+    /**
+     * 获取应用的服务元数据
+     * @return 应用不存在时返回null
+     */
+    AppMetadata get(String appCode) {
+        AppMetadata cached = entries.get(appCode);
+        if (cached != null && isCurrent(cached)) {
+            return cached;
+        }
+
+        long loadGeneration;
+        synchronized (this) {
+            loadGeneration = generation;
+        }
+        AppMetadata loaded = load(appCode);
+        if (loaded != null) {
+            synchronized (this) {
+                if (generation == loadGeneration) {
+                    entries.put(appCode, loaded);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    @EventListener
+    public void onApplicationChanged(ApplicationChangedEvent event) {
+        synchronized (this) {
+            generation++;
+            entries.clear();
+        }
+    }
+
+    /**
+     * 应用下各实体的元数据仍是加载时的实例
+     */
+    private boolean isCurrent(AppMetadata cached) {
+        for (Map.Entry<String, EntityMetadata> entity : cached.entities.entrySet()) {
+            if (entityRegistryService.getEntityMetadata(entity.getKey()) != entity.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private AppMetadata load(String appCode) {
+        if (applicationService.getApplicationByCode(appCode).isEmpty()) {
+            return null;
+        }
+
+        Map<String, EntityMetadata> entities = new LinkedHashMap<>();
+        List<EntityMetadata> registered = new ArrayList<>();
+        for (ApplicationEntity appEntity : applicationService.getApplicationEntitiesByCode(appCode)) {
+            EntityMetadata metadata = entityRegistryService.getEntityMetadata(appEntity.getEntityName());
+            entities.put(appEntity.getEntityName(), metadata);
+            if (metadata != null) {
+                registered.add(metadata);
+            }
+        }
+
+        RegistryEdmProvider edmProvider = new RegistryEdmProvider(appCode, registered);
+        ServiceMetadata serviceMetadata = OData.newInstance().createServiceMetadata(edmProvider, new ArrayList<>());
+        log.debug("Built service metadata for application {} ({} entity sets)", appCode, registered.size());
+        return new AppMetadata(entities, edmProvider, serviceMetadata);
+    }
+}
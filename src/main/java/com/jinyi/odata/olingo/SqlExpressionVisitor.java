@@ -0,0 +1,230 @@
+package com.jinyi.odata.olingo;
+
+import com.jinyi.odata.core.EntityMetadata;
+import com.jinyi.odata.core.PropertyMetadata;
+import org.apache.olingo.commons.api.edm.EdmEnumType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.EdmType;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourcePrimitiveProperty;
+import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitor;
+import org.apache.olingo.server.api.uri.queryoption.expression.Literal;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.UnaryOperatorKind;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 将Olingo解析后的$filter/$orderby表达式翻译为SQL片段
+ * 字面量全部以参数形式绑定，参数顺序与SQL中占位符顺序一致
+ */
+public class SqlExpressionVisitor implements ExpressionVisitor<String> {
+
+    private static final String NULL = "NULL";
+
+    private final EntityMetadata entityMetadata;
+    private final List<Object> parameters;
+
+    public SqlExpressionVisitor(EntityMetadata entityMetadata, List<Object> parameters) {
+        this.entityMetadata = entityMetadata;
+        this.parameters = parameters;
+    }
+
+    @Override
+    public String visitBinaryOperator(BinaryOperatorKind operator, String left, String right)
+            throws ExpressionVisitException, ODataApplicationException {
+        switch (operator) {
+            case AND:
+                return "(" + left + " AND " + right + ")";
+            case OR:
+                return "(" + left + " OR " + right + ")";
+            case EQ:
+                return NULL.equals(right) ? left + " IS NULL" : left + " = " + right;
+            case NE:
+                return NULL.equals(right) ? left + " IS NOT NULL" : left + " <> " + right;
+            case GT:
+                return left + " > " + right;
+            case GE:
+                return left + " >= " + right;
+            case LT:
+                return left + " < " + right;
+            case LE:
+                return left + " <= " + right;
+            case ADD:
+                return "(" + left + " + " + right + ")";
+            case SUB:
+                return "(" + left + " - " + right + ")";
+            case MUL:
+                return "(" + left + " * " + right + ")";
+            case DIV:
+                return "(" + left + " / " + right + ")";
+            case MOD:
+                return "MOD(" + left + ", " + right + ")";
+            default:
+                throw notImplemented("Binary operator not supported: " + operator);
+        }
+    }
+
+    @Override
+    public String visitBinaryOperator(BinaryOperatorKind operator, String left, List<String> right)
+            throws ExpressionVisitException, ODataApplicationException {
+        if (operator == BinaryOperatorKind.IN) {
+            return left + " IN (" + String.join(", ", right) + ")";
+        }
+        throw notImplemented("Binary operator not supported: " + operator);
+    }
+
+    @Override
+    public String visitUnaryOperator(UnaryOperatorKind operator, String operand)
+            throws ExpressionVisitException, ODataApplicationException {
+        switch (operator) {
+            case NOT:
+                return "NOT (" + operand + ")";
+            case MINUS:
+                return "-(" + operand + ")";
+            default:
+                throw notImplemented("Unary operator not supported: " + operator);
+        }
+    }
+
+    @Override
+    public String visitMethodCall(MethodKind methodCall, List<String> args)
+            throws ExpressionVisitException, ODataApplicationException {
+        switch (methodCall) {
+            case CONTAINS:
+                return args.get(0) + " LIKE CONCAT('%', " + args.get(1) + ", '%')";
+            case STARTSWITH:
+                return args.get(0) + " LIKE CONCAT(" + args.get(1) + ", '%')";
+            case ENDSWITH:
+                return args.get(0) + " LIKE CONCAT('%', " + args.get(1) + ")";
+            case TOLOWER:
+                return "LOWER(" + args.get(0) + ")";
+            case TOUPPER:
+                return "UPPER(" + args.get(0) + ")";
+            case TRIM:
+                return "TRIM(" + args.get(0) + ")";
+            case LENGTH:
+                return "CHAR_LENGTH(" + args.get(0) + ")";
+            case INDEXOF:
+                return "(INSTR(" + args.get(0) + ", " + args.get(1) + ") - 1)";
+            case SUBSTRING:
+                return args.size() > 2
+                        ? "SUBSTRING(" + args.get(0) + ", " + args.get(1) + " + 1, " + args.get(2) + ")"
+                        : "SUBSTRING(" + args.get(0) + ", " + args.get(1) + " + 1)";
+            case CONCAT:
+                return "CONCAT(" + String.join(", ", args) + ")";
+            case YEAR:
+            case MONTH:
+            case DAY:
+            case HOUR:
+            case MINUTE:
+            case SECOND:
+                return methodCall.name() + "(" + args.get(0) + ")";
+            case ROUND:
+                return "ROUND(" + args.get(0) + ")";
+            case FLOOR:
+                return "FLOOR(" + args.get(0) + ")";
+            case CEILING:
+                return "CEILING(" + args.get(0) + ")";
+            default:
+                throw notImplemented("Method not supported: " + methodCall);
+        }
+    }
+
+    @Override
+    public String visitLiteral(Literal literal) throws ExpressionVisitException, ODataApplicationException {
+        EdmType type = literal.getType();
+        if (type == null || NULL.equalsIgnoreCase(literal.getText())) {
+            return NULL;
+        }
+        if (!(type instanceof EdmPrimitiveType)) {
+            throw notImplemented("Literal type not supported: " + type.getName());
+        }
+
+        EdmPrimitiveType primitiveType = (EdmPrimitiveType) type;
+        try {
+            String value = primitiveType.fromUriLiteral(literal.getText());
+            parameters.add(primitiveType.valueOfString(value, null, null, null, null, true, toJdbcType(primitiveType)));
+            return "?";
+        } catch (EdmPrimitiveTypeException e) {
+            throw new ODataApplicationException("Invalid literal: " + literal.getText(),
+                    HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ROOT, e);
+        }
+    }
+
+    @Override
+    public String visitMember(Member member) throws ExpressionVisitException, ODataApplicationException {
+        List<UriResource> parts = member.getResourcePath().getUriResourceParts();
+        if (parts.size() != 1 || !(parts.get(0) instanceof UriResourcePrimitiveProperty)) {
+            throw notImplemented("Only primitive properties are supported in expressions");
+        }
+
+        String propertyName = ((UriResourcePrimitiveProperty) parts.get(0)).getProperty().getName();
+        return toColumn(propertyName);
+    }
+
+    /**
+     * 属性名转为列名
+     */
+    public String toColumn(String propertyName) throws ODataApplicationException {
+        PropertyMetadata property = entityMetadata.getProperty(propertyName);
+        if (property == null) {
+            throw new ODataApplicationException("Unknown property: " + propertyName,
+                    HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ROOT);
+        }
+        return property.getColumnName();
+    }
+
+    @Override
+    public String visitAlias(String aliasName) throws ExpressionVisitException, ODataApplicationException {
+        throw notImplemented("Aliases are not supported");
+    }
+
+    @Override
+    public String visitTypeLiteral(EdmType type) throws ExpressionVisitException, ODataApplicationException {
+        throw notImplemented("Type literals are not supported");
+    }
+
+    @Override
+    public String visitLambdaReference(String variableName) throws ExpressionVisitException, ODataApplicationException {
+        throw notImplemented("Lambda expressions are not supported");
+    }
+
+    @Override
+    public String visitLambdaExpression(String lambdaFunction, String lambdaVariable, Expression expression)
+            throws ExpressionVisitException, ODataApplicationException {
+        throw notImplemented("Lambda expressions are not supported");
+    }
+
+    @Override
+    public String visitEnum(EdmEnumType type, List<String> enumValues)
+            throws ExpressionVisitException, ODataApplicationException {
+        throw notImplemented("Enum values are not supported: " + String.join(",", enumValues));
+    }
+
+    /**
+     * 字面量绑定到JDBC时使用的Java类型
+     */
+    private Class<?> toJdbcType(EdmPrimitiveType type) {
+        if (EdmPrimitiveTypeKind.DateTimeOffset.getFullQualifiedName().equals(type.getFullQualifiedName())) {
+            return Timestamp.class;
+        } else if (EdmPrimitiveTypeKind.Date.getFullQualifiedName().equals(type.getFullQualifiedName())) {
+            return java.sql.Date.class;
+        }
+        return type.getDefaultType();
+    }
+
+    private ODataApplicationException notImplemented(String message) {
+        return new ODataApplicationException(message, HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ROOT);
+    }
+}
@@ -0,0 +1,223 @@
+package com.jinyi.odata.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 自适应并发限制器（Gradient算法）
+ * 以长期平均延迟为基线，短期延迟升高时按梯度收缩并发上限，延迟平稳时逐步放大；查询失败按比例回退。
+ * 超出上限的请求短暂排队，等待超时或排队已满则拒绝
+ */
+@Component
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${odata.concurrency.enabled:true}")
+    private boolean enabled;
+
+    @Value("${odata.concurrency.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${odata.concurrency.min-limit:2}")
+    private int minLimit;
+
+    @Value("${odata.concurrency.max-limit:200}")
+    private int maxLimit;
+
+    @Value("${odata.concurrency.queue-timeout:50}")
+    private long queueTimeoutMillis;
+
+    @Value("${odata.concurrency.max-queue:100}")
+    private int maxQueue;
+
+    @Value("${odata.concurrency.tolerance:2.0}")
+    private double tolerance;
+
+    @Value("${odata.concurrency.smoothing:0.2}")
+    private double smoothing;
+
+    @Value("${odata.concurrency.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private volatile int limit;
+    // 以下状态只在 synchronized(this) 中更新
+    private double estimatedLimit;
+    private double longRttNanos;
+    private double shortRttNanos;
+
+    private Counter rejected;
+
+    @PostConstruct
+    public void init() {
+        limit = initialLimit;
+        estimatedLimit = initialLimit;
+        Gauge.builder("odata.concurrency.limit", () -> limit).register(meterRegistry);
+        Gauge.builder("odata.concurrency.inflight", inFlight::get).register(meterRegistry);
+        Gauge.builder("odata.concurrency.queued", queued::get).register(meterRegistry);
+        rejected = Counter.builder("odata.concurrency.rejected")
+                .description("Queries shed by the adaptive concurrency limiter")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 在并发限制内执行查询
+     * @throws QueryRejectedException 排队超时或排队已满
+     */
+    public <T> T execute(Supplier<T> query) {
+        return execute(query, true);
+    }
+
+    /**
+     * 在并发限制内执行流式查询，整个读取和写出过程占用许可
+     * 耗时取决于客户端的读取速度，成功时不作为延迟样本；超时、连接异常仍按比例回退
+     * @throws QueryRejectedException 排队超时或排队已满
+     */
+    public <T> T executeStream(Supplier<T> query) {
+        return execute(query, false);
+    }
+
+    private <T> T execute(Supplier<T> query, boolean sampled) {
+        if (!enabled) {
+            return query.get();
+        }
+
+        acquire();
+        long start = System.nanoTime();
+        Boolean overloaded = Boolean.FALSE;
+        try {
+            return query.get();
+        } catch (RuntimeException e) {
+            // 只有超时、连接类异常视为过载信号，SQL错误等不参与调整
+            overloaded = isOverloadSignal(e) ? Boolean.TRUE : null;
+            throw e;
+        } finally {
+            int currentInFlight = inFlight.getAndDecrement();
+            if (overloaded != null && (sampled || overloaded)) {
+                onSample(System.nanoTime() - start, currentInFlight, !overloaded);
+            }
+            if (queued.get() > 0) {
+                lock.lock();
+                try {
+                    released.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private void acquire() {
+        if (tryAcquire()) {
+            return;
+        }
+        if (queued.incrementAndGet() > maxQueue) {
+            queued.decrementAndGet();
+            reject();
+        }
+
+        long remaining = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        lock.lock();
+        try {
+            while (!tryAcquire()) {
+                if (remaining <= 0) {
+                    reject();
+                }
+                remaining = released.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reject();
+        } finally {
+            lock.unlock();
+            queued.decrementAndGet();
+        }
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean isOverloadSignal(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof DataAccessResourceFailureException;
+    }
+
+    private void reject() {
+        rejected.increment();
+        throw new QueryRejectedException("Too many concurrent queries, current limit " + limit);
+    }
+
+    /**
+     * 根据一次查询的延迟更新并发上限
+     */
+    private synchronized void onSample(long rttNanos, int currentInFlight, boolean success) {
+        if (!success) {
+            // 查询失败（超时、连接异常等）视为过载信号，按比例回退
+            estimatedLimit = Math.max(minLimit, estimatedLimit * backoffRatio);
+            limit = (int) estimatedLimit;
+            return;
+        }
+
+        if (longRttNanos == 0) {
+            longRttNanos = rttNanos;
+            shortRttNanos = rttNanos;
+            return;
+        }
+        // 长期基线约覆盖最近几百个样本，短期值反映最近几十个样本
+        longRttNanos += (rttNanos - longRttNanos) / 500.0;
+        shortRttNanos += (rttNanos - shortRttNanos) / 20.0;
+
+        // 基线随短期值下降时同步回落，避免延迟改善后仍按旧基线放大
+        if (shortRttNanos < longRttNanos) {
+            longRttNanos = shortRttNanos;
+        }
+
+        // 负载未达到上限一半时不放大上限，避免空闲时上限无限增长
+        if (currentInFlight < estimatedLimit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRttNanos));
+        double queueAllowance = Math.sqrt(estimatedLimit);
+        double newLimit = estimatedLimit * gradient + queueAllowance;
+        newLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+
+        int rounded = (int) estimatedLimit;
+        if (rounded != limit) {
+            log.debug("Concurrency limit {} -> {} (short rtt {}ms, long rtt {}ms)", limit, rounded,
+                    shortRttNanos / 1_000_000, longRttNanos / 1_000_000);
+            limit = rounded;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.jinyi.odata.ratelimit;
+
+import com.jinyi.business.entity.Application;
+import com.jinyi.business.entity.ApplicationEntity;
+import com.jinyi.business.service.ApplicationChangedEvent;
+import com.jinyi.business.service.ApplicationService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 应用准入控制服务
+ * 按应用（appCode）和实体集维护请求数/返回行数两类令牌桶；限流配置来自 Application / ApplicationEntity 记录，
+ * 首次访问时加载，应用变更后自动失效重载；不存在的应用同样缓存（有上限并按TTL过期），避免每个请求都查询数据库
+ */
+@Service
+@Slf4j
+public class AdmissionControlService {
+
+    @Autowired
+    private ApplicationService applicationService;
+
+    @Value("${odata.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${odata.rate-limit.burst-seconds:1.0}")
+    private double burstSeconds;
+
+    @Value("${odata.rate-limit.unknown-application-ttl:30000}")
+    private long unknownApplicationTtlMillis;
+
+    /** 最多缓存的不存在的appCode数，超出时整体清空 */
+    private static final int MAX_UNKNOWN_APPLICATIONS = 10000;
+
+    /** 不存在的应用：不限制 */
+    private static final ApplicationLimits UNKNOWN = new ApplicationLimits(null, null, Map.of());
+
+    private final Map<String, ApplicationLimits> limitsByAppCode = new ConcurrentHashMap<>();
+
+    /** 不存在的appCode -> 过期时间 */
+    private final Map<String, Long> unknownAppCodes = new ConcurrentHashMap<>();
+
+    /**
+     * 一组限流器，为空表示不限制
+     */
+    private static class Limits {
+        private final GcraRateLimiter requests;
+        private final GcraRateLimiter rows;
+
+        Limits(GcraRateLimiter requests, GcraRateLimiter rows) {
+            this.requests = requests;
+            this.rows = rows;
+        }
+    }
+
+    private static class ApplicationLimits {
+        private final Long applicationId;
+        private final Limits application;
+        private final Map<String, Limits> entitySets;
+
+        ApplicationLimits(Long applicationId, Limits application, Map<String, Limits> entitySets) {
+            this.applicationId = applicationId;
+            this.application = application;
+            this.entitySets = entitySets;
+        }
+    }
+
+    /**
+     * 准入检查
+     * @return 0表示放行，否则为建议的重试等待纳秒数
+     */
+    public long tryAdmit(String appCode, String entitySet) {
+        if (!enabled) {
+            return 0;
+        }
+        ApplicationLimits limits = getLimits(appCode);
+        if (limits == UNKNOWN) {
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        Limits entityLimits = limits.entitySets.get(entitySet);
+
+        // 行数桶透支时拒绝，直到透支额度恢复
+        long wait = Math.max(overdraft(limits.application, now), overdraft(entityLimits, now));
+        if (wait > 0) {
+            return wait;
+        }
+
+        wait = acquire(entityLimits, now);
+        if (wait > 0) {
+            return wait;
+        }
+        wait = acquire(limits.application, now);
+        if (wait > 0) {
+            // 应用级拒绝时归还实体集令牌，被限流的应用不会耗尽其实体集额度
+            release(entityLimits);
+        }
+        return wait;
+    }
+
+    /**
+     * 记录查询返回的行数
+     */
+    public void recordRows(String appCode, String entitySet, long rows) {
+        if (!enabled || rows <= 0) {
+            return;
+        }
+        ApplicationLimits limits = limitsByAppCode.get(appCode);
+        if (limits == null) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        consumeRows(limits.application, rows, now);
+        consumeRows(limits.entitySets.get(entitySet), rows, now);
+    }
+
+    @EventListener
+    public void onApplicationChanged(ApplicationChangedEvent event) {
+        unknownAppCodes.clear();
+        if (limitsByAppCode.values().removeIf(limits -> Objects.equals(limits.applicationId, event.getApplicationId()))) {
+            log.info("Rate limits of application {} reloaded", event.getApplicationId());
+        }
+    }
+
+    private ApplicationLimits getLimits(String appCode) {
+        ApplicationLimits limits = limitsByAppCode.get(appCode);
+        if (limits != null) {
+            return limits;
+        }
+        Long expiresAt = unknownAppCodes.get(appCode);
+        if (expiresAt != null && expiresAt > System.currentTimeMillis()) {
+            return UNKNOWN;
+        }
+
+        // 不存在的应用返回null，不进入 limitsByAppCode，单独记录
+        limits = limitsByAppCode.computeIfAbsent(appCode, this::loadLimits);
+        if (limits != null) {
+            unknownAppCodes.remove(appCode);
+            return limits;
+        }
+        if (unknownAppCodes.size() >= MAX_UNKNOWN_APPLICATIONS) {
+            unknownAppCodes.clear();
+        }
+        unknownAppCodes.put(appCode, System.currentTimeMillis() + unknownApplicationTtlMillis);
+        return UNKNOWN;
+    }
+
+    private ApplicationLimits loadLimits(String appCode) {
+        Optional<Application> application = applicationService.getApplicationByCode(appCode);
+        if (application.isEmpty()) {
+            return null;
+        }
+
+        Application app = application.get();
+        Map<String, Limits> entitySets = new HashMap<>();
+        for (ApplicationEntity appEntity : applicationService.getApplicationEntitiesByCode(appCode)) {
+            Limits entityLimits = createLimits(appEntity.getRequestsPerSecond(), appEntity.getRowsPerSecond());
+            if (entityLimits != null) {
+                entitySets.put(appEntity.getEntityName(), entityLimits);
+            }
+        }
+        return new ApplicationLimits(app.getId(),
+                createLimits(app.getRequestsPerSecond(), app.getRowsPerSecond()), entitySets);
+    }
+
+    private Limits createLimits(Integer requestsPerSecond, Integer rowsPerSecond) {
+        GcraRateLimiter requests = requestsPerSecond != null && requestsPerSecond > 0
+                ? new GcraRateLimiter(requestsPerSecond, burstSeconds) : null;
+        GcraRateLimiter rows = rowsPerSecond != null && rowsPerSecond > 0
+                ? new GcraRateLimiter(rowsPerSecond, burstSeconds) : null;
+        return requests == null && rows == null ? null : new Limits(requests, rows);
+    }
+
+    private static long overdraft(Limits limits, long now) {
+        return limits != null && limits.rows != null ? limits.rows.overdraftNanos(now) : 0;
+    }
+
+    private static long acquire(Limits limits, long now) {
+        return limits != null && limits.requests != null ? limits.requests.tryAcquire(1, now) : 0;
+    }
+
+    private static void release(Limits limits) {
+        if (limits != null && limits.requests != null) {
+            limits.requests.release(1);
+        }
+    }
+
+    private static void consumeRows(Limits limits, long rows, long now) {
+        if (limits != null && limits.rows != null) {
+            limits.rows.consume(rows, now);
+        }
+    }
+}
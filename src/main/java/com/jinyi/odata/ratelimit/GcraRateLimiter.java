@@ -0,0 +1,74 @@
+package com.jinyi.odata.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶（GCRA算法）
+ * 只维护一个"理论到达时间"（TAT），通过CAS推进，热路径上没有锁和额外分配
+ */
+public class GcraRateLimiter {
+
+    private final long emissionIntervalNanos;
+    private final long burstWindowNanos;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param permitsPerSecond 每秒许可数
+     * @param burstSeconds     允许的突发量（以秒计的许可数）
+     */
+    public GcraRateLimiter(long permitsPerSecond, double burstSeconds) {
+        this.emissionIntervalNanos = Math.max(1L, 1_000_000_000L / permitsPerSecond);
+        this.burstWindowNanos = Math.max(emissionIntervalNanos, (long) (burstSeconds * 1_000_000_000L));
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 尝试获取许可
+     * @return 0表示获取成功，否则为需要等待的纳秒数
+     */
+    public long tryAcquire(long permits, long nowNanos) {
+        long increment = permits * emissionIntervalNanos;
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long base = Math.max(tat, nowNanos);
+            long newTat = base + increment;
+            long waitNanos = newTat - burstWindowNanos - nowNanos;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (theoreticalArrival.compareAndSet(tat, newTat)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 归还已获取的许可（获取后请求未被放行时使用）
+     */
+    public void release(long permits) {
+        theoreticalArrival.addAndGet(-permits * emissionIntervalNanos);
+    }
+
+    /**
+     * 无条件扣减许可（允许透支），用于事后才知道用量的场景，如返回行数
+     */
+    public void consume(long permits, long nowNanos) {
+        long increment = permits * emissionIntervalNanos;
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long newTat = Math.max(tat, nowNanos) + increment;
+            if (theoreticalArrival.compareAndSet(tat, newTat)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 当前是否已透支
+     * @return 0表示未透支，否则为恢复所需的纳秒数
+     */
+    public long overdraftNanos(long nowNanos) {
+        long wait = theoreticalArrival.get() - burstWindowNanos - nowNanos;
+        return Math.max(0, wait);
+    }
+}
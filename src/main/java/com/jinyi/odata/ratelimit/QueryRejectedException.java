@@ -0,0 +1,11 @@
+package com.jinyi.odata.ratelimit;
+
+/**
+ * 查询被并发限制器拒绝
+ */
+public class QueryRejectedException extends RuntimeException {
+
+    public QueryRejectedException(String message) {
+        super(message);
+    }
+}
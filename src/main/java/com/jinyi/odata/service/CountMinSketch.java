@@ -0,0 +1,90 @@
+package com.jinyi.odata.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min sketch
+ * depth 行 × width 列的计数器，每行用不同的哈希选一列；估计值为各行计数的最小值，只会高估、不会低估。
+ * 内存固定，计数器无锁更新；{@link #decay()} 将全部计数减半，使估计值偏向近期
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final AtomicLongArray counters;
+
+    public CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("Sketch depth and width must be positive");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new AtomicLongArray(depth * width);
+    }
+
+    /**
+     * 计数加一并返回加一后的估计值
+     */
+    public long add(String item) {
+        long hash = hash(item);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            // 由两个哈希值组合出各行的哈希（Kirsch-Mitzenmacher）
+            int column = Math.floorMod(h1 + row * h2, width);
+            estimate = Math.min(estimate, counters.incrementAndGet(row * width + column));
+        }
+        return estimate;
+    }
+
+    /**
+     * 估计计数
+     */
+    public long estimate(String item) {
+        long hash = hash(item);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int column = Math.floorMod(h1 + row * h2, width);
+            estimate = Math.min(estimate, counters.get(row * width + column));
+        }
+        return estimate;
+    }
+
+    /**
+     * 全部计数减半
+     */
+    public void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.updateAndGet(i, count -> count >>> 1);
+        }
+    }
+
+    /**
+     * 清零
+     */
+    public void clear() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    /**
+     * 按字符的 64 位 FNV-1a 哈希，再做一次 64 位混合（murmur3 fmix64）使高低 32 位都均匀
+     */
+    private static long hash(String item) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < item.length(); i++) {
+            hash ^= item.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
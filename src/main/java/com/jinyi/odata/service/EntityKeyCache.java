@@ -0,0 +1,184 @@
+package com.jinyi.odata.service;
+
+import com.jinyi.business.service.ApplicationChangedEvent;
+import com.jinyi.odata.core.EntityRegistryService;
+import com.jinyi.odata.jfr.CacheLookupEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 单实体按键缓存
+ * 每个实体集一个有界LRU缓存，条目按TTL过期；本服务内的写入（应用配置变更、动态实体结构变更/注销）使对应实体集的缓存失效。
+ * 失效时递增版本号，失效前开始的查询结果不会再写入缓存
+ */
+@Service
+@Slf4j
+@EnableConfigurationProperties(KeyCacheProperties.class)
+public class EntityKeyCache {
+
+    /** ApplicationService 写入的表 */
+    private static final List<String> APPLICATION_TABLES = List.of("applications", "application_entities");
+
+    @Autowired
+    private KeyCacheProperties properties;
+
+    @Autowired
+    private EntityRegistryService entityRegistryService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        final Map<String, Object> row;
+        final long expiresAt;
+
+        Entry(Map<String, Object> row, long expiresAt) {
+            this.row = row;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Cache {
+        final long ttlMillis;
+        final LinkedHashMap<List<Object>, Entry> entries;
+        final Counter hits;
+        final Counter misses;
+        long generation;
+
+        Cache(String entityName, int maxEntries, long ttlMillis, MeterRegistry meterRegistry) {
+            this.ttlMillis = ttlMillis;
+            this.hits = counter(meterRegistry, entityName, "hit");
+            this.misses = counter(meterRegistry, entityName, "miss");
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, Entry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        private static Counter counter(MeterRegistry meterRegistry, String entityName, String result) {
+            return Counter.builder("odata.key-cache.requests")
+                    .tag("entity", entityName)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 查询缓存，未启用、未命中或已过期时返回null
+     */
+    public Map<String, Object> get(String entityName, List<Object> key) {
+        Cache cache = getCache(entityName);
+        if (cache == null) {
+            return null;
+        }
+
+        CacheLookupEvent event = new CacheLookupEvent();
+        event.begin();
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.entries.get(key);
+            if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+                cache.entries.remove(key);
+                entry = null;
+            }
+        }
+        (entry != null ? cache.hits : cache.misses).increment();
+        if (event.shouldCommit()) {
+            event.setCache("key:" + entityName);
+            event.setResult(entry != null ? "hit" : "miss");
+            event.commit();
+        }
+        return entry != null ? entry.row : null;
+    }
+
+    /**
+     * 当前缓存版本，查询数据库前获取，写入缓存时校验
+     */
+    public long generation(String entityName) {
+        Cache cache = getCache(entityName);
+        if (cache == null) {
+            return 0;
+        }
+        synchronized (cache) {
+            return cache.generation;
+        }
+    }
+
+    /**
+     * 写入缓存，期间缓存已失效时丢弃
+     */
+    public void put(String entityName, List<Object> key, Map<String, Object> row, long generation) {
+        Cache cache = getCache(entityName);
+        if (cache == null) {
+            return;
+        }
+        synchronized (cache) {
+            if (cache.generation == generation) {
+                cache.entries.put(key, new Entry(row, System.currentTimeMillis() + cache.ttlMillis));
+            }
+        }
+    }
+
+    /**
+     * 清空实体集的缓存
+     */
+    public void invalidate(String entityName) {
+        Cache cache = caches.get(entityName);
+        if (cache == null) {
+            return;
+        }
+        synchronized (cache) {
+            cache.entries.clear();
+            cache.generation++;
+        }
+        log.debug("Key cache of {} invalidated", entityName);
+    }
+
+    /**
+     * 清空映射到指定表的所有实体集的缓存
+     */
+    public void invalidateTable(String tableName) {
+        for (String entityName : caches.keySet()) {
+            if (tableName.equalsIgnoreCase(entityRegistryService.getTableName(entityName))) {
+                invalidate(entityName);
+            }
+        }
+    }
+
+    @EventListener
+    public void onApplicationChanged(ApplicationChangedEvent event) {
+        APPLICATION_TABLES.forEach(this::invalidateTable);
+    }
+
+    private Cache getCache(String entityName) {
+        Cache cache = caches.get(entityName);
+        if (cache != null) {
+            return cache;
+        }
+
+        KeyCacheProperties.EntityCache settings = properties.getEntities().get(entityName);
+        boolean enabled = settings != null && settings.getEnabled() != null
+                ? settings.getEnabled() : properties.isEnabled();
+        if (!enabled) {
+            return null;
+        }
+        int maxEntries = settings != null && settings.getMaxEntries() != null
+                ? settings.getMaxEntries() : properties.getMaxEntries();
+        long ttl = settings != null && settings.getTtl() != null ? settings.getTtl() : properties.getTtl();
+        return caches.computeIfAbsent(entityName, name -> new Cache(name, maxEntries, ttl, meterRegistry));
+    }
+}
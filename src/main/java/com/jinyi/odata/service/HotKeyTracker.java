@@ -0,0 +1,213 @@
+package com.jinyi.odata.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 热点键检测
+ * 单个实体查询的键和 $filter 等值条件的字面量计入 Count-Min sketch，估计值进入前K名的条目保存在各自的候选表中。
+ * 定期将全部计数减半（时间衰减），排名反映近期的访问频率。内存固定：sketch 大小、候选数和字面量长度都有上限
+ */
+@Service
+@Slf4j
+public class HotKeyTracker {
+
+    /** 记录的字面量最大长度，超出部分截断 */
+    private static final int MAX_VALUE_LENGTH = 200;
+
+    public enum Kind {
+        KEY, FILTER
+    }
+
+    @Value("${odata.hot-keys.enabled:true}")
+    private boolean enabled;
+
+    @Value("${odata.hot-keys.depth:4}")
+    private int depth;
+
+    @Value("${odata.hot-keys.width:2048}")
+    private int width;
+
+    @Value("${odata.hot-keys.top-k:50}")
+    private int topK;
+
+    private CountMinSketch sketch;
+
+    private final Map<Kind, TopK> tops = new HashMap<>();
+
+    /**
+     * 一类条目的前K名候选，minCount 为候选表满时的最小计数，低于它的条目不加锁直接跳过
+     */
+    private static final class TopK {
+        final Map<String, Candidate> candidates = new HashMap<>();
+        volatile long minCount;
+    }
+
+    private static final class Candidate {
+        final String appCode;
+        final String entity;
+        final String value;
+        long count;
+
+        Candidate(String appCode, String entity, String value) {
+            this.appCode = appCode;
+            this.entity = entity;
+            this.value = value;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        sketch = new CountMinSketch(depth, width);
+        for (Kind kind : Kind.values()) {
+            tops.put(kind, new TopK());
+        }
+    }
+
+    /**
+     * 记录单个实体查询的键
+     * @param appCode 应用编码，全局服务为null
+     */
+    public void recordKey(String appCode, String entitySet, String key) {
+        if (enabled && key != null) {
+            record(Kind.KEY, appCode, entitySet, key.trim());
+        }
+    }
+
+    /**
+     * 记录 $filter 中的等值条件（{@code 属性 eq 字面量}，多个条件以 and 连接）
+     */
+    public void recordFilter(String appCode, String entitySet, String filter) {
+        if (!enabled || !StringUtils.hasText(filter)) {
+            return;
+        }
+        for (String condition : filter.split(" and ")) {
+            int eq = condition.indexOf(" eq ");
+            if (eq > 0) {
+                record(Kind.FILTER, appCode, entitySet,
+                        condition.substring(0, eq).trim() + " eq " + condition.substring(eq + 4).trim());
+            }
+        }
+    }
+
+    /**
+     * 按估计次数降序返回前N个条目
+     */
+    public List<Map<String, Object>> top(Kind kind, int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        TopK top = tops.get(kind);
+        synchronized (top) {
+            top.candidates.values().stream()
+                    .sorted(Comparator.comparingLong((Candidate candidate) -> candidate.count).reversed())
+                    .limit(limit)
+                    .forEach(candidate -> {
+                        Map<String, Object> item = new LinkedHashMap<>();
+                        item.put("appCode", candidate.appCode);
+                        item.put("entity", candidate.entity);
+                        item.put("value", candidate.value);
+                        item.put("estimatedCount", candidate.count);
+                        result.add(item);
+                    });
+        }
+        return result;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 时间衰减：sketch 和候选的计数减半，计数归零的候选移除
+     */
+    @Scheduled(fixedDelayString = "${odata.hot-keys.decay-interval:60000}")
+    public void decay() {
+        if (!enabled) {
+            return;
+        }
+        sketch.decay();
+        for (TopK top : tops.values()) {
+            synchronized (top) {
+                top.candidates.values().removeIf(candidate -> (candidate.count >>>= 1) == 0);
+                updateMinCount(top);
+            }
+        }
+    }
+
+    /**
+     * 清空全部计数
+     */
+    public void reset() {
+        sketch.clear();
+        for (TopK top : tops.values()) {
+            synchronized (top) {
+                top.candidates.clear();
+                top.minCount = 0;
+            }
+        }
+        log.info("Hot key statistics reset");
+    }
+
+    private void record(Kind kind, String appCode, String entitySet, String value) {
+        if (value.length() > MAX_VALUE_LENGTH) {
+            value = value.substring(0, MAX_VALUE_LENGTH);
+        }
+        String item = kind.name() + '\n' + appCode + '\n' + entitySet + '\n' + value;
+        long estimate = sketch.add(item);
+
+        TopK top = tops.get(kind);
+        if (estimate <= top.minCount) {
+            return;
+        }
+        synchronized (top) {
+            Candidate candidate = top.candidates.get(item);
+            if (candidate == null) {
+                if (top.candidates.size() >= topK) {
+                    // 替换计数最小的候选
+                    String smallest = null;
+                    long smallestCount = Long.MAX_VALUE;
+                    for (Map.Entry<String, Candidate> entry : top.candidates.entrySet()) {
+                        if (entry.getValue().count < smallestCount) {
+                            smallest = entry.getKey();
+                            smallestCount = entry.getValue().count;
+                        }
+                    }
+                    if (smallestCount >= estimate) {
+                        return;
+                    }
+                    top.candidates.remove(smallest);
+                }
+                candidate = new Candidate(appCode, entitySet, value);
+                top.candidates.put(item, candidate);
+            }
+            long previous = candidate.count;
+            candidate.count = Math.max(previous, estimate);
+            if (previous <= top.minCount) {
+                // 新加入的或原先计数最小的候选变化时才需要重新计算最小值
+                updateMinCount(top);
+            }
+        }
+    }
+
+    private void updateMinCount(TopK top) {
+        if (top.candidates.size() < topK) {
+            top.minCount = 0;
+            return;
+        }
+        long min = Long.MAX_VALUE;
+        for (Candidate candidate : top.candidates.values()) {
+            min = Math.min(min, candidate.count);
+        }
+        top.minCount = min;
+    }
+}
@@ -0,0 +1,34 @@
+package com.jinyi.odata.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 单实体按键缓存配置
+ */
+@Data
+@ConfigurationProperties(prefix = "odata.key-cache")
+public class KeyCacheProperties {
+
+    /** 默认是否启用 */
+    private boolean enabled = false;
+
+    /** 每个实体集最多缓存的实体数 */
+    private int maxEntries = 1000;
+
+    /** 缓存时间（毫秒），绕过本服务的写入最多在该时间后可见 */
+    private long ttl = 30000;
+
+    /** 按实体集覆盖的配置，未设置的项使用默认值 */
+    private Map<String, EntityCache> entities = new HashMap<>();
+
+    @Data
+    public static class EntityCache {
+        private Boolean enabled;
+        private Integer maxEntries;
+        private Long ttl;
+    }
+}
@@ -0,0 +1,134 @@
+package com.jinyi.odata.service;
+
+import com.jinyi.odata.core.EntityMetadata;
+import com.jinyi.odata.core.PropertyMetadata;
+import com.jinyi.odata.olingo.RegistryEdmProvider;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.core.edm.primitivetype.EdmPrimitiveTypeFactory;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * OData字面量编解码
+ * 按属性的Java类型（注解实体取字段类型，动态实体由 FieldDefinition.dataType 决定）把URI字面量解析为JDBC参数，
+ * 数值、日期等列不再与字符串比较；无法解析的字面量在访问数据库之前拒绝
+ */
+public final class ODataLiteralCodec {
+
+    private static final String NULL = "null";
+
+    /** 复合键中的 name=value 片段 */
+    private static final Pattern NAMED_KEY = Pattern.compile("\\s*([A-Za-z_][A-Za-z0-9_]*)\\s*=(.*)", Pattern.DOTALL);
+
+    private ODataLiteralCodec() {
+    }
+
+    /**
+     * 是否为 null 字面量
+     */
+    public static boolean isNull(String literal) {
+        return NULL.equals(literal.trim());
+    }
+
+    /**
+     * 解析字面量
+     * 字符串属性兼容未加引号的写法，其他类型按对应的EDM类型严格解析（Edm.Int64、Edm.Decimal、Edm.DateTimeOffset、Edm.Boolean等）
+     * @throws RuntimeException 字面量与属性类型不符
+     */
+    public static Object parse(PropertyMetadata property, String literal) {
+        String text = literal.trim();
+        EdmPrimitiveTypeKind kind = RegistryEdmProvider.toEdmType(property.getJavaType());
+        EdmPrimitiveType type = EdmPrimitiveTypeFactory.getInstance(kind);
+        try {
+            String value = kind == EdmPrimitiveTypeKind.String && !text.startsWith("'")
+                    ? text : type.fromUriLiteral(text);
+            return type.valueOfString(value, null, null, null, null, true, toJdbcType(kind, type));
+        } catch (EdmPrimitiveTypeException e) {
+            throw new RuntimeException("Invalid " + kind.getFullQualifiedName() + " literal for property "
+                    + property.getName() + ": " + literal);
+        }
+    }
+
+    /**
+     * 解析键谓词（括号内的部分）：单一键可直接写值，如 {@code 5}；复合键写作 {@code k1=5,k2='a'}
+     * @return 按实体键属性顺序排列的键值
+     * @throws RuntimeException 实体没有键、键属性缺失/重复/未知，或字面量与类型不符
+     */
+    public static List<Object> parseKeyPredicate(EntityMetadata metadata, String predicate) {
+        List<PropertyMetadata> keyProperties = metadata.getKeyProperties();
+        if (keyProperties.isEmpty()) {
+            throw new RuntimeException("Entity has no key: " + metadata.getEntityName());
+        }
+
+        List<String> segments = splitKeySegments(predicate);
+        Map<PropertyMetadata, String> literals = new HashMap<>();
+        if (segments.size() == 1 && keyProperties.size() == 1 && !NAMED_KEY.matcher(segments.get(0)).matches()) {
+            literals.put(keyProperties.get(0), segments.get(0));
+        } else {
+            for (String segment : segments) {
+                Matcher matcher = NAMED_KEY.matcher(segment);
+                if (!matcher.matches()) {
+                    throw new RuntimeException("Invalid key predicate: " + predicate);
+                }
+                PropertyMetadata property = metadata.resolveProperty(matcher.group(1));
+                if (property == null || !property.isKey()) {
+                    throw new RuntimeException("Unknown key property: " + matcher.group(1));
+                }
+                if (literals.put(property, matcher.group(2)) != null) {
+                    throw new RuntimeException("Duplicate key property: " + matcher.group(1));
+                }
+            }
+        }
+
+        List<Object> key = new ArrayList<>(keyProperties.size());
+        for (PropertyMetadata property : keyProperties) {
+            String literal = literals.get(property);
+            if (literal == null) {
+                throw new RuntimeException("Missing key property: " + property.getName());
+            }
+            if (isNull(literal)) {
+                throw new RuntimeException("Key property cannot be null: " + property.getName());
+            }
+            key.add(parse(property, literal));
+        }
+        return key;
+    }
+
+    /**
+     * 按引号外的逗号拆分键谓词（字符串中的单引号以两个单引号转义）
+     */
+    private static List<String> splitKeySegments(String predicate) {
+        List<String> segments = new ArrayList<>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < predicate.length(); i++) {
+            char c = predicate.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                segments.add(predicate.substring(start, i));
+                start = i + 1;
+            }
+        }
+        segments.add(predicate.substring(start));
+        return segments;
+    }
+
+    /**
+     * 字面量绑定到JDBC时使用的Java类型，与 SqlExpressionVisitor 一致
+     */
+    private static Class<?> toJdbcType(EdmPrimitiveTypeKind kind, EdmPrimitiveType type) {
+        if (kind == EdmPrimitiveTypeKind.DateTimeOffset) {
+            return Timestamp.class;
+        }
+        return type.getDefaultType();
+    }
+}
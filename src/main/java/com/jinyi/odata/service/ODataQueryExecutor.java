@@ -0,0 +1,159 @@
+package com.jinyi.odata.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * OData查询执行器
+ * 异步模式下把数据库查询从Servlet线程移到有界线程池执行，线程数默认与连接池大小一致；
+ * 队列深度、排队等待时间、执行时间和拒绝次数通过Micrometer暴露
+ */
+@Component
+@Slf4j
+public class ODataQueryExecutor {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${odata.async.enabled:false}")
+    private boolean enabled;
+
+    @Value("${odata.async.pool-size:0}")
+    private int poolSize;
+
+    @Value("${odata.async.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${odata.async.timeout:30000}")
+    private long timeout;
+
+    private ThreadPoolExecutor threadPool;
+    private ExecutorService executor;
+    private Counter rejected;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+
+        int threads = poolSize > 0 ? poolSize : connectionPoolSize();
+        AtomicInteger threadNumber = new AtomicInteger();
+        threadPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "odata-query-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // executor.queued / executor.active / executor.idle（排队等待）/ executor（执行）
+        executor = ExecutorServiceMetrics.monitor(meterRegistry, threadPool, "odata.query", Collections.emptyList());
+        rejected = Counter.builder("odata.query.rejected")
+                .description("Queries rejected because the query executor queue is full")
+                .register(meterRegistry);
+        log.info("OData async query executor started: {} threads, queue capacity {}", threads, queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 执行查询任务
+     * 未启用异步模式时在当前线程执行；队列已满或超时时返回 unavailable 的结果
+     */
+    public <T> DeferredResult<T> execute(Supplier<T> task, Supplier<T> unavailable) {
+        return execute(task, unavailable, null);
+    }
+
+    /**
+     * 执行查询任务，等待超时或客户端断开时取消上下文中正在执行的语句
+     */
+    public <T> DeferredResult<T> execute(Supplier<T> task, Supplier<T> unavailable, QueryContext context) {
+        if (!enabled) {
+            return completed(task.get());
+        }
+
+        DeferredResult<T> result = new DeferredResult<>(timeout);
+        Future<?> future;
+        try {
+            future = executor.submit(() -> {
+                try {
+                    result.setResult(task.get());
+                } catch (Exception e) {
+                    result.setErrorResult(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.setResult(unavailable.get());
+            return result;
+        }
+
+        result.onTimeout(() -> {
+            // 尚未开始执行的任务直接取消，不再占用连接；已在执行的语句由上下文取消
+            future.cancel(false);
+            if (context != null) {
+                context.cancel();
+            }
+            result.setResult(unavailable.get());
+        });
+        result.onError(error -> {
+            // 客户端断开等异步错误
+            future.cancel(false);
+            if (context != null) {
+                context.cancel();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 已完成的结果，用于无需执行查询即可应答的请求（如被限流）
+     */
+    public <T> DeferredResult<T> completed(T value) {
+        DeferredResult<T> result = new DeferredResult<>();
+        result.setResult(value);
+        return result;
+    }
+
+    private int connectionPoolSize() {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+            }
+        } catch (Exception e) {
+            log.debug("Unable to determine connection pool size: {}", e.getMessage());
+        }
+        return 10;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (threadPool != null) {
+            threadPool.shutdown();
+        }
+    }
+}
@@ -1,21 +1,35 @@
 package com.jinyi.odata.service;
 
 import com.jinyi.odata.annotation.ODataField;
+import com.jinyi.odata.core.EntityMetadata;
 import com.jinyi.odata.core.EntityRegistryService;
+import com.jinyi.odata.core.EntityRowCodec;
+import com.jinyi.odata.core.PropertyMetadata;
+import com.jinyi.odata.datasource.DataSourceRouting;
+import com.jinyi.odata.dynamic.DynamicEntityRegistrationService;
+import com.jinyi.odata.dynamic.DynamicRowCodec;
+import com.jinyi.odata.ratelimit.AdaptiveConcurrencyLimiter;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * OData查询服务
@@ -23,14 +37,38 @@ import java.util.*;
  */
 @Service
 @Slf4j
+@EnableConfigurationProperties(QueryTimeoutProperties.class)
 public class ODataQueryService {
 
+    private static final RowMapper<Map<String, Object>> MAP_ROW_MAPPER = new MapRowMapper();
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
     private EntityRegistryService entityRegistryService;
 
+    @Autowired
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private QueryCostGuard queryCostGuard;
+
+    @Autowired
+    private QueryTimeoutProperties timeoutProperties;
+
+    @Autowired
+    private EntityKeyCache keyCache;
+
+    @Autowired
+    private QueryCoalescer queryCoalescer;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private QueryShapeStats queryShapeStats;
+
     /**
      * 查询结果封装类
      */
@@ -39,12 +77,278 @@ public class ODataQueryService {
         private List<Map<String, Object>> data;
         private long count;
         private boolean hasMore;
+        /** 共用该结果的请求数（查询合并），大于1时结果只读 */
+        private int sharedBy = 1;
+        /** 是否来自结果缓存（被后续请求共用，只读） */
+        private boolean cached;
+        /** 共用结果的序列化缓存，key为输出格式和响应注解 */
+        private final Map<String, byte[]> serializedBodies = new ConcurrentHashMap<>();
+
+        /**
+         * 获取共用结果的序列化字节，同一key只序列化一次
+         */
+        public byte[] getSerializedBody(String key, Supplier<byte[]> serializer) {
+            return serializedBodies.computeIfAbsent(key, k -> serializer.get());
+        }
+    }
+
+    /**
+     * 查询语句封装类
+     */
+    @Data
+    public static class SqlQuery {
+        private String entityName;
+        private String tableName;
+        private String sql;
+        private String selectClause;
+        private String whereClause;
+        private String orderClause;
+        /** 查询形态，用于形态统计 */
+        private String shapeKey;
+        private List<Object> whereParameters;
+        private List<Object> parameters;
+        /** 请求上下文，为空时只使用配置的超时 */
+        private QueryContext context;
     }
 
     /**
      * 查询实体数据
+     * 数据库访问受自适应并发限制，超出限制时抛出 QueryRejectedException
      */
     public QueryResult queryEntities(String entityName, Map<String, String> queryParams) {
+        return queryEntities(entityName, queryParams, null);
+    }
+
+    /**
+     * 查询实体数据，语句超时和取消由请求上下文控制
+     * 相同的查询正在执行时合并为一次数据库访问，结果由所有等待的请求共用；启用结果缓存时先查缓存
+     */
+    public QueryResult queryEntities(String entityName, Map<String, String> queryParams, QueryContext context) {
+        RequestTiming timing = QueryContext.timing(context);
+        long begin = timing.begin();
+        SqlQuery query = buildQuery(entityName, queryParams);
+        query.setContext(context);
+        timing.stop(RequestTiming.Phase.BUILD, begin);
+        boolean withCount = "true".equals(queryParams.get("$count"));
+
+        // 以生成的SQL和参数作为合并键和缓存键，参数顺序不同的相同查询也能合并
+        String queryKey = entityName + '\n' + query.getSql() + '\n' + query.getParameters() + '\n' + withCount;
+        long started = System.nanoTime();
+        QueryResult result = timeDatabase(timing, () -> responseCache.getResult(entityName, queryKey,
+                () -> executeQuery(query, withCount, queryKey),
+                () -> executeQuery(buildQuery(entityName, queryParams), withCount, queryKey)));
+        queryShapeStats.record(query, System.nanoTime() - started, result.getData().size());
+        recordResult(context, query.getSql(), result.getData().size(), result.getSharedBy() > 1);
+        return result;
+    }
+
+    private QueryResult executeQuery(SqlQuery query, boolean withCount, String queryKey) {
+        RowMapper<Map<String, Object>> mapper =
+                rowMapper(query.getEntityName(), QueryContext.timing(query.getContext()));
+        int timeout = getQueryTimeout(query.getEntityName(), query.getContext());
+        return queryCoalescer.execute(queryKey, query.getContext(), timeout, () -> concurrencyLimiter.execute(() -> {
+            queryShapeStats.recordExecution(query);
+
+            // 执行查询（允许路由到从库）
+            List<Map<String, Object>> data = execute(query, () -> jdbcTemplate.query(
+                    statementCreator(query, query.getSql(), query.getParameters(), null), mapper));
+
+            // 获取总数（如果需要）
+            long totalCount = 0;
+            if (withCount) {
+                totalCount = execute(query, () -> getTotalCount(query));
+            }
+
+            QueryResult result = new QueryResult();
+            result.setData(data);
+            result.setCount(totalCount);
+            result.setHasMore(false); // 简化实现
+
+            return result;
+        }));
+    }
+
+    /**
+     * 按键查询单个实体
+     * 使用实体声明的键属性（支持复合键 {@code k1=..,k2=..}）生成主键等值查询，不经过 $filter 解析；启用键缓存时先查缓存
+     * @param keyPredicate URL中括号内的键谓词
+     * @return 实体行，不存在时返回null
+     */
+    public Map<String, Object> findByKey(String entityName, String keyPredicate, QueryContext context) {
+        RequestTiming timing = QueryContext.timing(context);
+        long begin = timing.begin();
+        EntityMetadata metadata = entityRegistryService.getEntityMetadata(entityName);
+        if (metadata == null) {
+            throw new RuntimeException("Entity not found: " + entityName);
+        }
+        List<Object> key = ODataLiteralCodec.parseKeyPredicate(metadata, keyPredicate);
+
+        StringBuilder where = new StringBuilder();
+        List<PropertyMetadata> keyProperties = metadata.getKeyProperties();
+        for (int i = 0; i < keyProperties.size(); i++) {
+            if (i > 0) {
+                where.append(" AND ");
+            }
+            where.append(keyProperties.get(i).getColumnName()).append(" = ?");
+        }
+
+        SqlQuery query = new SqlQuery();
+        query.setEntityName(entityName);
+        query.setTableName(metadata.getTableName());
+        query.setSql("SELECT * FROM " + metadata.getTableName() + " WHERE " + where);
+        query.setSelectClause("*");
+        query.setWhereClause(where.toString());
+        query.setOrderClause("");
+        query.setShapeKey(QueryShapeStats.shapeKey(entityName, "*", query.getWhereClause(), ""));
+        query.setWhereParameters(key);
+        query.setParameters(key);
+        query.setContext(context);
+        // 缓存命中同样记录构建耗时
+        timing.stop(RequestTiming.Phase.BUILD, begin);
+
+        long started = System.nanoTime();
+        Map<String, Object> cached = keyCache.get(entityName, key);
+        if (cached != null) {
+            queryShapeStats.record(query, System.nanoTime() - started, 1);
+            recordResult(context, null, 1, false);
+            return cached;
+        }
+        long generation = keyCache.generation(entityName);
+
+        RowMapper<Map<String, Object>> mapper = rowMapper(entityName, timing);
+        Map<String, Object> row = timeDatabase(timing, () -> concurrencyLimiter.execute(() -> {
+            queryShapeStats.recordExecution(query);
+            return execute(query, () -> jdbcTemplate.query(statementCreator(query, query.getSql(), key, null),
+                    rs -> rs.next() ? mapper.mapRow(rs, 0) : null));
+        }));
+        queryShapeStats.record(query, System.nanoTime() - started, row != null ? 1 : 0);
+
+        if (row != null) {
+            keyCache.put(entityName, key, row, generation);
+        }
+        recordResult(context, query.getSql(), row != null ? 1 : 0, false);
+        return row;
+    }
+
+    /**
+     * 在请求上下文中记录查询结果（访问日志、JFR事件），SQL为参数化语句，其哈希值区分查询形态
+     */
+    private static void recordResult(QueryContext context, String sql, int rows, boolean coalesced) {
+        if (context != null) {
+            context.recordResult(sql != null ? sql.hashCode() : 0, rows, coalesced);
+        }
+    }
+
+    /**
+     * 流式查询：只读、单向游标，结果集直接交给extractor处理，不在内存中物化
+     * 受自适应并发限制，许可在extractor处理完整个结果集后才释放，超出限制时抛出 QueryRejectedException
+     */
+    public <T> T streamQuery(SqlQuery query, int fetchSize, ResultSetExtractor<T> extractor) {
+        PreparedStatementCreator creator = statementCreator(query, query.getSql(), query.getParameters(), fetchSize);
+        return concurrencyLimiter.executeStream(() -> execute(query, () -> jdbcTemplate.query(creator, extractor)));
+    }
+
+    /**
+     * 获取实体集的查询超时（秒）：实体集配置或默认值，客户端通过 Prefer: wait 只能缩短
+     */
+    public int getQueryTimeout(String entityName, QueryContext context) {
+        int timeout = timeoutProperties.getEntities().getOrDefault(entityName, timeoutProperties.getDefaultTimeout());
+        Integer requested = context != null ? context.getRequestedTimeout() : null;
+        if (requested != null && (timeout <= 0 || requested < timeout)) {
+            return requested;
+        }
+        return timeout;
+    }
+
+    /**
+     * 行映射器，请求计时时将映射耗时记入 MAP 阶段
+     */
+    private RowMapper<Map<String, Object>> rowMapper(String entityName, RequestTiming timing) {
+        RowMapper<Map<String, Object>> mapper = rowMapper(entityName);
+        if (!timing.isEnabled()) {
+            return mapper;
+        }
+        return (rs, rowNum) -> {
+            long begin = timing.begin();
+            try {
+                return mapper.mapRow(rs, rowNum);
+            } finally {
+                timing.stop(RequestTiming.Phase.MAP, begin);
+            }
+        };
+    }
+
+    /**
+     * 计时数据库访问（含排队、合并等待），其中的行映射耗时只记入 MAP 阶段
+     */
+    private static <T> T timeDatabase(RequestTiming timing, Supplier<T> action) {
+        long begin = timing.begin();
+        long mapped = timing.getNanos(RequestTiming.Phase.MAP);
+        try {
+            return action.get();
+        } finally {
+            timing.stop(RequestTiming.Phase.DB, begin);
+            timing.add(RequestTiming.Phase.DB, mapped - timing.getNanos(RequestTiming.Phase.MAP));
+        }
+    }
+
+    /**
+     * 行映射器：注解实体映射为实体对象，动态实体使用注册时生成的强类型行类，都不可用时按Map映射
+     */
+    private RowMapper<Map<String, Object>> rowMapper(String entityName) {
+        EntityRowCodec entityCodec = entityRegistryService.getRowCodec(entityName);
+        if (entityCodec != null) {
+            return entityCodec.rowMapper(MAP_ROW_MAPPER);
+        }
+        DynamicEntityRegistrationService dynamicService = entityRegistryService.getDynamicEntityService(entityName);
+        DynamicRowCodec codec = dynamicService != null ? dynamicService.getRowCodec(entityName) : null;
+        return codec != null ? codec.rowMapper(MAP_ROW_MAPPER) : MAP_ROW_MAPPER;
+    }
+
+    /**
+     * 在从库上执行查询，结束后释放请求上下文中登记的语句
+     */
+    private <T> T execute(SqlQuery query, Supplier<T> action) {
+        try {
+            return DataSourceRouting.onReplica(action);
+        } finally {
+            if (query.getContext() != null) {
+                query.getContext().release();
+            }
+        }
+    }
+
+    /**
+     * 只读、单向游标的语句，设置超时并登记到请求上下文以便取消
+     */
+    private PreparedStatementCreator statementCreator(SqlQuery query, String sql, List<Object> parameters,
+                                                      Integer fetchSize) {
+        return connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            try {
+                if (fetchSize != null) {
+                    ps.setFetchSize(fetchSize);
+                }
+                int timeout = getQueryTimeout(query.getEntityName(), query.getContext());
+                if (query.getContext() != null) {
+                    query.getContext().register(ps, timeout);
+                } else {
+                    ps.setQueryTimeout(timeout);
+                }
+                new ArgumentPreparedStatementSetter(parameters.toArray()).setValues(ps);
+            } catch (SQLException e) {
+                ps.close();
+                throw e;
+            }
+            return ps;
+        };
+    }
+
+    /**
+     * 构建查询语句
+     */
+    public SqlQuery buildQuery(String entityName, Map<String, String> queryParams) {
         String tableName = entityRegistryService.getTableName(entityName);
         Class<?> entityClass = entityRegistryService.getEntityClass(entityName);
         
@@ -63,7 +367,8 @@ public class ODataQueryService {
         
         // 处理 $filter
         List<Object> parameters = new ArrayList<>();
-        String whereClause = buildWhereClause(entityClass, queryParams.get("$filter"), parameters);
+        String whereClause = buildWhereClause(entityRegistryService.getEntityMetadata(entityName),
+                queryParams.get("$filter"), parameters);
         if (StringUtils.hasText(whereClause)) {
             sql.append(" WHERE ").append(whereClause);
         }
@@ -74,30 +379,30 @@ public class ODataQueryService {
             sql.append(" ORDER BY ").append(orderClause);
         }
         
-        // 处理 $top 和 $skip
-        String limitClause = buildLimitClause(queryParams.get("$top"), queryParams.get("$skip"));
-        if (StringUtils.hasText(limitClause)) {
-            sql.append(limitClause);
-        }
+        List<Object> whereParameters = new ArrayList<>(parameters);
+
+        // 查询成本检查（EXPLAIN结论按查询形态缓存），可能缩小 $top
+        // EXPLAIN 按形态在请求间共享，使用实体集的超时而不是单个请求的 Prefer: wait
+        Long top = queryCostGuard.check(entityName, sql.toString(), whereParameters,
+                parseRowCount("$top", queryParams.get("$top")), getQueryTimeout(entityName, null));
+
+        // 处理 $top 和 $skip（以参数绑定，相同形态的查询生成相同的SQL）
+        sql.append(buildLimitClause(top, parseRowCount("$skip", queryParams.get("$skip")), parameters));
 
         log.debug("Generated SQL: {}", sql.toString());
         log.debug("Parameters: {}", parameters);
 
-        // 执行查询
-        List<Map<String, Object>> data = jdbcTemplate.query(sql.toString(), parameters.toArray(), new MapRowMapper());
-        
-        // 获取总数（如果需要）
-        long totalCount = 0;
-        if ("true".equals(queryParams.get("$count"))) {
-            totalCount = getTotalCount(tableName, whereClause, parameters);
-        }
-
-        QueryResult result = new QueryResult();
-        result.setData(data);
-        result.setCount(totalCount);
-        result.setHasMore(false); // 简化实现
-        
-        return result;
+        SqlQuery query = new SqlQuery();
+        query.setEntityName(entityName);
+        query.setTableName(tableName);
+        query.setSql(sql.toString());
+        query.setSelectClause(selectClause);
+        query.setWhereClause(whereClause);
+        query.setOrderClause(orderClause);
+        query.setShapeKey(QueryShapeStats.shapeKey(entityName, selectClause, whereClause, orderClause));
+        query.setWhereParameters(whereParameters);
+        query.setParameters(parameters);
+        return query;
     }
 
     private String buildSelectClause(Class<?> entityClass, String select) {
@@ -109,51 +414,62 @@ public class ODataQueryService {
         return select;
     }
 
-    private String buildWhereClause(Class<?> entityClass, String filter, List<Object> parameters) {
+    private String buildWhereClause(EntityMetadata metadata, String filter, List<Object> parameters) {
         if (!StringUtils.hasText(filter)) {
             return "";
         }
         
         // 简化实现：基本的过滤条件解析
         // 实际项目中需要完整的OData过滤表达式解析器
-        return parseSimpleFilter(filter, parameters);
+        return parseSimpleFilter(metadata, filter, parameters);
     }
 
-    private String parseSimpleFilter(String filter, List<Object> parameters) {
-        // 简单的过滤条件解析
+    private String parseSimpleFilter(EntityMetadata metadata, String filter, List<Object> parameters) {
+        // 简单的过滤条件解析，字面量按属性类型绑定
         if (filter.contains(" eq ")) {
             String[] parts = filter.split(" eq ");
             if (parts.length == 2) {
-                String field = parts[0].trim();
-                String value = parts[1].trim().replace("'", "");
-                parameters.add(value);
-                return field + " = ?";
+                PropertyMetadata property = resolveFilterProperty(metadata, parts[0]);
+                if (ODataLiteralCodec.isNull(parts[1])) {
+                    return property.getColumnName() + " IS NULL";
+                }
+                parameters.add(ODataLiteralCodec.parse(property, parts[1]));
+                return property.getColumnName() + " = ?";
             }
         }
         
         if (filter.contains(" gt ")) {
             String[] parts = filter.split(" gt ");
             if (parts.length == 2) {
-                String field = parts[0].trim();
-                String value = parts[1].trim().replace("'", "");
-                parameters.add(value);
-                return field + " > ?";
+                PropertyMetadata property = resolveFilterProperty(metadata, parts[0]);
+                parameters.add(ODataLiteralCodec.parse(property, parts[1]));
+                return property.getColumnName() + " > ?";
             }
         }
         
         if (filter.contains(" lt ")) {
             String[] parts = filter.split(" lt ");
             if (parts.length == 2) {
-                String field = parts[0].trim();
-                String value = parts[1].trim().replace("'", "");
-                parameters.add(value);
-                return field + " < ?";
+                PropertyMetadata property = resolveFilterProperty(metadata, parts[0]);
+                parameters.add(ODataLiteralCodec.parse(property, parts[1]));
+                return property.getColumnName() + " < ?";
             }
         }
         
         return "";
     }
 
+    /**
+     * 过滤条件左侧只接受实体属性名或列名
+     */
+    private PropertyMetadata resolveFilterProperty(EntityMetadata metadata, String field) {
+        PropertyMetadata property = metadata != null ? metadata.resolveProperty(field.trim()) : null;
+        if (property == null) {
+            throw new RuntimeException("Unknown property in $filter: " + field.trim());
+        }
+        return property;
+    }
+
     private String buildOrderClause(Class<?> entityClass, String orderby) {
         if (!StringUtils.hasText(orderby)) {
             return "";
@@ -163,28 +479,45 @@ public class ODataQueryService {
         return orderby.replace(" asc", " ASC").replace(" desc", " DESC");
     }
 
-    private String buildLimitClause(String top, String skip) {
-        StringBuilder limit = new StringBuilder();
-        
-        if (StringUtils.hasText(skip)) {
-            limit.append(" OFFSET ").append(skip);
+    private String buildLimitClause(Long top, Long skip, List<Object> parameters) {
+        if (top == null && skip == null) {
+            return "";
         }
-        
-        if (StringUtils.hasText(top)) {
-            limit.append(" LIMIT ").append(top);
+
+        // MySQL 的 OFFSET 必须跟在 LIMIT 之后
+        parameters.add(top != null ? top : Long.MAX_VALUE);
+        if (skip == null) {
+            return " LIMIT ?";
         }
-        
-        return limit.toString();
+        parameters.add(skip);
+        return " LIMIT ? OFFSET ?";
     }
 
-    private long getTotalCount(String tableName, String whereClause, List<Object> parameters) {
-        StringBuilder countSql = new StringBuilder("SELECT COUNT(*) FROM ").append(tableName);
+    private Long parseRowCount(String option, String value) {
+        if (!StringUtils.hasText(value)) {
+            return null;
+        }
+        try {
+            long count = Long.parseLong(value.trim());
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException ignored) {
+            // 按无效参数处理
+        }
+        throw new RuntimeException("Invalid " + option + ": " + value);
+    }
+
+    private long getTotalCount(SqlQuery query) {
+        StringBuilder countSql = new StringBuilder("SELECT COUNT(*) FROM ").append(query.getTableName());
         
-        if (StringUtils.hasText(whereClause)) {
-            countSql.append(" WHERE ").append(whereClause);
+        if (StringUtils.hasText(query.getWhereClause())) {
+            countSql.append(" WHERE ").append(query.getWhereClause());
         }
         
-        Long count = jdbcTemplate.queryForObject(countSql.toString(), parameters.toArray(), Long.class);
+        Long count = jdbcTemplate.query(
+                statementCreator(query, countSql.toString(), query.getWhereParameters(), null),
+                rs -> rs.next() ? rs.getLong(1) : 0L);
         return count != null ? count : 0;
     }
 
@@ -0,0 +1,176 @@
+package com.jinyi.odata.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 查询合并（single-flight）
+ * 相同查询（同一实体、相同的SQL和参数）正在执行时，后到的请求不再访问数据库，等待并共用第一个请求的结果。
+ * 共用的执行使用发起请求的超时：发起查询的请求被取消（等待超时、客户端断开），或因其超时比等待者短而语句超时时，
+ * 等待者重新执行（仍参与合并）。等待者按自己的超时等待，自己被取消时立即放弃等待
+ */
+@Component
+@Slf4j
+public class QueryCoalescer {
+
+    /** 等待者检查自身取消状态的间隔 */
+    private static final long WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${odata.coalesce.enabled:true}")
+    private boolean enabled;
+
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private Counter leaders;
+    private Counter followers;
+
+    /**
+     * 一次正在执行的查询
+     */
+    private static final class Flight {
+        final CompletableFuture<ODataQueryService.QueryResult> future = new CompletableFuture<>();
+        final QueryContext context;
+        final int timeoutSeconds;
+        // 只在 flights.compute 中修改
+        int callers = 1;
+
+        Flight(QueryContext context, int timeoutSeconds) {
+            this.context = context;
+            this.timeoutSeconds = timeoutSeconds;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        // 合并比例 = followers / (leaders + followers)
+        leaders = Counter.builder("odata.query.coalesce")
+                .tag("role", "leader")
+                .description("Queries executed against the database")
+                .register(meterRegistry);
+        followers = Counter.builder("odata.query.coalesce")
+                .tag("role", "follower")
+                .description("Queries answered with the result of an identical in-flight query")
+                .register(meterRegistry);
+        Gauge.builder("odata.query.coalesce.inflight", flights, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * 执行查询，相同key的查询正在执行时等待其结果
+     * 被多个请求共用的结果 sharedBy 大于1，调用方不得修改
+     * @param timeoutSeconds 本请求的查询超时（秒），0表示不限
+     */
+    public ODataQueryService.QueryResult execute(String key, QueryContext context, int timeoutSeconds,
+                                                 Supplier<ODataQueryService.QueryResult> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        Flight created = new Flight(context, timeoutSeconds);
+        Flight flight = flights.compute(key, (k, existing) -> {
+            if (existing == null) {
+                return created;
+            }
+            existing.callers++;
+            return existing;
+        });
+
+        if (flight == created) {
+            leaders.increment();
+            return lead(key, flight, loader);
+        }
+        followers.increment();
+        return follow(key, flight, context, timeoutSeconds, loader);
+    }
+
+    private ODataQueryService.QueryResult lead(String key, Flight flight,
+                                               Supplier<ODataQueryService.QueryResult> loader) {
+        ODataQueryService.QueryResult result;
+        try {
+            result = loader.get();
+        } catch (RuntimeException | Error e) {
+            flights.remove(key, flight);
+            flight.future.completeExceptionally(e);
+            throw e;
+        }
+
+        // 移除后不会再有新的等待者，callers 即为共用该结果的请求数
+        flights.remove(key, flight);
+        result.setSharedBy(flight.callers);
+        flight.future.complete(result);
+        return result;
+    }
+
+    private ODataQueryService.QueryResult follow(String key, Flight flight, QueryContext context, int timeoutSeconds,
+                                                 Supplier<ODataQueryService.QueryResult> loader) {
+        long deadline = timeoutSeconds > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds) : 0;
+        try {
+            while (true) {
+                if (context != null && context.isCancelled()) {
+                    throw new RuntimeException("Query cancelled: client is gone");
+                }
+                long wait = WAIT_SLICE_NANOS;
+                if (deadline != 0) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new QueryTimeoutException("Timed out waiting for coalesced query");
+                    }
+                    wait = Math.min(wait, remaining);
+                }
+                try {
+                    return flight.future.get(wait, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    // 继续等待
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for coalesced query");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (flight.context != null && flight.context.isCancelled()) {
+                log.debug("Coalesced query was cancelled by its leader, executing again");
+                return execute(key, context, timeoutSeconds, loader);
+            }
+            if (cause instanceof QueryTimeoutException && allowsLonger(timeoutSeconds, flight.timeoutSeconds)) {
+                log.debug("Coalesced query hit its leader's {}s timeout, executing again with {}s",
+                        flight.timeoutSeconds, timeoutSeconds);
+                return execute(key, context, timeoutSeconds, loader);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * 等待者的超时是否比发起者的长（0表示不限）
+     */
+    private static boolean allowsLonger(int timeoutSeconds, int leaderTimeoutSeconds) {
+        if (leaderTimeoutSeconds <= 0) {
+            return false;
+        }
+        return timeoutSeconds <= 0 || timeoutSeconds > leaderTimeoutSeconds;
+    }
+}
@@ -0,0 +1,172 @@
+package com.jinyi.odata.service;
+
+import com.jinyi.odata.jfr.QueryEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.StringUtils;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 单次OData请求的查询上下文
+ * 记录客户端期望的等待时间（Prefer: wait）和正在执行的语句，客户端断开或等待超时时取消语句，及时释放连接；
+ * 同时携带请求的分阶段计时、JFR事件和访问日志使用的请求描述
+ */
+@Slf4j
+public class QueryContext {
+
+    private final Integer requestedTimeout;
+    private volatile Statement statement;
+    private volatile boolean cancelled;
+    private RequestTiming timing = RequestTiming.DISABLED;
+    private final QueryEvent event = new QueryEvent();
+
+    // 请求描述（访问日志、JFR事件），同一请求内依次写入
+    private final long startedAt = System.nanoTime();
+    private String kind;
+    private String appCode;
+    private String entitySet;
+    private int sqlShape;
+    private int rows;
+    private boolean coalesced;
+
+    public QueryContext(Integer requestedTimeout) {
+        this.requestedTimeout = requestedTimeout;
+    }
+
+    /**
+     * 从 Prefer 请求头解析 wait 偏好（秒），如 "odata.maxpagesize=50, wait=10"
+     */
+    public static QueryContext fromPreferHeader(String prefer) {
+        if (StringUtils.hasText(prefer)) {
+            for (String preference : prefer.split(",")) {
+                String[] pair = preference.trim().split("=", 2);
+                if (pair.length == 2 && "wait".equalsIgnoreCase(pair[0].trim())) {
+                    try {
+                        int wait = Integer.parseInt(pair[1].trim().replace("\"", ""));
+                        if (wait > 0) {
+                            return new QueryContext(wait);
+                        }
+                    } catch (NumberFormatException ignored) {
+                        // 无法识别的偏好按规范忽略
+                    }
+                }
+            }
+        }
+        return new QueryContext(null);
+    }
+
+    /**
+     * 客户端期望的超时秒数，为空表示未指定
+     */
+    public Integer getRequestedTimeout() {
+        return requestedTimeout;
+    }
+
+    public RequestTiming getTiming() {
+        return timing;
+    }
+
+    public void setTiming(RequestTiming timing) {
+        this.timing = timing;
+    }
+
+    /**
+     * 请求的JFR事件，未开启JFR记录时 isEnabled 为false
+     */
+    public QueryEvent getEvent() {
+        return event;
+    }
+
+    /**
+     * 记录请求类型和目标
+     * @param kind 请求类型（entitySet / entity）
+     * @param appCode 应用编码，全局服务为null
+     */
+    public void describe(String kind, String appCode, String entitySet) {
+        this.kind = kind;
+        this.appCode = appCode;
+        this.entitySet = entitySet;
+    }
+
+    /**
+     * 记录查询结果
+     * @param sqlShape 参数化SQL的哈希，区分查询形态
+     */
+    public void recordResult(int sqlShape, int rows, boolean coalesced) {
+        this.sqlShape = sqlShape;
+        this.rows = rows;
+        this.coalesced = coalesced;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getAppCode() {
+        return appCode;
+    }
+
+    public String getEntitySet() {
+        return entitySet;
+    }
+
+    public int getSqlShape() {
+        return sqlShape;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public boolean isCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * 上下文的计时，无上下文（如后台刷新）时不计时
+     */
+    public static RequestTiming timing(QueryContext context) {
+        return context != null ? context.timing : RequestTiming.DISABLED;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 登记即将执行的语句并设置超时；上下文已取消时直接失败
+     */
+    public void register(Statement statement, int timeoutSeconds) throws SQLException {
+        statement.setQueryTimeout(timeoutSeconds);
+        this.statement = statement;
+        if (cancelled) {
+            this.statement = null;
+            throw new SQLException("Query cancelled: client is gone");
+        }
+    }
+
+    public void release() {
+        statement = null;
+    }
+
+    /**
+     * 取消当前语句，之后登记的语句也会立即失败
+     */
+    public void cancel() {
+        cancelled = true;
+        Statement current = statement;
+        if (current != null) {
+            try {
+                current.cancel();
+                log.info("Cancelled running query of abandoned request");
+            } catch (SQLException e) {
+                log.debug("Failed to cancel statement: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.jinyi.odata.service;
+
+import com.jinyi.odata.core.DatabaseDialectService;
+import com.jinyi.odata.datasource.DataSourceRouting;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 查询成本守卫
+ * 对新的查询形态（SQL文本，参数以占位符表示）执行 EXPLAIN（同一形态同时只执行一次，受查询超时限制），并缓存结论；预估扫描行数过大、
+ * 或全表扫描+filesort的查询按实体集阈值拒绝或自动限制返回行数。仅对MySQL生效
+ */
+@Service
+@Slf4j
+@EnableConfigurationProperties(QueryGuardProperties.class)
+public class QueryCostGuard {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DatabaseDialectService databaseDialectService;
+
+    @Autowired
+    private QueryGuardProperties properties;
+
+    /**
+     * 查询形态 -> EXPLAIN 结论；超出 cache-size 时近似按最近访问时间淘汰
+     */
+    private final Map<String, Verdict> verdicts = new ConcurrentHashMap<>();
+
+    /**
+     * 正在执行 EXPLAIN 的查询形态，同一形态只有一个线程执行，其它线程等待其结论
+     */
+    private final Map<String, CompletableFuture<Verdict>> explaining = new ConcurrentHashMap<>();
+
+    /**
+     * EXPLAIN 结论
+     */
+    private static class Verdict {
+        private final long estimatedRows;
+        private final boolean fullScan;
+        private final boolean filesort;
+        private final long expiresAt;
+        private volatile long lastAccess;
+
+        Verdict(long estimatedRows, boolean fullScan, boolean filesort, long expiresAt) {
+            this.estimatedRows = estimatedRows;
+            this.fullScan = fullScan;
+            this.filesort = filesort;
+            this.expiresAt = expiresAt;
+            this.lastAccess = System.nanoTime();
+        }
+    }
+
+    /**
+     * 检查查询成本
+     * @param sql 不含 LIMIT/OFFSET 的查询语句
+     * @param top 请求的 $top，为空表示不限制
+     * @param timeout EXPLAIN 的超时（秒），0表示不限制
+     * @return 实际使用的 $top（cap 模式下可能被缩小）
+     * @throws RuntimeException 查询超出阈值且处理方式为 reject
+     */
+    public Long check(String entityName, String sql, List<Object> parameters, Long top, int timeout) {
+        if (!properties.isEnabled() || !databaseDialectService.isMySql()) {
+            return top;
+        }
+
+        Verdict verdict = getVerdict(entityName, sql, parameters, timeout);
+        if (verdict == null) {
+            return top;
+        }
+
+        QueryGuardProperties.Threshold defaults = properties.getDefaults();
+        QueryGuardProperties.Threshold threshold = properties.getEntities().get(entityName);
+        long maxRows = resolve(threshold == null ? null : threshold.getMaxRows(), defaults.getMaxRows());
+        long maxSortRows = resolve(threshold == null ? null : threshold.getMaxSortRows(), defaults.getMaxSortRows());
+        long capRows = resolve(threshold == null ? null : threshold.getCapRows(), defaults.getCapRows());
+        String action = threshold != null && threshold.getAction() != null ? threshold.getAction() : defaults.getAction();
+
+        String reason = null;
+        // 排序需要读取全部行，$top 无法减少扫描量
+        if (verdict.fullScan && verdict.filesort && verdict.estimatedRows > maxSortRows) {
+            reason = "full table scan with filesort over ~" + verdict.estimatedRows + " rows";
+        } else if (verdict.estimatedRows > maxRows && (top == null || top > capRows)) {
+            reason = "~" + verdict.estimatedRows + " rows " + (top == null ? "without $top" : "with $top " + top);
+        }
+        if (reason == null) {
+            return top;
+        }
+
+        if ("cap".equalsIgnoreCase(action)) {
+            long capped = top == null ? capRows : Math.min(top, capRows);
+            log.warn("Query on {} capped to {} rows: {}", entityName, capped, reason);
+            return capped;
+        }
+        log.warn("Query on {} rejected: {}; SQL: {}", entityName, reason, sql);
+        throw new RuntimeException("Query is too expensive (" + reason
+                + "), add a $filter on an indexed property or a smaller $top");
+    }
+
+    private Verdict getVerdict(String entityName, String sql, List<Object> parameters, int timeout) {
+        String shape = entityName + '\n' + sql;
+        Verdict verdict = verdicts.get(shape);
+        if (verdict != null && verdict.expiresAt > System.currentTimeMillis()) {
+            verdict.lastAccess = System.nanoTime();
+            return verdict;
+        }
+
+        CompletableFuture<Verdict> flight = new CompletableFuture<>();
+        CompletableFuture<Verdict> existing = explaining.putIfAbsent(shape, flight);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                return null;
+            }
+        }
+
+        try {
+            verdict = explain(entityName, shape, sql, parameters, timeout);
+            flight.complete(verdict);
+            return verdict;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            explaining.remove(shape, flight);
+        }
+    }
+
+    private Verdict explain(String entityName, String shape, String sql, List<Object> parameters, int timeout) {
+        long now = System.currentTimeMillis();
+        // 等待期间上一次 EXPLAIN 可能刚刚写入
+        Verdict verdict = verdicts.get(shape);
+        if (verdict != null && verdict.expiresAt > now) {
+            return verdict;
+        }
+
+        try {
+            verdict = DataSourceRouting.onReplica(() -> jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement("EXPLAIN " + sql);
+                try {
+                    if (timeout > 0) {
+                        ps.setQueryTimeout(timeout);
+                    }
+                    new ArgumentPreparedStatementSetter(parameters.toArray()).setValues(ps);
+                } catch (SQLException e) {
+                    ps.close();
+                    throw e;
+                }
+                return ps;
+            }, rs -> {
+                long rows = 0;
+                boolean fullScan = false;
+                boolean filesort = false;
+                while (rs.next()) {
+                    rows = Math.max(rows, rs.getLong("rows"));
+                    fullScan |= "ALL".equalsIgnoreCase(rs.getString("type"));
+                    String extra = rs.getString("Extra");
+                    filesort |= extra != null && extra.contains("Using filesort");
+                }
+                return new Verdict(rows, fullScan, filesort, now + properties.getVerdictTtl());
+            }));
+        } catch (Exception e) {
+            // EXPLAIN 失败（含超时）不影响查询本身
+            log.debug("EXPLAIN failed for {}: {}", sql, e.getMessage());
+            return null;
+        }
+
+        log.debug("Query shape on {} explained: rows={}, fullScan={}, filesort={}",
+                entityName, verdict.estimatedRows, verdict.fullScan, verdict.filesort);
+        verdicts.put(shape, verdict);
+        if (verdicts.size() > properties.getCacheSize()) {
+            evict(shape, now);
+        }
+        return verdict;
+    }
+
+    /**
+     * 先清除过期结论，仍超出容量时淘汰最久未访问的 5%（不含刚加入的形态），并发写入时只有一个线程执行
+     */
+    private synchronized void evict(String added, long now) {
+        verdicts.values().removeIf(verdict -> verdict.expiresAt <= now);
+        int cacheSize = properties.getCacheSize();
+        int excess = verdicts.size() - cacheSize;
+        if (excess <= 0) {
+            return;
+        }
+        int count = Math.max(excess, cacheSize / 20);
+        // 先取访问时间快照再排序
+        List<Map.Entry<String, Long>> accesses = new ArrayList<>();
+        verdicts.forEach((key, verdict) -> {
+            if (!key.equals(added)) {
+                accesses.add(Map.entry(key, verdict.lastAccess));
+            }
+        });
+        accesses.sort(Map.Entry.comparingByValue());
+        accesses.subList(0, Math.min(count, accesses.size())).forEach(entry -> verdicts.remove(entry.getKey()));
+    }
+
+    private static long resolve(Long value, Long defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,51 @@
+package com.jinyi.odata.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 查询成本守卫配置
+ */
+@Data
+@ConfigurationProperties(prefix = "odata.query-guard")
+public class QueryGuardProperties {
+
+    /** 是否启用（仅MySQL） */
+    private boolean enabled = false;
+
+    /** EXPLAIN结论的缓存时间（毫秒），过期后重新评估 */
+    private long verdictTtl = 600000;
+
+    /** 最多缓存的查询形态数 */
+    private int cacheSize = 1000;
+
+    /** 默认阈值 */
+    private Threshold defaults = Threshold.defaults();
+
+    /** 按实体集覆盖的阈值，未设置的项使用默认值 */
+    private Map<String, Threshold> entities = new HashMap<>();
+
+    @Data
+    public static class Threshold {
+        /** 未限制$top（或$top超过cap-rows）时允许的最大预估扫描行数 */
+        private Long maxRows;
+        /** 全表扫描+filesort时允许的最大预估行数 */
+        private Long maxSortRows;
+        /** 超出阈值时的处理方式：reject / cap */
+        private String action;
+        /** cap 模式下的最大返回行数 */
+        private Long capRows;
+
+        static Threshold defaults() {
+            Threshold threshold = new Threshold();
+            threshold.setMaxRows(100000L);
+            threshold.setMaxSortRows(10000L);
+            threshold.setAction("reject");
+            threshold.setCapRows(1000L);
+            return threshold;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.jinyi.odata.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 查询形态统计（类似 pg_stat_statements）
+ * 查询按形态（实体集 + $select + 参数化的 $filter 骨架 + $orderby）聚合调用次数、实际执行次数、总/最大耗时、
+ * 返回行数和耗时分布。记录只做无锁累加；形态数超过上限时淘汰调用次数最少的 5%
+ */
+@Service
+@Slf4j
+public class QueryShapeStats {
+
+    /** 耗时分布的桶上界（毫秒），最后一个桶不设上界 */
+    private static final long[] BUCKET_MILLIS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+
+    private static final long[] BUCKET_NANOS = new long[BUCKET_MILLIS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_MILLIS.length; i++) {
+            BUCKET_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BUCKET_MILLIS[i]);
+        }
+    }
+
+    @Value("${odata.query-stats.enabled:true}")
+    private boolean enabled;
+
+    @Value("${odata.query-stats.max-shapes:1000}")
+    private int maxShapes;
+
+    private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+
+    private volatile LocalDateTime resetAt = LocalDateTime.now();
+
+    /**
+     * 一个查询形态的统计
+     */
+    private static final class Shape {
+        final String entity;
+        final String select;
+        final String filter;
+        final String orderby;
+        final LongAdder calls = new LongAdder();
+        final LongAdder executions = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        final LongAdder rows = new LongAdder();
+        final LongAdder[] buckets = new LongAdder[BUCKET_MILLIS.length + 1];
+
+        Shape(String entity, String select, String filter, String orderby) {
+            this.entity = entity;
+            this.select = select;
+            this.filter = filter;
+            this.orderby = orderby;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 查询形态的键，参数以占位符表示，字面量不同的相同查询归为同一形态
+     */
+    public static String shapeKey(String entity, String select, String filter, String orderby) {
+        return entity + '\n' + select + '\n' + filter + '\n' + orderby;
+    }
+
+    /**
+     * 记录一次查询调用（含缓存命中和合并的请求）
+     * @param nanos 获取结果的耗时
+     */
+    public void record(ODataQueryService.SqlQuery query, long nanos, int rows) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Shape shape = shape(query);
+            shape.calls.increment();
+            shape.totalNanos.add(nanos);
+            shape.maxNanos.accumulate(nanos);
+            shape.rows.add(rows);
+            shape.buckets[bucket(nanos)].increment();
+        } catch (RuntimeException e) {
+            // 统计不影响查询本身
+            log.warn("Failed to record query shape statistics: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 记录一次实际的数据库执行（未命中缓存且不是合并的等待者）
+     */
+    public void recordExecution(ODataQueryService.SqlQuery query) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            shape(query).executions.increment();
+        } catch (RuntimeException e) {
+            log.warn("Failed to record query shape execution: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 按总耗时降序返回前N个查询形态
+     */
+    public List<Map<String, Object>> top(int limit) {
+        // 先取总耗时快照再排序，排序期间的并发记录不影响比较结果
+        List<Map.Entry<Shape, Long>> sorted = new ArrayList<>();
+        for (Shape shape : shapes.values()) {
+            sorted.add(Map.entry(shape, shape.totalNanos.sum()));
+        }
+        sorted.sort(Map.Entry.<Shape, Long>comparingByValue().reversed());
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map.Entry<Shape, Long> entry : sorted.subList(0, Math.min(limit, sorted.size()))) {
+            Shape shape = entry.getKey();
+            long calls = shape.calls.sum();
+            long totalNanos = entry.getValue();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("entity", shape.entity);
+            item.put("select", shape.select);
+            item.put("filter", shape.filter);
+            item.put("orderby", shape.orderby);
+            item.put("calls", calls);
+            item.put("executions", shape.executions.sum());
+            item.put("totalTimeMillis", toMillis(totalNanos));
+            item.put("meanTimeMillis", calls > 0 ? toMillis(totalNanos / calls) : 0.0);
+            item.put("maxTimeMillis", toMillis(shape.maxNanos.get()));
+            item.put("rows", shape.rows.sum());
+            item.put("histogram", histogram(shape));
+            result.add(item);
+        }
+        return result;
+    }
+
+    public int size() {
+        return shapes.size();
+    }
+
+    public LocalDateTime getResetAt() {
+        return resetAt;
+    }
+
+    /**
+     * 清空全部统计
+     */
+    public void reset() {
+        shapes.clear();
+        resetAt = LocalDateTime.now();
+        log.info("Query shape statistics reset");
+    }
+
+    private Shape shape(ODataQueryService.SqlQuery query) {
+        String key = query.getShapeKey();
+        Shape shape = shapes.get(key);
+        if (shape == null) {
+            shape = shapes.computeIfAbsent(key, k -> new Shape(query.getEntityName(), query.getSelectClause(),
+                    query.getWhereClause(), query.getOrderClause()));
+            if (shapes.size() > maxShapes) {
+                evict(key);
+            }
+        }
+        return shape;
+    }
+
+    /**
+     * 淘汰调用次数最少的 5% 形态（不含刚加入的形态），并发记录时只有一个线程执行
+     */
+    private synchronized void evict(String added) {
+        int excess = shapes.size() - maxShapes;
+        if (excess <= 0) {
+            return;
+        }
+        int count = Math.max(excess, maxShapes / 20);
+        // 先取调用次数快照再排序
+        List<Map.Entry<String, Long>> calls = new ArrayList<>();
+        shapes.forEach((key, shape) -> {
+            if (!key.equals(added)) {
+                calls.add(Map.entry(key, shape.calls.sum()));
+            }
+        });
+        calls.sort(Map.Entry.comparingByValue());
+        calls.subList(0, Math.min(count, calls.size())).forEach(entry -> shapes.remove(entry.getKey()));
+        log.debug("Evicted {} query shapes", count);
+    }
+
+    private static Map<String, Long> histogram(Shape shape) {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKET_MILLIS.length; i++) {
+            histogram.put("le" + BUCKET_MILLIS[i] + "ms", shape.buckets[i].sum());
+        }
+        histogram.put("gt" + BUCKET_MILLIS[BUCKET_MILLIS.length - 1] + "ms",
+                shape.buckets[BUCKET_MILLIS.length].sum());
+        return histogram;
+    }
+
+    private static int bucket(long nanos) {
+        for (int i = 0; i < BUCKET_NANOS.length; i++) {
+            if (nanos <= BUCKET_NANOS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_NANOS.length;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,21 @@
+package com.jinyi.odata.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 查询超时配置（秒，0表示不限制）
+ */
+@Data
+@ConfigurationProperties(prefix = "odata.query-timeout")
+public class QueryTimeoutProperties {
+
+    /** 默认超时 */
+    private int defaultTimeout = 30;
+
+    /** 按实体集设置的超时，覆盖默认值 */
+    private Map<String, Integer> entities = new HashMap<>();
+}
@@ -0,0 +1,130 @@
+package com.jinyi.odata.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 单次OData请求的分阶段耗时
+ * 各阶段用 System.nanoTime 计时并累加到定长数组，记录时不分配对象；只在生成响应头和汇总时转换为文本。
+ * 同一请求的各阶段依次执行（异步模式下由 DeferredResult 保证可见性），不需要同步
+ */
+public final class RequestTiming {
+
+    /**
+     * 请求阶段
+     */
+    public enum Phase {
+        /** 应用与实体归属校验 */
+        CATALOG("catalog"),
+        /** 解析参数、生成SQL */
+        BUILD("build"),
+        /** JDBC执行与读取（不含行映射；合并或命中缓存时为等待时间） */
+        DB("db"),
+        /** 结果行映射 */
+        MAP("map"),
+        /** 响应序列化 */
+        SERIALIZE("serialize");
+
+        private final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    public static final Phase[] PHASES = Phase.values();
+
+    /** 未启用计时，所有操作为空 */
+    public static final RequestTiming DISABLED = new RequestTiming(false);
+
+    private final boolean enabled;
+    private final long startedAt;
+    private final long[] nanos = new long[PHASES.length];
+
+    private RequestTiming(boolean enabled) {
+        this.enabled = enabled;
+        this.startedAt = enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * 开始计时一个请求
+     */
+    public static RequestTiming start() {
+        return new RequestTiming(true);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 阶段开始时间，与 {@link #stop} 配对使用
+     */
+    public long begin() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * 累加阶段耗时
+     */
+    public void stop(Phase phase, long begin) {
+        if (enabled) {
+            nanos[phase.ordinal()] += System.nanoTime() - begin;
+        }
+    }
+
+    public void add(Phase phase, long elapsedNanos) {
+        if (enabled) {
+            nanos[phase.ordinal()] += elapsedNanos;
+        }
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * 请求开始至今的耗时
+     */
+    public long getElapsedNanos() {
+        return enabled ? System.nanoTime() - startedAt : 0;
+    }
+
+    /**
+     * Server-Timing 响应头，如 {@code catalog;dur=0.42, db;dur=3.10, total;dur=4.02}
+     * 序列化在写出响应头之后进行，不包含在内
+     */
+    public String toServerTiming() {
+        StringBuilder header = new StringBuilder();
+        for (Phase phase : PHASES) {
+            if (phase != Phase.SERIALIZE && nanos[phase.ordinal()] > 0) {
+                appendDuration(header, phase.metricName, nanos[phase.ordinal()]);
+            }
+        }
+        appendDuration(header, "total", getElapsedNanos());
+        return header.toString();
+    }
+
+    /**
+     * 各阶段及总耗时（毫秒）
+     */
+    public Map<String, Double> toMillis() {
+        Map<String, Double> millis = new LinkedHashMap<>();
+        for (Phase phase : PHASES) {
+            millis.put(phase.metricName, nanos[phase.ordinal()] / 1_000_000.0);
+        }
+        millis.put("total", getElapsedNanos() / 1_000_000.0);
+        return millis;
+    }
+
+    private static void appendDuration(StringBuilder header, String name, long nanos) {
+        if (header.length() > 0) {
+            header.append(", ");
+        }
+        header.append(name).append(";dur=").append(String.format("%.2f", nanos / 1_000_000.0));
+    }
+}
@@ -0,0 +1,163 @@
+package com.jinyi.odata.service;
+
+import com.jinyi.business.entity.ApplicationEntity;
+import com.jinyi.business.service.ApplicationChangedEvent;
+import com.jinyi.odata.core.EntityRegistryService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 查询结果与应用元数据缓存
+ * 实体集查询结果按实体集分别缓存（默认关闭），应用实体列表按appCode缓存；均为软/硬TTL，
+ * 超过软TTL后先返回旧值再由后台线程刷新，数据库不可用时旧值最多返回到硬TTL。
+ * 本服务内的写入（应用配置变更、动态实体结构变更/注销）使对应缓存失效
+ */
+@Service
+@Slf4j
+@EnableConfigurationProperties(ResponseCacheProperties.class)
+public class ResponseCache {
+
+    /** ApplicationService 写入的表 */
+    private static final List<String> APPLICATION_TABLES = List.of("applications", "application_entities");
+
+    @Autowired
+    private ResponseCacheProperties properties;
+
+    @Autowired
+    private EntityRegistryService entityRegistryService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, StaleWhileRevalidateCache<String, ODataQueryService.QueryResult>> resultCaches =
+            new ConcurrentHashMap<>();
+
+    private StaleWhileRevalidateCache<String, List<ApplicationEntity>> applicationCache;
+
+    private ThreadPoolExecutor refreshExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        // 刷新任务积压时丢弃，请求继续使用旧值，下次访问再触发
+        refreshExecutor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(100), runnable -> {
+                    Thread thread = new Thread(runnable, "odata-cache-refresh-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        ResponseCacheProperties.Metadata metadata = properties.getMetadata();
+        if (metadata.isEnabled()) {
+            applicationCache = new StaleWhileRevalidateCache<>("application", metadata.getSoftTtl(),
+                    metadata.getHardTtl(), metadata.getMaxEntries(), refreshExecutor, meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * 获取实体集查询结果
+     * 缓存的结果由多个请求共用，调用方不得修改
+     * @param loader    同步执行查询（使用请求上下文）
+     * @param refresher 后台刷新查询（不使用请求上下文）
+     */
+    public ODataQueryService.QueryResult getResult(String entityName, String key,
+                                                   Supplier<ODataQueryService.QueryResult> loader,
+                                                   Supplier<ODataQueryService.QueryResult> refresher) {
+        StaleWhileRevalidateCache<String, ODataQueryService.QueryResult> cache = getResultCache(entityName);
+        if (cache == null) {
+            return loader.get();
+        }
+        return cache.get(key, () -> cached(loader.get()), () -> cached(refresher.get()));
+    }
+
+    /**
+     * 获取应用下的实体列表
+     * @param loader 加载应用的实体列表，应用不存在时返回null（不缓存，创建后立即可见）
+     * @return 实体列表，应用不存在时返回null
+     */
+    public List<ApplicationEntity> getApplicationEntities(String appCode, Supplier<List<ApplicationEntity>> loader) {
+        if (applicationCache == null) {
+            return loader.get();
+        }
+        return applicationCache.get(appCode, loader, loader);
+    }
+
+    /**
+     * 清空实体集的查询结果缓存
+     */
+    public void invalidate(String entityName) {
+        StaleWhileRevalidateCache<String, ODataQueryService.QueryResult> cache = resultCaches.get(entityName);
+        if (cache != null) {
+            cache.invalidateAll();
+            log.debug("Result cache of {} invalidated", entityName);
+        }
+    }
+
+    /**
+     * 清空映射到指定表的所有实体集的查询结果缓存
+     */
+    public void invalidateTable(String tableName) {
+        for (String entityName : resultCaches.keySet()) {
+            if (tableName.equalsIgnoreCase(entityRegistryService.getTableName(entityName))) {
+                invalidate(entityName);
+            }
+        }
+    }
+
+    @EventListener
+    public void onApplicationChanged(ApplicationChangedEvent event) {
+        if (applicationCache != null) {
+            applicationCache.invalidateAll();
+        }
+        APPLICATION_TABLES.forEach(this::invalidateTable);
+    }
+
+    private static ODataQueryService.QueryResult cached(ODataQueryService.QueryResult result) {
+        if (result != null) {
+            result.setCached(true);
+        }
+        return result;
+    }
+
+    private StaleWhileRevalidateCache<String, ODataQueryService.QueryResult> getResultCache(String entityName) {
+        StaleWhileRevalidateCache<String, ODataQueryService.QueryResult> cache = resultCaches.get(entityName);
+        if (cache != null) {
+            return cache;
+        }
+
+        ResponseCacheProperties.EntityCache settings = properties.getEntities().get(entityName);
+        boolean enabled = settings != null && settings.getEnabled() != null
+                ? settings.getEnabled() : properties.isEnabled();
+        if (!enabled) {
+            return null;
+        }
+        long softTtl = settings != null && settings.getSoftTtl() != null
+                ? settings.getSoftTtl() : properties.getSoftTtl();
+        long hardTtl = settings != null && settings.getHardTtl() != null
+                ? settings.getHardTtl() : properties.getHardTtl();
+        int maxEntries = settings != null && settings.getMaxEntries() != null
+                ? settings.getMaxEntries() : properties.getMaxEntries();
+        return resultCaches.computeIfAbsent(entityName, name -> new StaleWhileRevalidateCache<>(
+                "entity-set:" + name, softTtl, hardTtl, maxEntries, refreshExecutor, meterRegistry));
+    }
+}
@@ -0,0 +1,49 @@
+package com.jinyi.odata.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 查询结果与应用元数据缓存配置（stale-while-revalidate）
+ */
+@Data
+@ConfigurationProperties(prefix = "odata.response-cache")
+public class ResponseCacheProperties {
+
+    /** 默认是否缓存实体集查询结果 */
+    private boolean enabled = false;
+
+    /** 软TTL（毫秒），超过后返回旧结果并在后台刷新 */
+    private long softTtl = 5000;
+
+    /** 硬TTL（毫秒），数据库不可用时旧结果最多返回到该时间 */
+    private long hardTtl = 60000;
+
+    /** 每个实体集最多缓存的查询数 */
+    private int maxEntries = 200;
+
+    /** 按实体集覆盖的配置，未设置的项使用默认值 */
+    private Map<String, EntityCache> entities = new HashMap<>();
+
+    /** 应用元数据（$metadata、服务文档和实体归属校验使用的应用实体列表）缓存 */
+    private Metadata metadata = new Metadata();
+
+    @Data
+    public static class EntityCache {
+        private Boolean enabled;
+        private Long softTtl;
+        private Long hardTtl;
+        private Integer maxEntries;
+    }
+
+    @Data
+    public static class Metadata {
+        private boolean enabled = true;
+        private long softTtl = 30000;
+        private long hardTtl = 600000;
+        private int maxEntries = 500;
+    }
+}
@@ -0,0 +1,235 @@
+package com.jinyi.odata.service;
+
+import com.jinyi.odata.jfr.CacheLookupEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 软/硬两级TTL的缓存（stale-while-revalidate）
+ * 软TTL内直接返回；超过软TTL后立即返回旧值并在后台刷新一次；刷新失败（如数据库不可用）时继续返回旧值，直到硬TTL。
+ * 超过硬TTL或未命中时同步加载，同一个key同时只有一个线程加载，其它线程等待其结果；加载结果为null时不缓存。
+ * 超出容量时近似按最近访问时间淘汰
+ */
+@Slf4j
+public class StaleWhileRevalidateCache<K, V> {
+
+    /** 后台刷新失败后的重试间隔 */
+    private static final long REFRESH_RETRY_MILLIS = 1000;
+
+    private final String name;
+    private final long softTtlMillis;
+    private final long hardTtlMillis;
+    private final Executor refreshExecutor;
+    private final int maxEntries;
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final Map<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    /** 串行化写入与清空，保证清空前开始的加载不会写回 */
+    private final Object writeLock = new Object();
+    private volatile long generation;
+
+    private final Counter hits;
+    private final Counter staleHits;
+    private final Counter misses;
+    private final Counter refreshFailures;
+
+    private static final class Entry<V> {
+        final V value;
+        final long loadedAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+        volatile long retryAt;
+        volatile long lastAccess;
+
+        Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+            this.lastAccess = System.nanoTime();
+        }
+    }
+
+    public StaleWhileRevalidateCache(String name, long softTtlMillis, long hardTtlMillis, int maxEntries,
+                                     Executor refreshExecutor, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.softTtlMillis = softTtlMillis;
+        this.hardTtlMillis = Math.max(softTtlMillis, hardTtlMillis);
+        this.refreshExecutor = refreshExecutor;
+        this.maxEntries = maxEntries;
+        this.hits = counter(meterRegistry, "hit");
+        this.staleHits = counter(meterRegistry, "stale");
+        this.misses = counter(meterRegistry, "miss");
+        this.refreshFailures = Counter.builder("odata.cache.refresh.failures")
+                .tag("cache", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 获取缓存值
+     * @param loader    同步加载（未命中或超过硬TTL时在调用线程执行）
+     * @param refresher 后台刷新（不应依赖请求上下文）
+     */
+    public V get(K key, Supplier<V> loader, Supplier<V> refresher) {
+        CacheLookupEvent event = new CacheLookupEvent();
+        event.begin();
+        long now = System.currentTimeMillis();
+        Entry<V> entry = entries.get(key);
+        if (entry != null && now - entry.loadedAt < hardTtlMillis) {
+            entry.lastAccess = System.nanoTime();
+            if (now - entry.loadedAt < softTtlMillis) {
+                hits.increment();
+                commit(event, "hit");
+            } else {
+                staleHits.increment();
+                if (now >= entry.retryAt && entry.refreshing.compareAndSet(false, true)) {
+                    refresh(key, entry, refresher);
+                }
+                commit(event, "stale");
+            }
+            return entry.value;
+        }
+
+        misses.increment();
+        V value = load(key, loader);
+        commit(event, "miss");
+        return value;
+    }
+
+    /**
+     * 同步加载：同一个key只有一个线程执行 loader，其它线程等待其结果。
+     * 等待的加载失败时（可能只是发起者的请求被取消或超时）由当前线程自行加载，不把别的请求的失败传递给自己
+     */
+    private V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, flight);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for " + name + " cache load");
+            } catch (ExecutionException e) {
+                log.debug("Shared load of {} cache entry failed, loading again: {}", name, e.getCause().getMessage());
+                return loader.get();
+            }
+        }
+
+        try {
+            // 上一次加载可能刚刚写入
+            Entry<V> entry = entries.get(key);
+            V value;
+            if (entry != null && System.currentTimeMillis() - entry.loadedAt < hardTtlMillis) {
+                value = entry.value;
+            } else {
+                long loadGeneration = generation;
+                value = loader.get();
+                if (value != null) {
+                    put(key, value, loadGeneration);
+                }
+            }
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, flight);
+        }
+    }
+
+    /**
+     * 清空缓存，清空前开始的加载和刷新结果不再写入
+     */
+    public void invalidateAll() {
+        synchronized (writeLock) {
+            generation++;
+            entries.clear();
+        }
+    }
+
+    private void refresh(K key, Entry<V> entry, Supplier<V> refresher) {
+        long refreshGeneration = generation;
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    V value = refresher.get();
+                    synchronized (writeLock) {
+                        if (generation == refreshGeneration) {
+                            if (value != null) {
+                                entries.replace(key, entry, new Entry<>(value, System.currentTimeMillis()));
+                            } else {
+                                entries.remove(key, entry);
+                            }
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    // 保留旧值直到硬TTL
+                    refreshFailures.increment();
+                    entry.retryAt = System.currentTimeMillis() + REFRESH_RETRY_MILLIS;
+                    log.warn("Background refresh of {} cache entry failed, serving stale value: {}", name, e.getMessage());
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private void put(K key, V value, long loadGeneration) {
+        synchronized (writeLock) {
+            if (generation == loadGeneration) {
+                entries.put(key, new Entry<>(value, System.currentTimeMillis()));
+            }
+        }
+        if (entries.size() > maxEntries) {
+            evict(key);
+        }
+    }
+
+    /**
+     * 先清除超过硬TTL的条目，仍超出容量时淘汰最久未访问的 5%（不含刚加入的条目），并发写入时只有一个线程执行
+     */
+    private synchronized void evict(K added) {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> now - entry.loadedAt >= hardTtlMillis);
+        int excess = entries.size() - maxEntries;
+        if (excess <= 0) {
+            return;
+        }
+        int count = Math.max(excess, maxEntries / 20);
+        // 先取访问时间快照再排序
+        List<Map.Entry<K, Long>> accesses = new ArrayList<>();
+        entries.forEach((key, entry) -> {
+            if (!key.equals(added)) {
+                accesses.add(Map.entry(key, entry.lastAccess));
+            }
+        });
+        accesses.sort(Map.Entry.comparingByValue());
+        accesses.subList(0, Math.min(count, accesses.size())).forEach(entry -> entries.remove(entry.getKey()));
+    }
+
+    private void commit(CacheLookupEvent event, String result) {
+        if (event.shouldCommit()) {
+            event.setCache(name);
+            event.setResult(result);
+            event.commit();
+        }
+    }
+
+    private Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("odata.cache.requests")
+                .tag("cache", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,182 @@
+package com.jinyi.odata.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 应用用量计量
+ * 按（appCode, 实体集）用 LongAdder 累加请求数、返回行数、响应字节数和数据库耗时，请求线程只做无锁累加；
+ * 后台定时将上次写入以来的增量批量写入 application_usage 表，写入失败时增量保留到下一次
+ */
+@Service
+@Slf4j
+public class UsageMeteringService {
+
+    private static final String INSERT_SQL = "INSERT INTO application_usage (app_code, entity_name, requests, "
+            + "row_count, response_bytes, db_time_millis, period_start, period_end) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${odata.usage.enabled:true}")
+    private boolean enabled;
+
+    // appCode -> 实体集 -> 用量，两级Map避免每次记录创建组合键
+    private final Map<String, Map<String, Usage>> usages = new ConcurrentHashMap<>();
+
+    private volatile LocalDateTime periodStart = LocalDateTime.now();
+
+    /**
+     * 一个（appCode, 实体集）的累计用量
+     */
+    private static final class Usage {
+        final LongAdder requests = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder dbNanos = new LongAdder();
+
+        // 已写入数据库的累计值，只由写入线程访问（flush 同步）
+        long flushedRequests;
+        long flushedRows;
+        long flushedBytes;
+        long flushedDbNanos;
+    }
+
+    /**
+     * 记录一次请求的用量
+     */
+    public void record(String appCode, String entitySet, int rows, long bytes, long dbNanos) {
+        if (!enabled || appCode == null || entitySet == null) {
+            return;
+        }
+        Usage usage = usage(appCode, entitySet);
+        usage.requests.increment();
+        usage.rows.add(rows);
+        usage.bytes.add(bytes);
+        usage.dbNanos.add(dbNanos);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 将增量批量写入 application_usage 表
+     */
+    @Scheduled(fixedDelayString = "${odata.usage.flush-interval:60000}")
+    public synchronized void flush() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime periodEnd = LocalDateTime.now();
+
+        List<Object[]> batch = new ArrayList<>();
+        List<Usage> flushed = new ArrayList<>();
+        List<long[]> totals = new ArrayList<>();
+        usages.forEach((appCode, entities) -> entities.forEach((entitySet, usage) -> {
+            long[] total = {usage.requests.sum(), usage.rows.sum(), usage.bytes.sum(), usage.dbNanos.sum()};
+            long requests = total[0] - usage.flushedRequests;
+            if (requests <= 0) {
+                return;
+            }
+            long dbMillis = TimeUnit.NANOSECONDS.toMillis(total[3] - usage.flushedDbNanos);
+            // 只推进已写入的整毫秒，不足1毫秒的余数留到下一周期
+            total[3] = usage.flushedDbNanos + TimeUnit.MILLISECONDS.toNanos(dbMillis);
+            batch.add(new Object[]{appCode, entitySet, requests, total[1] - usage.flushedRows,
+                    total[2] - usage.flushedBytes, dbMillis,
+                    Timestamp.valueOf(periodStart), Timestamp.valueOf(periodEnd)});
+            flushed.add(usage);
+            totals.add(total);
+        }));
+        if (batch.isEmpty()) {
+            periodStart = periodEnd;
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch);
+        } catch (Exception e) {
+            log.warn("Failed to flush application usage ({} rows), will retry: {}", batch.size(), e.getMessage());
+            return;
+        }
+        for (int i = 0; i < flushed.size(); i++) {
+            Usage usage = flushed.get(i);
+            long[] total = totals.get(i);
+            usage.flushedRequests = total[0];
+            usage.flushedRows = total[1];
+            usage.flushedBytes = total[2];
+            usage.flushedDbNanos = total[3];
+        }
+        periodStart = periodEnd;
+        log.debug("Flushed application usage: {} rows", batch.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * 获取应用的累计用量：已写入数据库的部分加上尚未写入的增量
+     * @return 实体集 -> 用量（requests、rows、responseBytes、dbTimeMillis）
+     */
+    public synchronized Map<String, Map<String, Long>> getUsage(String appCode) {
+        Map<String, Map<String, Long>> result = new TreeMap<>();
+        jdbcTemplate.query("SELECT entity_name, SUM(requests), SUM(row_count), SUM(response_bytes), "
+                        + "SUM(db_time_millis) FROM application_usage WHERE app_code = ? GROUP BY entity_name",
+                rs -> {
+                    add(result, rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5));
+                }, appCode);
+
+        usages.getOrDefault(appCode, Map.of()).forEach((entitySet, usage) -> add(result, entitySet,
+                usage.requests.sum() - usage.flushedRequests,
+                usage.rows.sum() - usage.flushedRows,
+                usage.bytes.sum() - usage.flushedBytes,
+                TimeUnit.NANOSECONDS.toMillis(usage.dbNanos.sum() - usage.flushedDbNanos)));
+        return result;
+    }
+
+    private static void add(Map<String, Map<String, Long>> result, String entitySet,
+                            long requests, long rows, long bytes, long dbTimeMillis) {
+        Map<String, Long> usage = result.computeIfAbsent(entitySet, key -> {
+            Map<String, Long> empty = new LinkedHashMap<>();
+            empty.put("requests", 0L);
+            empty.put("rows", 0L);
+            empty.put("responseBytes", 0L);
+            empty.put("dbTimeMillis", 0L);
+            return empty;
+        });
+        usage.merge("requests", requests, Long::sum);
+        usage.merge("rows", rows, Long::sum);
+        usage.merge("responseBytes", bytes, Long::sum);
+        usage.merge("dbTimeMillis", dbTimeMillis, Long::sum);
+    }
+
+    private Usage usage(String appCode, String entitySet) {
+        Map<String, Usage> entities = usages.get(appCode);
+        if (entities == null) {
+            entities = usages.computeIfAbsent(appCode, key -> new ConcurrentHashMap<>());
+        }
+        Usage usage = entities.get(entitySet);
+        if (usage == null) {
+            usage = entities.computeIfAbsent(entitySet, key -> new Usage());
+        }
+        return usage;
+    }
+}
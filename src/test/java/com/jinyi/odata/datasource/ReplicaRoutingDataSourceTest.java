@@ -0,0 +1,142 @@
+package com.jinyi.odata.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 读写分离路由测试：两个独立的H2内存库分别充当主库和从库
+ */
+class ReplicaRoutingDataSourceTest {
+
+    private HikariDataSource primary;
+    private HikariDataSource replica;
+    private ReplicaRoutingProperties.Routing routing;
+
+    @BeforeEach
+    void setUp() {
+        primary = h2("routing_primary", "primary");
+        replica = h2("routing_replica", "replica");
+        new JdbcTemplate(replica).execute("CREATE TABLE replica_lag (seconds BIGINT)");
+        new JdbcTemplate(replica).update("INSERT INTO replica_lag VALUES (0)");
+
+        routing = new ReplicaRoutingProperties.Routing();
+        routing.setReadAfterWriteWindow(0);
+        routing.setMaxLagSeconds(5);
+        routing.setLagQuery("SELECT seconds FROM replica_lag");
+    }
+
+    @AfterEach
+    void tearDown() {
+        primary.close();
+        replica.close();
+    }
+
+    @Test
+    void readsOutsideReplicaContextUsePrimary() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(routingDataSource(Map.of("replica-0", replica)));
+
+        assertEquals("primary", whoAmI(jdbcTemplate));
+        assertEquals("replica", DataSourceRouting.onReplica(() -> whoAmI(jdbcTemplate)));
+        assertEquals("primary", whoAmI(jdbcTemplate));
+    }
+
+    @Test
+    void readAfterWriteGoesToPrimary() throws InterruptedException {
+        routing.setReadAfterWriteWindow(200);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(routingDataSource(Map.of("replica-0", replica)));
+
+        DataSourceRouting.markPrimaryWrite();
+        assertEquals("primary", DataSourceRouting.onReplica(() -> whoAmI(jdbcTemplate)));
+
+        Thread.sleep(250);
+        assertEquals("replica", DataSourceRouting.onReplica(() -> whoAmI(jdbcTemplate)));
+    }
+
+    @Test
+    void laggingReplicaFallsBackToPrimaryAndRecovers() {
+        ReplicaRoutingDataSource dataSource = routingDataSource(Map.of("replica-0", replica));
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        new JdbcTemplate(replica).update("UPDATE replica_lag SET seconds = 30");
+        dataSource.checkReplicas();
+        assertEquals("primary", DataSourceRouting.onReplica(() -> whoAmI(jdbcTemplate)));
+
+        new JdbcTemplate(replica).update("UPDATE replica_lag SET seconds = 1");
+        dataSource.checkReplicas();
+        assertEquals("replica", DataSourceRouting.onReplica(() -> whoAmI(jdbcTemplate)));
+    }
+
+    @Test
+    void unreachableReplicaFallsBackToPrimary() {
+        HikariDataSource broken = new HikariDataSource();
+        broken.setJdbcUrl("jdbc:h2:mem:routing_broken;IFEXISTS=TRUE");
+        broken.setInitializationFailTimeout(-1);
+        broken.setConnectionTimeout(250);
+        try {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(routingDataSource(Map.of("broken", broken)));
+            assertEquals("primary", DataSourceRouting.onReplica(() -> whoAmI(jdbcTemplate)));
+        } finally {
+            broken.close();
+        }
+    }
+
+    @Test
+    void roundRobinSpreadsReadsAcrossReplicas() {
+        HikariDataSource second = h2("routing_replica2", "replica2");
+        try {
+            Map<String, DataSource> replicas = new LinkedHashMap<>();
+            replicas.put("replica-0", replica);
+            replicas.put("replica-1", second);
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(routingDataSource(replicas));
+
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < 4; i++) {
+                seen.add(DataSourceRouting.onReplica(() -> whoAmI(jdbcTemplate)));
+            }
+            assertEquals(Set.of("replica", "replica2"), seen);
+        } finally {
+            second.close();
+        }
+    }
+
+    @Test
+    void closeShutsDownPrimaryAndReplicaPools() {
+        routingDataSource(Map.of("replica-0", replica)).close();
+
+        assertTrue(primary.isClosed());
+        assertTrue(replica.isClosed());
+    }
+
+    private ReplicaRoutingDataSource routingDataSource(Map<String, DataSource> replicas) {
+        return new ReplicaRoutingDataSource(primary, replicas, routing);
+    }
+
+    private static String whoAmI(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject("SELECT name FROM whoami", String.class);
+    }
+
+    private static HikariDataSource h2(String database, String name) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(2);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS whoami");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS replica_lag");
+        jdbcTemplate.execute("CREATE TABLE whoami (name VARCHAR(20))");
+        jdbcTemplate.update("INSERT INTO whoami VALUES (?)", name);
+        return dataSource;
+    }
+}
@@ -0,0 +1,295 @@
+package com.jinyi.odata.dynamic;
+
+import com.jinyi.odata.core.EntityMetadata;
+import com.jinyi.odata.core.EntityRegistryService;
+import com.jinyi.odata.service.EntityKeyCache;
+import com.jinyi.odata.service.ResponseCache;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 动态实体并发注册测试：同名实体（或同一张表）的注册/注销串行执行，读取方不会看到只完成一半的注册，批量注册不复用已被使用的表
+ */
+class DynamicEntityRegistrationConcurrencyTest {
+
+    private static final int THREADS = 16;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private EntityRegistryService entityRegistryService;
+    private DynamicEntityRegistrationService registrationService;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:dynamic_registration;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(THREADS);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        entityRegistryService = new EntityRegistryService();
+        ReflectionTestUtils.setField(entityRegistryService, "jdbcTemplate", jdbcTemplate);
+
+        registrationService = new DynamicEntityRegistrationService();
+        ReflectionTestUtils.setField(registrationService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(registrationService, "entityRegistryService", entityRegistryService);
+        ReflectionTestUtils.setField(registrationService, "entityKeyCache", Mockito.mock(EntityKeyCache.class));
+        ReflectionTestUtils.setField(registrationService, "responseCache", Mockito.mock(ResponseCache.class));
+        ReflectionTestUtils.setField(registrationService, "typedRows", true);
+
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        dataSource.close();
+    }
+
+    @Test
+    void concurrentRegistrationOfSameEntityHasSingleWinner() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    registrationService.registerEntity(definition("Race"), false);
+                    return true;
+                } catch (RuntimeException e) {
+                    assertTrue(e.getMessage().contains("Entity already exists"), e.getMessage());
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+
+        int winners = 0;
+        for (Future<Boolean> future : futures) {
+            if (future.get(30, TimeUnit.SECONDS)) {
+                winners++;
+            }
+        }
+        assertEquals(1, winners);
+        assertConsistent("Race");
+    }
+
+    @Test
+    void concurrentRegistrationOfSameTableHasSingleWinner() throws Exception {
+        // 映射已有的表，不建表
+        jdbcTemplate.execute("CREATE TABLE t_shared (id BIGINT PRIMARY KEY, name VARCHAR(50))");
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            EntityDefinition entityDef = definition("Shared" + i);
+            entityDef.setAutoCreate(false);
+            // 表名大小写不同也视为同一张表
+            entityDef.setTableName(i % 2 == 0 ? "t_shared" : "T_SHARED");
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    registrationService.registerEntity(entityDef, false);
+                    return true;
+                } catch (RuntimeException e) {
+                    assertTrue(e.getMessage().contains("is already used by entity"), e.getMessage());
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+
+        int winners = 0;
+        for (Future<Boolean> future : futures) {
+            if (future.get(30, TimeUnit.SECONDS)) {
+                winners++;
+            }
+        }
+        assertEquals(1, winners);
+        assertEquals(1, registrationService.getAllDynamicEntities().size());
+    }
+
+    @Test
+    void readersNeverSeePartialRegistration() throws Exception {
+        int entities = 200;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger next = new AtomicInteger();
+        Queue<String> violations = new ConcurrentLinkedQueue<>();
+
+        List<Future<?>> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(executor.submit(() -> {
+                while (writing.get()) {
+                    for (int n = 0; n < entities; n++) {
+                        String entityName = "Reader" + n;
+                        if (entityRegistryService.getTableName(entityName) == null) {
+                            continue;
+                        }
+                        EntityMetadata metadata = entityRegistryService.getEntityMetadata(entityName);
+                        if (metadata == null || metadata.getProperties().size() != 2
+                                || registrationService.getFieldDefinition(entityName, "name") == null
+                                || registrationService.getRowCodec(entityName) == null) {
+                            violations.add(entityName);
+                        }
+                    }
+                }
+            }));
+        }
+
+        List<Future<?>> writers = new ArrayList<>();
+        for (int i = 0; i < THREADS - readers.size(); i++) {
+            writers.add(executor.submit(() -> {
+                int n;
+                while ((n = next.getAndIncrement()) < entities) {
+                    registrationService.registerEntity(definition("Reader" + n), false);
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        writing.set(false);
+        for (Future<?> reader : readers) {
+            reader.get(30, TimeUnit.SECONDS);
+        }
+
+        assertTrue(violations.isEmpty(), "Partially registered entities seen: " + violations);
+        assertEquals(entities, registrationService.getAllDynamicEntities().size());
+    }
+
+    @Test
+    void registerUnregisterChurnKeepsRegistryAndTablesConsistent() throws Exception {
+        String[] names = {"Churn0", "Churn1", "Churn2", "Churn3"};
+        AtomicInteger registered = new AtomicInteger();
+        AtomicInteger unregistered = new AtomicInteger();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int n = 0; n < 50; n++) {
+                    String entityName = names[random.nextInt(names.length)];
+                    try {
+                        if (random.nextBoolean()) {
+                            registrationService.registerEntity(definition(entityName), false);
+                            registered.incrementAndGet();
+                        } else {
+                            registrationService.unregisterEntity(entityName, true, false);
+                            unregistered.incrementAndGet();
+                        }
+                    } catch (RuntimeException e) {
+                        assertTrue(e.getMessage().contains("Entity already exists")
+                                || e.getMessage().contains("Entity not found"), e.getMessage());
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+
+        int live = 0;
+        for (String entityName : names) {
+            assertConsistent(entityName);
+            if (registrationService.isDynamicEntity(entityName)) {
+                live++;
+            }
+        }
+        assertEquals(registered.get() - unregistered.get(), live);
+    }
+
+    @Test
+    void bulkRegistrationRejectsTablesInUse() throws Exception {
+        registrationService.registerEntity(definition("Owner"), false);
+        jdbcTemplate.execute("CREATE TABLE t_orphan (id BIGINT PRIMARY KEY)");
+        EntityDefinition sameTable = definition("Other");
+        sameTable.setTableName("T_OWNER");
+
+        Map<String, String> errors = registrationService.validateEntities(
+                List.of(sameTable, definition("Orphan"), definition("Bulk0")));
+        assertEquals(Set.of("Other", "Orphan"), errors.keySet());
+
+        // 批量注册在共用的线程池中执行
+        ReflectionTestUtils.setField(registrationService, "bulkParallelism", 2);
+        registrationService.init();
+        try {
+            List<EntityDefinition> entityDefs = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                entityDefs.add(definition("Bulk" + i));
+            }
+            assertTrue(registrationService.validateEntities(entityDefs).isEmpty());
+            assertTrue(registrationService.registerEntities(entityDefs, false).stream()
+                    .allMatch(DynamicEntityRegistrationService.RegistrationResult::isSuccess));
+            for (EntityDefinition entityDef : entityDefs) {
+                assertConsistent(entityDef.getEntityName());
+            }
+        } finally {
+            registrationService.shutdown();
+        }
+    }
+
+    /**
+     * 实体在动态实体服务、实体注册服务和数据库中的状态一致
+     */
+    private void assertConsistent(String entityName) {
+        boolean registered = registrationService.isDynamicEntity(entityName);
+        assertEquals(registered, entityRegistryService.isDynamicEntity(entityName), entityName);
+        assertEquals(registered, entityRegistryService.getTableName(entityName) != null, entityName);
+        assertEquals(registered, tableExists(tableName(entityName)), entityName);
+    }
+
+    private boolean tableExists(String tableName) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE LOWER(TABLE_NAME) = ?",
+                Integer.class, tableName);
+        return count != null && count > 0;
+    }
+
+    private static String tableName(String entityName) {
+        return "t_" + entityName.toLowerCase();
+    }
+
+    private static EntityDefinition definition(String entityName) {
+        EntityDefinition.FieldDefinition id = new EntityDefinition.FieldDefinition();
+        id.setFieldName("id");
+        id.setDataType("LONG");
+        id.setKey(true);
+        id.setNullable(false);
+
+        EntityDefinition.FieldDefinition name = new EntityDefinition.FieldDefinition();
+        name.setFieldName("name");
+        name.setDataType("STRING");
+        name.setLength(50);
+
+        EntityDefinition entityDef = new EntityDefinition();
+        entityDef.setEntityName(entityName);
+        entityDef.setTableName(tableName(entityName));
+        entityDef.setFields(List.of(id, name));
+        return entityDef;
+    }
+}
@@ -0,0 +1,149 @@
+package com.jinyi.odata.dynamic;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jinyi.odata.core.EntityMetadata;
+import com.jinyi.odata.core.PropertyMetadata;
+import com.jinyi.odata.format.ODataFormat;
+import com.jinyi.odata.format.ODataResponseWriter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 动态行编解码测试：所有支持的类型（含null）和部分 $select 布局经生成的行类读取后，Map视图和Jackson输出与原值一致，
+ * 二进制格式的日期为纪元毫秒
+ */
+class DynamicRowCodecTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 3, 15, 10, 30, 45);
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private DynamicRowCodec codec;
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:dynamic_row_codec;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE product (id BIGINT PRIMARY KEY, name VARCHAR(50), quantity INT, "
+                + "unit_price DECIMAL(10,2), created_at TIMESTAMP, active BOOLEAN)");
+        jdbcTemplate.update("INSERT INTO product VALUES (1, 'Widget', 7, 12.50, ?, TRUE)", CREATED);
+        jdbcTemplate.update("INSERT INTO product VALUES (2, NULL, NULL, NULL, NULL, NULL)");
+
+        List<PropertyMetadata> properties = List.of(
+                new PropertyMetadata("id", "id", Long.class, true, false, 0),
+                new PropertyMetadata("name", "name", String.class, false, true, 50),
+                new PropertyMetadata("quantity", "quantity", Integer.class, false, true, 0),
+                new PropertyMetadata("unitPrice", "unit_price", BigDecimal.class, false, true, 0),
+                new PropertyMetadata("createdAt", "created_at", LocalDateTime.class, false, true, 0),
+                new PropertyMetadata("active", "active", Boolean.class, false, true, 0));
+        codec = DynamicRowCodec.generate(new EntityMetadata("Product", "product", null, properties));
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        dataSource.close();
+    }
+
+    @Test
+    void allTypesAndNullsRoundTrip() throws Exception {
+        List<Map<String, Object>> rows = query("SELECT id, name, quantity, unit_price, created_at, active "
+                + "FROM product ORDER BY id");
+
+        Map<String, Object> full = new LinkedHashMap<>();
+        full.put("id", 1L);
+        full.put("name", "Widget");
+        full.put("quantity", 7);
+        full.put("unit_price", new BigDecimal("12.50"));
+        full.put("created_at", CREATED);
+        full.put("active", true);
+        Map<String, Object> empty = new LinkedHashMap<>();
+        empty.put("id", 2L);
+        for (String column : List.of("name", "quantity", "unit_price", "created_at", "active")) {
+            empty.put(column, null);
+        }
+
+        assertRow(full, rows.get(0));
+        assertRow(empty, rows.get(1));
+    }
+
+    @Test
+    void partialSelectExposesOnlySelectedColumns() throws Exception {
+        Map<String, Object> row = query("SELECT active, id, unit_price FROM product WHERE id = 1").get(0);
+
+        // 字段按属性声明顺序输出
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("id", 1L);
+        expected.put("unit_price", new BigDecimal("12.50"));
+        expected.put("active", true);
+        assertRow(expected, row);
+
+        assertFalse(row.containsKey("name"));
+        assertNull(row.get("name"));
+        assertNull(row.get("unitPrice"));
+        assertNull(row.get(42));
+    }
+
+    @Test
+    void binaryFormatsWriteDatesAsEpochMillis() throws Exception {
+        Map<String, Object> row = query("SELECT id, created_at FROM product WHERE id = 1").get(0);
+
+        ObjectMapper cbor = new ODataResponseWriter(objectMapper, Jackson2ObjectMapperBuilder.json())
+                .getObjectMapper(ODataFormat.CBOR);
+        Map<?, ?> decoded = cbor.readValue(cbor.writeValueAsBytes(row), Map.class);
+        assertEquals(CREATED.toInstant(ZoneOffset.UTC).toEpochMilli(), ((Number) decoded.get("created_at")).longValue());
+    }
+
+    @Test
+    void expressionColumnsFallBackToGenericRows() {
+        Map<String, Object> row = query("SELECT id, quantity * 2 AS doubled FROM product WHERE id = 1").get(0);
+
+        assertFalse(row instanceof DynamicRow);
+        assertEquals(14, ((Number) row.get("doubled")).intValue());
+    }
+
+    private void assertRow(Map<String, Object> expected, Map<String, Object> row) throws Exception {
+        assertInstanceOf(DynamicRow.class, row);
+
+        // Map视图
+        assertEquals(expected.size(), row.size());
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(row.keySet()));
+        expected.forEach((column, value) -> {
+            assertTrue(row.containsKey(column), column);
+            assertEquals(value, row.get(column), column);
+        });
+        assertEquals(expected, row);
+        assertEquals(expected, new LinkedHashMap<>(row));
+
+        // Jackson输出与按普通Map写出的结果一致
+        String json = objectMapper.writeValueAsString(row);
+        assertEquals(objectMapper.writeValueAsString(expected), json);
+    }
+
+    private List<Map<String, Object>> query(String sql) {
+        return jdbcTemplate.query(sql, codec.rowMapper(new ColumnMapRowMapper()));
+    }
+}
@@ -0,0 +1,73 @@
+package com.jinyi.odata.ratelimit;
+
+import com.jinyi.business.entity.Application;
+import com.jinyi.business.entity.ApplicationEntity;
+import com.jinyi.business.service.ApplicationChangedEvent;
+import com.jinyi.business.service.ApplicationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 应用准入控制测试：应用桶拒绝时不消耗实体集令牌、不存在的应用只查询一次数据库
+ */
+class AdmissionControlServiceTest {
+
+    private ApplicationService applicationService;
+    private AdmissionControlService admissionControlService;
+
+    @BeforeEach
+    void setUp() {
+        applicationService = Mockito.mock(ApplicationService.class);
+        admissionControlService = new AdmissionControlService();
+        ReflectionTestUtils.setField(admissionControlService, "applicationService", applicationService);
+        ReflectionTestUtils.setField(admissionControlService, "enabled", true);
+        ReflectionTestUtils.setField(admissionControlService, "burstSeconds", 1.0);
+        ReflectionTestUtils.setField(admissionControlService, "unknownApplicationTtlMillis", 60000L);
+    }
+
+    @Test
+    void applicationDenialDoesNotDrainEntitySetBucket() throws InterruptedException {
+        // 应用每秒2个请求，Orders每秒1个请求（突发1秒）
+        Application application = new Application();
+        application.setId(1L);
+        application.setRequestsPerSecond(2);
+        ApplicationEntity orders = new ApplicationEntity();
+        orders.setEntityName("Orders");
+        orders.setRequestsPerSecond(1);
+        when(applicationService.getApplicationByCode("DEMO")).thenReturn(Optional.of(application));
+        when(applicationService.getApplicationEntitiesByCode("DEMO")).thenReturn(List.of(orders));
+
+        assertEquals(0, admissionControlService.tryAdmit("DEMO", "Customers"));
+        assertEquals(0, admissionControlService.tryAdmit("DEMO", "Customers"));
+        assertTrue(admissionControlService.tryAdmit("DEMO", "Orders") > 0);
+
+        // 应用桶0.5秒后恢复一个令牌；Orders 的令牌未被消耗，无需等待1秒
+        Thread.sleep(600);
+        assertEquals(0, admissionControlService.tryAdmit("DEMO", "Orders"));
+    }
+
+    @Test
+    void unknownApplicationIsLookedUpOnce() {
+        when(applicationService.getApplicationByCode("NOPE")).thenReturn(Optional.empty());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, admissionControlService.tryAdmit("NOPE", "Orders"));
+        }
+        verify(applicationService, times(1)).getApplicationByCode("NOPE");
+
+        admissionControlService.onApplicationChanged(new ApplicationChangedEvent(2L));
+        admissionControlService.tryAdmit("NOPE", "Orders");
+        verify(applicationService, times(2)).getApplicationByCode("NOPE");
+    }
+}
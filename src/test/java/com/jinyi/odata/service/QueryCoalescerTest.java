@@ -0,0 +1,205 @@
+package com.jinyi.odata.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 查询合并测试：结果共用、发起者超时或被取消时等待者重新执行、等待者按自己的超时和取消状态放弃等待
+ */
+class QueryCoalescerTest {
+
+    private static final String KEY = "Products\nSELECT * FROM products\n[]\nfalse";
+
+    private QueryCoalescer coalescer;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        coalescer = new QueryCoalescer();
+        ReflectionTestUtils.setField(coalescer, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(coalescer, "enabled", true);
+        coalescer.init();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentIdenticalQueriesShareOneExecution() throws Exception {
+        int requests = 40;
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        ODataQueryService.QueryResult shared = new ODataQueryService.QueryResult();
+        Supplier<ODataQueryService.QueryResult> loader = () -> {
+            executions.incrementAndGet();
+            await(release);
+            return shared;
+        };
+
+        Future<ODataQueryService.QueryResult> leader = submit(new QueryContext(null), 30, loader);
+        waitForLeader(executions);
+        List<Future<ODataQueryService.QueryResult>> followers = new ArrayList<>();
+        for (int i = 1; i < requests; i++) {
+            followers.add(submit(new QueryContext(null), 30, loader));
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        assertSame(shared, leader.get(5, TimeUnit.SECONDS));
+        for (Future<ODataQueryService.QueryResult> follower : followers) {
+            assertSame(shared, follower.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals(requests, shared.getSharedBy());
+    }
+
+    @Test
+    void followerReExecutesWhenLeaderTimesOutWithShorterTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        ODataQueryService.QueryResult own = new ODataQueryService.QueryResult();
+
+        Future<ODataQueryService.QueryResult> leader = submit(new QueryContext(1), 1, () -> {
+            executions.incrementAndGet();
+            await(release);
+            throw new QueryTimeoutException("statement timeout");
+        });
+        waitForLeader(executions);
+        Future<ODataQueryService.QueryResult> follower = submit(new QueryContext(null), 30, () -> {
+            executions.incrementAndGet();
+            return own;
+        });
+        Thread.sleep(200);
+        release.countDown();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(QueryTimeoutException.class, failure.getCause());
+        assertSame(own, follower.get(5, TimeUnit.SECONDS));
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void followerWithSameTimeoutSharesLeaderTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+
+        submit(new QueryContext(null), 30, () -> {
+            executions.incrementAndGet();
+            await(release);
+            throw new QueryTimeoutException("statement timeout");
+        });
+        waitForLeader(executions);
+        Future<ODataQueryService.QueryResult> follower = submit(new QueryContext(null), 30, () -> {
+            executions.incrementAndGet();
+            return new ODataQueryService.QueryResult();
+        });
+        Thread.sleep(200);
+        release.countDown();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(QueryTimeoutException.class, failure.getCause());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void followerReExecutesWhenLeaderIsCancelled() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        QueryContext leaderContext = new QueryContext(null);
+        ODataQueryService.QueryResult own = new ODataQueryService.QueryResult();
+
+        submit(leaderContext, 30, () -> {
+            executions.incrementAndGet();
+            await(release);
+            throw new RuntimeException("Query cancelled: client is gone");
+        });
+        waitForLeader(executions);
+        Future<ODataQueryService.QueryResult> follower = submit(new QueryContext(null), 30, () -> {
+            executions.incrementAndGet();
+            return own;
+        });
+        Thread.sleep(200);
+        leaderContext.cancel();
+        release.countDown();
+
+        assertSame(own, follower.get(5, TimeUnit.SECONDS));
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void followerStopsWaitingAtItsOwnDeadlineAndOnCancel() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        try {
+            submit(new QueryContext(null), 0, () -> {
+                executions.incrementAndGet();
+                await(release);
+                return new ODataQueryService.QueryResult();
+            });
+            waitForLeader(executions);
+
+            Future<ODataQueryService.QueryResult> impatient = submit(new QueryContext(1), 1, () -> {
+                throw new AssertionError("follower must not execute");
+            });
+            ExecutionException timeout = assertThrows(ExecutionException.class,
+                    () -> impatient.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(QueryTimeoutException.class, timeout.getCause());
+
+            QueryContext cancelled = new QueryContext(null);
+            Future<ODataQueryService.QueryResult> gone = submit(cancelled, 0, () -> {
+                throw new AssertionError("follower must not execute");
+            });
+            Thread.sleep(200);
+            cancelled.cancel();
+            ExecutionException cancel = assertThrows(ExecutionException.class, () -> gone.get(5, TimeUnit.SECONDS));
+            assertTrue(cancel.getCause().getMessage().contains("cancelled"));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private Future<ODataQueryService.QueryResult> submit(QueryContext context, int timeoutSeconds,
+                                                         Supplier<ODataQueryService.QueryResult> loader) {
+        return executor.submit(() -> coalescer.execute(KEY, context, timeoutSeconds, loader));
+    }
+
+    private static void waitForLeader(AtomicInteger executions) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executions.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.jinyi.odata.service;
+
+import com.jinyi.odata.core.DatabaseDialectService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 查询成本守卫测试：同一查询形态并发时只执行一次 EXPLAIN，EXPLAIN 带查询超时
+ */
+class QueryCostGuardTest {
+
+    private static final String SQL = "SELECT id FROM orders ORDER BY created_at";
+
+    private JdbcTemplate jdbcTemplate;
+    private QueryCostGuard guard;
+    private ExecutorService executor;
+    private PreparedStatement statement;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        DatabaseDialectService dialect = Mockito.mock(DatabaseDialectService.class);
+        when(dialect.isMySql()).thenReturn(true);
+        QueryGuardProperties properties = new QueryGuardProperties();
+        properties.setEnabled(true);
+
+        guard = new QueryCostGuard();
+        ReflectionTestUtils.setField(guard, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(guard, "databaseDialectService", dialect);
+        ReflectionTestUtils.setField(guard, "properties", properties);
+        executor = Executors.newCachedThreadPool();
+        statement = Mockito.mock(PreparedStatement.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void concurrentChecksShareOneExplain() throws Exception {
+        // EXPLAIN 结论：全表扫描+filesort，约50000行
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger explains = new AtomicInteger();
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(ResultSetExtractor.class))).thenAnswer(call -> {
+            explains.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            Connection connection = Mockito.mock(Connection.class);
+            when(connection.prepareStatement(anyString())).thenReturn(statement);
+            call.getArgument(0, PreparedStatementCreator.class).createPreparedStatement(connection);
+            ResultSet rs = Mockito.mock(ResultSet.class);
+            when(rs.next()).thenReturn(true, false);
+            when(rs.getLong("rows")).thenReturn(50000L);
+            when(rs.getString("type")).thenReturn("ALL");
+            when(rs.getString("Extra")).thenReturn("Using filesort");
+            return call.getArgument(1, ResultSetExtractor.class).extractData(rs);
+        });
+
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(executor.submit(() -> guard.check("Orders", SQL, List.of(), 10L, 5)));
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<Long> future : futures) {
+            Exception e = assertThrows(Exception.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertEquals(RuntimeException.class, e.getCause().getClass());
+        }
+        assertEquals(1, explains.get());
+        verify(statement).setQueryTimeout(5);
+
+        // 结论已缓存
+        assertThrows(RuntimeException.class, () -> guard.check("Orders", SQL, List.of(), 10L, 5));
+        assertEquals(1, explains.get());
+    }
+}
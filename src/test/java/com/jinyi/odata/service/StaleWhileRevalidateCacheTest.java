@@ -0,0 +1,133 @@
+package com.jinyi.odata.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 软/硬TTL缓存测试：未命中时同一个key只加载一次、发起者失败时等待者自行加载、清空后旧加载不写回、容量有界
+ */
+class StaleWhileRevalidateCacheTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        StaleWhileRevalidateCache<String, String> cache = cache(100);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<String> loader = () -> {
+            loads.incrementAndGet();
+            await(release);
+            return "value";
+        };
+
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(executor.submit(() -> cache.get("key", loader, loader)));
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<String> future : futures) {
+            assertEquals("value", future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void waitersLoadThemselvesWhenSharedLoadFails() throws Exception {
+        StaleWhileRevalidateCache<String, String> cache = cache(100);
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> leader = executor.submit(() -> cache.get("key", () -> {
+            leaderStarted.countDown();
+            await(release);
+            throw new RuntimeException("Query cancelled: client is gone");
+        }, () -> null));
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+
+        Future<String> waiter = executor.submit(() -> cache.get("key", () -> "own", () -> "own"));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals("own", waiter.get(5, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void loadStartedBeforeInvalidateIsNotStored() throws Exception {
+        StaleWhileRevalidateCache<String, String> cache = cache(100);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> stale = executor.submit(() -> cache.get("key", () -> {
+            loading.countDown();
+            await(release);
+            return "old";
+        }, () -> "old"));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        cache.invalidateAll();
+        release.countDown();
+        assertEquals("old", stale.get(5, TimeUnit.SECONDS));
+
+        assertEquals("new", cache.get("key", () -> "new", () -> "new"));
+    }
+
+    @Test
+    void sizeStaysBoundedAndRecentEntriesSurvive() {
+        StaleWhileRevalidateCache<Integer, String> cache = cache(100);
+        for (int i = 0; i < 1000; i++) {
+            String value = "v" + i;
+            cache.get(i, () -> value, () -> value);
+            // 第0个条目一直被访问
+            cache.get(0, () -> "reloaded", () -> "reloaded");
+        }
+
+        AtomicInteger reloads = new AtomicInteger();
+        cache.get(0, () -> {
+            reloads.incrementAndGet();
+            return "reloaded";
+        }, () -> "reloaded");
+        assertEquals(0, reloads.get());
+        assertEquals("v999", cache.get(999, () -> "missing", () -> "missing"));
+    }
+
+    private static <K> StaleWhileRevalidateCache<K, String> cache(int maxEntries) {
+        return new StaleWhileRevalidateCache<>("test", 60000, 120000, maxEntries,
+                Runnable::run, new SimpleMeterRegistry());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}